@@ -0,0 +1,60 @@
+package bench;
+
+import api.Application;
+import geo.AzimuthMatcher;
+import model.Building;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The uncached box query and directional sort, fed from an in-memory stub instead of Socrata, against
+ * the sort-free azimuth matching that replaced the sort on the request path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildingSortBenchmark {
+    private static final double LAT = 40.680692;
+    private static final double LON = -73.988398;
+
+    @Param({"100", "1000", "10000"})
+    public int buildings;
+
+    @Param({"0", "90", "180", "270"})
+    public double bearing;
+
+    private List<Building> all;
+    private AzimuthMatcher matcher;
+    private double[] left;
+    private double[] right;
+
+    @Setup
+    public void setUp() {
+        all = Synthetic.buildings(buildings, LAT, LON, 0.002, 3);
+        Application.setBuildingSource((north, west, south, east) -> new ArrayList<>(all));
+        matcher = new AzimuthMatcher(65, 180);
+        //Eight blobs spread across the view, as a busy street frame produces
+        left = new double[8];
+        right = new double[8];
+        for (int i = 0; i < left.length; i++) {
+            left[i] = -32.5 + i * 8;
+            right[i] = left[i] + 6;
+        }
+    }
+
+    @Benchmark
+    public List<Building> queryBuildingsNearLocation() {
+        return Application.queryBuildingsNearLocation(LAT, LON, bearing);
+    }
+
+    @Benchmark
+    public int[] matchByAzimuth() {
+        return matcher.match(all, LAT, LON, bearing, left, right, left.length);
+    }
+}
@@ -0,0 +1,58 @@
+package bench;
+
+import api.Application;
+import grid.BlobLabeler;
+import grid.OccupancyGrid;
+import grid.StreamingBlobLabeler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+    @Param({"8", "35", "110"})
+    public int size;
+
+    @Param({"0.1", "0.5", "0.9"})
+    public double density;
+
+    private List<List<Boolean>> lists;
+    private OccupancyGrid grid;
+
+    @Setup
+    public void setUp() {
+        lists = Synthetic.grid(size, density, 11);
+        grid = OccupancyGrid.of(lists);
+    }
+
+    @Benchmark
+    public Object extractBlobs() {
+        return Application.extractBlobs(lists);
+    }
+
+    @Benchmark
+    public Object rotateCW() {
+        return Application.rotateCW(lists);
+    }
+
+    @Benchmark
+    public Object labelRotatedGrid() {
+        return BlobLabeler.label(grid.rotateCW());
+    }
+
+    @Benchmark
+    public Object labelRowByRow() {
+        StreamingBlobLabeler labeler = new StreamingBlobLabeler(grid.getRows(), grid.getCols());
+        for (int y = 0; y < grid.getRows(); y++) {
+            labeler.add(grid, y);
+        }
+        labeler.finish();
+        return labeler;
+    }
+}
@@ -0,0 +1,42 @@
+package bench;
+
+import api.Application;
+import classifier.LocalTileClassifier;
+import classifier.TileClassifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end /image processing with the local classifier and a stub building source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    @Param({"2000x1500", "4000x3000"})
+    public String size;
+
+    private byte[] jpeg;
+    private TileClassifier classifier;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] dims = size.split("x");
+        jpeg = Synthetic.streetJpeg(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+        classifier = new LocalTileClassifier();
+        Application.setBuildingSource((north, west, south, east) ->
+                Synthetic.buildings(50, (north + south) / 2, (east + west) / 2, north - south, 5));
+    }
+
+    @Benchmark
+    public String classifyAndRetrieveData() {
+        return Application.classifyAndRetrieveData(classifier, new ByteArrayInputStream(jpeg),
+                40.680692, -73.988398, 0, () -> false);
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import codec.BoxCodecs;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import image.TileBuffer;
+import model.Box;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"1", "10", "100"})
+    public int boxes;
+
+    private List<Box> result;
+    private ObjectMapper shared;
+    private TileBuffer out;
+
+    @Setup
+    public void setUp() {
+        result = Synthetic.boxes(boxes);
+        shared = new ObjectMapper();
+        out = new TileBuffer(64 * 1024);
+    }
+
+    //What classifyAndRetrieveData used to do
+    @Benchmark
+    public String newMapperPerRequest() throws JsonProcessingException {
+        return new ObjectMapper().writeValueAsString(result);
+    }
+
+    @Benchmark
+    public String sharedMapper() throws JsonProcessingException {
+        return shared.writeValueAsString(result);
+    }
+
+    @Benchmark
+    public int streamedJson() throws IOException {
+        out.reset();
+        BoxCodecs.JSON.write(result, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int streamedBinary() throws IOException {
+        out.reset();
+        BoxCodecs.BINARY.write(result, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,84 @@
+package bench;
+
+import api.Application;
+import image.ImageTiler;
+import model.Tile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitImageBenchmark {
+    @Param({"1000x750", "2000x1500", "4000x3000"})
+    public String size;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] dims = size.split("x");
+        jpeg = Synthetic.streetJpeg(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+    }
+
+    @Benchmark
+    public void splitImage(Blackhole bh) {
+        for (List<InputStream> row : Application.splitImage(new ByteArrayInputStream(jpeg))) {
+            bh.consume(row);
+        }
+    }
+
+    @Benchmark
+    public void splitTiles(Blackhole bh) {
+        for (List<Tile> row : Application.splitTiles(new ByteArrayInputStream(jpeg))) {
+            for (Tile tile : row) {
+                bh.consume(tile.getLength());
+            }
+        }
+    }
+
+    //The tiler at its two extremes, against the full decode it replaced: one tile row per ImageReader call
+    //holds the least and re-decodes the most, a budget covering the frame decodes it once
+    @Benchmark
+    public void tilerRowStrips(Blackhole bh) throws IOException {
+        tile(1, bh);
+    }
+
+    @Benchmark
+    public void tilerOneDecode(Blackhole bh) throws IOException {
+        tile(Long.MAX_VALUE, bh);
+    }
+
+    @Benchmark
+    public void fullDecode(Blackhole bh) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        for (int y = 0; y < image.getHeight(); y += 500) {
+            for (int x = 0; x < image.getWidth(); x += 500) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(image.getSubimage(x, y, Math.min(500, image.getWidth() - x),
+                        Math.min(500, image.getHeight() - y)), "jpg", out);
+                bh.consume(out.toByteArray());
+            }
+        }
+    }
+
+    private void tile(long stripPixels, Blackhole bh) throws IOException {
+        try (ImageTiler tiler = ImageTiler.open(new ByteArrayInputStream(jpeg), 500, 1, stripPixels, null)) {
+            while (tiler.hasNext()) {
+                bh.consume(tiler.next().getLength());
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import model.Box;
+import model.Building;
+import model.Point;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic inputs shared by the benchmarks.
+ */
+final class Synthetic {
+    private Synthetic() {
+    }
+
+    //Sky over a row of windowed facades, so both the encoder and LocalTileClassifier get realistic work
+    static byte[] streetJpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(135, 206, 235));
+        g.fillRect(0, 0, width, height);
+        Random random = new Random(42);
+        for (int x = 0; x < width; x += width / 5) {
+            int top = height / 4 + random.nextInt(height / 3);
+            g.setColor(new Color(90 + random.nextInt(60), 80, 70));
+            g.fillRect(x, top, width / 6, height - top);
+            g.setColor(Color.YELLOW);
+            for (int y = top + 10; y < height; y += 40) {
+                for (int wx = x + 10; wx < x + width / 6 - 20; wx += 30) {
+                    g.fillRect(wx, y, 14, 20);
+                }
+            }
+        }
+        g.dispose();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", os);
+        return os.toByteArray();
+    }
+
+    static List<List<Boolean>> grid(int size, double density, long seed) {
+        Random random = new Random(seed);
+        List<List<Boolean>> grid = new ArrayList<>();
+        for (int y = 0; y < size; y++) {
+            List<Boolean> row = new ArrayList<>();
+            for (int x = 0; x < size; x++) {
+                row.add(random.nextDouble() < density);
+            }
+            grid.add(row);
+        }
+        return grid;
+    }
+
+    static List<Building> buildings(int count, double lat, double lon, double spread, long seed) {
+        Random random = new Random(seed);
+        List<Building> buildings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Building building = new Building();
+            building.setLatitute(lat + (random.nextDouble() - 0.5) * spread);
+            building.setLongitude(lon + (random.nextDouble() - 0.5) * spread);
+            building.setOccupancy(random.nextInt(500));
+            buildings.add(building);
+        }
+        return buildings;
+    }
+
+    static List<Box> boxes(int count) {
+        List<Box> boxes = new ArrayList<>();
+        List<Building> buildings = buildings(count, 40.68, -73.98, 0.005, 7);
+        for (int i = 0; i < count; i++) {
+            boxes.add(new Box(new Point(i * 500, 0), new Point(i * 500 + 1000, 1500), buildings.get(i)));
+        }
+        return boxes;
+    }
+}
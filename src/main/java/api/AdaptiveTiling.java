@@ -0,0 +1,167 @@
+package api;
+
+import classifier.TileClassifier;
+import grid.OccupancyGrid;
+import image.RegionReader;
+import model.Tile;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Coarse-to-fine classification. The frame is first classified as a few large regions, each downscaled
+ * to one tile, and every region that comes back positive is split into quadrants for the next round,
+ * until regions are a single cell of the output grid. Negative regions are never looked at again, so an image that is
+ * mostly sky or road costs a handful of classifier calls instead of one per cell.
+ * <p>
+ * The result is the same cell grid the fixed tiler produces, so blob extraction is unchanged.
+ */
+final class AdaptiveTiling {
+    private AdaptiveTiling() {
+    }
+
+    /**
+     * @param cellPix  source pixels per cell of the output grid (the minimum region size)
+     * @param tilePix  longest side of the tile sent to the classifier for any region
+     * @param maxCells side, in cells, of the largest region classified; the first round covers the frame
+     *                 with blocks of this size. Heavier downscaling hides small buildings from the classifier.
+     */
+    static OccupancyGrid classify(TileClassifier classifier, RegionReader image, int cellPix, int tilePix, int maxCells,
+                                  ClassificationExecutor executor, BooleanSupplier cancelled, PipelineListener listener) {
+        int rows = (image.getHeight() + cellPix - 1) / cellPix;
+        int cols = (image.getWidth() + cellPix - 1) / cellPix;
+        OccupancyGrid found = new OccupancyGrid(rows, cols);
+        List<Region> pending = new ArrayList<>();
+        int blockRows = Math.min(maxCells, rows);
+        int blockCols = Math.min(maxCells, cols);
+        for (int r = 0; r < rows; r += blockRows) {
+            for (int c = 0; c < cols; c += blockCols) {
+                pending.add(new Region(r, c, Math.min(blockRows, rows - r), Math.min(blockCols, cols - c)));
+            }
+        }
+        while (!pending.isEmpty()) {
+            List<Region> level = pending;
+            List<Region> next = new ArrayList<>();
+            Iterator<Region> regions = level.iterator();
+            Iterator<List<Region>> batches = new Iterator<List<Region>>() {
+                @Override
+                public boolean hasNext() {
+                    return regions.hasNext();
+                }
+
+                @Override
+                public List<Region> next() {
+                    List<Region> batch = new ArrayList<>(classifier.maxBatchSize());
+                    try {
+                        while (regions.hasNext() && batch.size() < classifier.maxBatchSize()) {
+                            Region region = regions.next();
+                            long start = System.nanoTime();
+                            region.tile = image.read(region.row, region.col, region.pixels(cellPix), tilePix);
+                            PipelineMetrics.TILE.recordSince(start);
+                            batch.add(region);
+                        }
+                    } catch (IOException e) {
+                        batch.forEach(Region::release);
+                        throw new UncheckedIOException(e);
+                    }
+                    return batch;
+                }
+            };
+            executor.map(batches, batch -> {
+                List<Tile> tiles = new ArrayList<>(batch.size());
+                batch.forEach(region -> tiles.add(region.tile));
+                long start = System.nanoTime();
+                try {
+                    boolean[] result = classifier.containsBuildings(tiles);
+                    long elapsed = System.nanoTime() - start;
+                    PipelineMetrics.CLASSIFY_BATCH.record(elapsed);
+                    for (int i = 0; i < batch.size(); i++) {
+                        PipelineMetrics.CLASSIFY_TILE.record(elapsed / batch.size());
+                    }
+                    PipelineMetrics.TILES.add(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        resolve(batch.get(i), result[i], found, next, listener);
+                    }
+                    return result;
+                } finally {
+                    batch.forEach(Region::release);
+                }
+            }, cancelled);
+            pending = next;
+        }
+        return found;
+    }
+
+    private static void resolve(Region region, boolean building, OccupancyGrid found, List<Region> next,
+                                PipelineListener listener) {
+        if (building && region.rows * region.cols > 1) {
+            synchronized (next) {
+                region.split(next);
+            }
+            return;
+        }
+        if (!building) {
+            PipelineMetrics.TILES_SKIPPED.add(region.rows * region.cols - 1);
+        }
+        //Cells share words, so writes must not interleave
+        synchronized (found) {
+            for (int r = region.row; r < region.row + region.rows; r++) {
+                for (int c = region.col; c < region.col + region.cols; c++) {
+                    found.set(r, c, building);
+                }
+            }
+        }
+        for (int r = region.row; r < region.row + region.rows; r++) {
+            for (int c = region.col; c < region.col + region.cols; c++) {
+                listener.onTile(r, c, building);
+            }
+        }
+    }
+
+    private static final class Region {
+        final int row;
+        final int col;
+        final int rows;
+        final int cols;
+        Tile tile;
+
+        Region(int row, int col, int rows, int cols) {
+            this.row = row;
+            this.col = col;
+            this.rows = rows;
+            this.cols = cols;
+        }
+
+        Rectangle pixels(int cellPix) {
+            return new Rectangle(col * cellPix, row * cellPix, cols * cellPix, rows * cellPix);
+        }
+
+        //Halves each side longer than one cell, so a 1xN strip splits in two rather than four
+        void split(List<Region> into) {
+            int top = (rows + 1) / 2;
+            int left = (cols + 1) / 2;
+            into.add(new Region(row, col, top, left));
+            if (cols > 1) {
+                into.add(new Region(row, col + left, top, cols - left));
+            }
+            if (rows > 1) {
+                into.add(new Region(row + top, col, rows - top, left));
+                if (cols > 1) {
+                    into.add(new Region(row + top, col + left, rows - top, cols - left));
+                }
+            }
+        }
+
+        void release() {
+            if (tile != null) {
+                tile.release();
+                tile = null;
+            }
+        }
+    }
+}
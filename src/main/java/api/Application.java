@@ -5,251 +5,1154 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ibm.watson.developer_cloud.service.security.IamOptions;
 import com.ibm.watson.developer_cloud.visual_recognition.v3.VisualRecognition;
 import com.ibm.watson.developer_cloud.visual_recognition.v3.model.*;
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
+import classifier.CachingTileClassifier;
+import classifier.DiskTileCache;
+import classifier.LocalTileClassifier;
+import classifier.ResilientTileClassifier;
+import classifier.TileClassifier;
+import classifier.WatsonTileClassifier;
+import cluster.ClusterNode;
+import cluster.HashRing;
+import cluster.HttpTransport;
+import cluster.PeerTileClassifier;
+import cluster.UnauthorizedException;
+import codec.BoxCodec;
+import codec.BoxCodecs;
+import codec.JsonBoxCodec;
+import config.Config;
+import geo.AzimuthMatcher;
+import geo.BuildingIndex;
+import geo.BuildingSource;
+import geo.LocalBuildingSource;
+import geo.LocationCache;
+import geo.ResilientBuildingSource;
+import geo.SocrataBuildingSource;
+import grid.BlobLabeler;
+import grid.OccupancyGrid;
+import image.BufferPool;
+import image.ByteBufferImageInputStream;
+import image.ImageTiler;
+import image.RegionReader;
+import image.UnsupportedImageException;
+import image.WindowTiler;
+import ingest.MultipartReader;
+import ingest.Upload;
+import ingest.UploadException;
+import ingest.UploadReader;
 import model.Box;
 import model.Building;
 import model.Coordinates;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import model.Tile;
+import jobs.Job;
+import jobs.JobManager;
+import journal.ResultLog;
+import journal.ResultRecord;
+import journal.SegmentLog;
+import metrics.MetricsRegistry;
+import remote.CircuitBreaker;
+import remote.RemoteClient;
+import remote.RemoteUnavailableException;
+import server.ServerRuntime;
+import session.Frame;
+import session.FrameClassifier;
+import session.Session;
+import session.SessionStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
-import javax.servlet.MultipartConfigElement;
-import java.awt.*;
-import java.awt.image.BufferedImage;
+import javax.imageio.stream.ImageInputStream;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.delete;
+import static spark.Spark.exception;
+import static spark.Spark.get;
 import static spark.Spark.post;
 
 public class Application {
+    private static final Logger LOG = LoggerFactory.getLogger(Application.class);
+    private static final Config CONFIG = Config.global();
+    //Grid dumps are only logged for one request in this many
+    private static final long DEBUG_SAMPLE_RATE = CONFIG.getLong("ocpc.debug.sampleRate", 100);
+    private static final AtomicLong DEBUG_SAMPLES = new AtomicLong();
+    private static final ObjectMapper JSON = JsonBoxCodec.mapper();
+
     public static final double FOOT_DEGREE = 0.000002742701671;
     public static final double LOCATION_RANGE = 1000;
     private static final int GRID_PIX = 500;
+    private static final int SUBSAMPLING = CONFIG.getInt("ocpc.tile.subsampling", 1);
+    //Decoded pixels a frame may hold at once; fewer means more decode passes over the JPEG (see ImageTiler)
+    private static final long STRIP_PIXELS = CONFIG.getLong("ocpc.tile.stripPixels", ImageTiler.DEFAULT_STRIP_PIXELS);
+    //Coarse-to-fine tiling; cells can then be smaller than GRID_PIX since most of the frame is never tiled
+    private static final boolean ADAPTIVE = CONFIG.getBoolean("ocpc.tile.adaptive", false);
+    private static final int MIN_TILE_PIX = CONFIG.getInt("ocpc.tile.minPix", GRID_PIX);
+    private static final int ADAPTIVE_MAX_CELLS = CONFIG.getInt("ocpc.tile.adaptiveMaxCells", 4);
+    //Overlapping windows of each scale (in GRID_PIX) every STRIDE pixels, which are then the cell size
+    private static final boolean OVERLAP = CONFIG.getBoolean("ocpc.tile.overlap", false);
+    private static final int STRIDE = CONFIG.getInt("ocpc.tile.stride", GRID_PIX / 2);
+    private static final int[] SPANS = spans(CONFIG.getString("ocpc.tile.scales", "1,2"), STRIDE);
+    private static final double VOTE = CONFIG.getDouble("ocpc.tile.vote", 1.0);
+    private static final BufferPool TILE_BUFFERS = new BufferPool(
+            CONFIG.getInt("ocpc.tile.pooledBuffers", 64), 64 * 1024);
 
-    public static void main(String[] args) throws IOException {
-        //Set up properties and load secrets
-        String rootPath = Thread.currentThread().getContextClassLoader().getResource("").getPath().replace("%20", " ");
-        String secretsPath = rootPath + "secrets.properties";
-        Properties secrets = new Properties();
-        secrets.load(new FileInputStream(secretsPath));
+    //Shared by all requests so the number of concurrent Watson calls stays bounded
+    private static final ClassificationExecutor EXECUTOR = new ClassificationExecutor(
+            CONFIG.getInt("ocpc.classify.threads", 16),
+            CONFIG.getInt("ocpc.classify.maxInFlight", 32),
+            CONFIG.getLong("ocpc.classify.deadlineMillis", 30000));
+
+    private static final RemoteClient SOCRATA = remoteClient("socrata", 8, 5000, 800);
+    private static volatile BuildingSource buildingSource = new ResilientBuildingSource(new SocrataBuildingSource(
+            CONFIG.getLong("ocpc.remote.socrata.connectTimeoutMillis", 2000),
+            CONFIG.getLong("ocpc.remote.socrata.readTimeoutMillis", 4000)), SOCRATA);
+    private static final UploadReader UPLOADS = new UploadReader(
+            CONFIG.getLong("ocpc.upload.maxBytes", 20 * 1024 * 1024),
+            CONFIG.getInt("ocpc.upload.memoryThreshold", 8 * 1024 * 1024),
+            CONFIG.getInt("ocpc.upload.pooledBuffers", 8),
+            CONFIG.getInt("ocpc.upload.memoryBuffers", 32), null);
+    //AR sessions: how far a client may move, in feet, before its building list is looked up again, the
+    //camera's horizontal field of view, and how far from a whole tile a turn may be to still reuse tiles
+    private static final double SESSION_MOVE_FEET = CONFIG.getDouble("ocpc.session.moveFeet", 30);
+    private static final double CAMERA_FOV_DEGREES = CONFIG.getDouble("ocpc.camera.fovDegrees", 65);
+    private static final double SESSION_SHIFT_TOLERANCE = CONFIG.getDouble("ocpc.session.shiftTolerance", 0.15);
+    //Blobs further than this from every candidate's azimuth stay unmatched; the default matches as before
+    private static final AzimuthMatcher MATCHER = new AzimuthMatcher(CAMERA_FOV_DEGREES,
+            CONFIG.getDouble("ocpc.match.maxErrorDegrees", 180));
+    private static final LocationCache LOCATION_CACHE = new LocationCache(
+            CONFIG.getInt("ocpc.location.cacheSize", 4096),
+            CONFIG.getLong("ocpc.location.ttlMillis", 10 * 60 * 1000),
+            CONFIG.getInt("ocpc.location.precisionBits", 20));
+    private static final boolean LOG_IMAGES = CONFIG.getBoolean("ocpc.log.images", false);
+    private static volatile ResultLog resultLog;
+    private static volatile ClusterNode cluster;
+
+    private static int[] spans(String scales, int stride) {
+        String[] parts = scales.split(",");
+        int[] spans = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            int window = Integer.parseInt(parts[i].trim()) * GRID_PIX;
+            if (window % stride != 0) {
+                throw new IllegalArgumentException("Stride " + stride + " does not divide window size " + window);
+            }
+            spans[i] = window / stride;
+        }
+        Arrays.sort(spans);
+        return spans;
+    }
+
+    //id=url pairs, comma-separated
+    private static Map<String, String> peers(String peers) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        for (String peer : peers.split(",")) {
+            int eq = peer.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Cluster peers must be id=url pairs: " + peers);
+            }
+            urls.put(peer.substring(0, eq).trim(), peer.substring(eq + 1).trim());
+        }
+        return urls;
+    }
+
+    private static RemoteClient remoteClient(String name, int maxConcurrent, long timeoutMillis, long hedgeMillis) {
+        String prefix = "ocpc.remote." + name + ".";
+        return new RemoteClient(name,
+                CONFIG.getInt(prefix + "maxConcurrent", maxConcurrent),
+                CONFIG.getLong(prefix + "timeoutMillis", timeoutMillis),
+                CONFIG.getLong(prefix + "hedgeMillis", hedgeMillis),
+                new CircuitBreaker(CONFIG.getInt(prefix + "breakerWindow", 20),
+                        CONFIG.getInt(prefix + "breakerMinCalls", 5),
+                        CONFIG.getDouble(prefix + "breakerFailureRatio", 0.5),
+                        CONFIG.getLong(prefix + "breakerOpenMillis", 30000)));
+    }
+
+    private static Runnable authenticator(WatsonTileClassifier service, RemoteClient client) {
+        return () -> client.call(() -> {
+            service.authenticate();
+            return null;
+        });
+    }
+
+    //The key comes from config (OCPC_WATSON_APIKEY), or from secrets.properties on the classpath as before
+    private static VisualRecognition watsonService() throws IOException {
+        String apiKey = CONFIG.getString("ocpc.watson.apiKey", null);
+        if (apiKey == null) {
+            try (InputStream in = Application.class.getClassLoader().getResourceAsStream("secrets.properties")) {
+                if (in != null) {
+                    Properties secrets = new Properties();
+                    secrets.load(in);
+                    apiKey = secrets.getProperty("api-key");
+                }
+            }
+        }
+        if (apiKey == null) {
+            throw new IllegalStateException("No Watson API key: set ocpc.watson.apiKey or add api-key to secrets.properties");
+        }
 
         //Set up connection to IBM Watson Image Recognition
         VisualRecognition service = new VisualRecognition("2018-03-19");
-        service.setEndPoint("https://gateway.watsonplatform.net/visual-recognition/api");
+        service.setEndPoint(CONFIG.getString("ocpc.watson.endpoint", "https://gateway.watsonplatform.net/visual-recognition/api"));
         IamOptions options = new IamOptions.Builder()
-                .apiKey(secrets.getProperty("api-key"))
+                .apiKey(apiKey)
                 .build();
         service.setIamCredentials(options);
+        return service;
+    }
 
-        File uploadDir = new File("upload");
-        uploadDir.mkdir(); // create the upload directory if it doesn't exist
+    public static void main(String[] args) throws IOException {
+        LOG.info("Configuration from {}", CONFIG.getOrigin());
+        if (ADAPTIVE || OVERLAP) {
+            LOG.info("AR sessions classify on the fixed {}px grid; ocpc.tile.{} applies to single frames only", GRID_PIX,
+                    ADAPTIVE ? "adaptive" : "overlap");
+        }
+        //Stream decoding stays in memory; the disk cache also registers a shutdown hook per stream, which
+        //fails every decode while the server drains
+        ImageIO.setUseCache(false);
+        RemoteClient watson = null;
+        Runnable authenticate = null;
+        TileClassifier remote;
+        if ("local".equals(CONFIG.getString("ocpc.classifier", null))) {
+            remote = new LocalTileClassifier(0.08, CONFIG.getLong("ocpc.classifier.latencyMillis", 0), WatsonTileClassifier.MAX_BATCH);
+        } else {
+            watson = remoteClient("watson", 16, 20000, 8000);
+            WatsonTileClassifier service = new WatsonTileClassifier(watsonService());
+            remote = new ResilientTileClassifier(service, watson);
+            authenticate = authenticator(service, watson);
+        }
+        String peers = CONFIG.getString("ocpc.cluster.peers", null);
+        Map<String, String> peerUrls = peers != null ? peers(peers) : null;
+        HttpTransport clusterTransport = peerUrls != null ? new HttpTransport(peerUrls,
+                CONFIG.getInt("ocpc.cluster.connectTimeoutMillis", 500), CONFIG.getInt("ocpc.cluster.readTimeoutMillis", 2000),
+                CONFIG.getString("ocpc.cluster.secret", null)) : null;
+        ClusterNode node = clusterTransport != null ? new ClusterNode(CONFIG.getString("ocpc.cluster.self", null),
+                new HashRing(new ArrayList<>(peerUrls.keySet()), CONFIG.getInt("ocpc.cluster.virtualNodes", 128)),
+                clusterTransport) : null;
+        if (node != null) {
+            remote = new PeerTileClassifier(remote, node);
+        }
+        String cacheFile = CONFIG.getString("ocpc.cache.file", null);
+        long cacheTtl = CONFIG.getLong("ocpc.cache.ttlMillis", 7L * 24 * 60 * 60 * 1000);
+        DiskTileCache disk = cacheFile == null ? null
+                : new DiskTileCache(new File(cacheFile), CONFIG.getInt("ocpc.cache.diskSlots", 1 << 20), cacheTtl);
+        CachingTileClassifier cache = new CachingTileClassifier(remote,
+                CONFIG.getInt("ocpc.cache.entries", 100000), cacheTtl, disk, node != null ? node::ownsTile : key -> true);
+        TileClassifier classifier = cache;
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.gauge("ocpc_tile_cache_hits", "Tile classifications served from memory", cache::getHits);
+        metrics.gauge("ocpc_tile_cache_disk_hits", "Tile classifications served from disk", cache::getDiskHits);
+        metrics.gauge("ocpc_tile_cache_stale_hits", "Tile classifications served expired because the classifier failed", cache::getStaleHits);
+        metrics.gauge("ocpc_tile_cache_misses", "Tile classifications sent to the classifier", cache::getMisses);
+        metrics.gauge("ocpc_tile_cache_evictions", "Tile cache entries evicted or expired", cache::getEvictions);
+        metrics.gauge("ocpc_location_cache_hits", "Building lookups served from cache", LOCATION_CACHE::getHits);
+        metrics.gauge("ocpc_location_cache_misses", "Building lookups fetched from the source", LOCATION_CACHE::getMisses);
+        metrics.gauge("ocpc_location_cache_evictions", "Live building lookups displaced from cache", LOCATION_CACHE::getEvictions);
+        if (node != null) {
+            //Peers only ever get what is cached here, or loaded here, never a forward to a third node
+            node.serve(cache, key -> cachedCandidates(key, false));
+            metrics.gauge("ocpc_cluster_peer_hits", "Tile classifications served from a peer's cache", node::getPeerHits);
+            metrics.gauge("ocpc_cluster_peer_misses", "Tile lookups no peer had cached", node::getPeerMisses);
+            metrics.gauge("ocpc_cluster_peer_failures", "Requests to peers that failed or were skipped", node::getPeerFailures);
+            metrics.gauge("ocpc_cluster_served", "Requests answered for peers", node::getServed);
+            cluster = node;
+        }
 
+        String logDir = CONFIG.getString("ocpc.log.dir", null);
+        if (logDir != null) {
+            ResultLog log = new ResultLog(new SegmentLog(new File(logDir),
+                    CONFIG.getInt("ocpc.log.segmentBytes", 64 * 1024 * 1024), CONFIG.getInt("ocpc.log.maxSegments", 0)),
+                    CONFIG.getInt("ocpc.log.ringSize", 4096), CONFIG.getLong("ocpc.log.maxPendingBytes", 64 * 1024 * 1024),
+                    CONFIG.getLong("ocpc.log.forceMillis", 1000));
+            metrics.gauge("ocpc_result_log_written", "Results written to the result log", log::getWritten);
+            metrics.gauge("ocpc_result_log_dropped", "Results the result log could not keep up with", log::getDropped);
+            metrics.gauge("ocpc_result_log_pending", "Bytes queued for the result log", log::getPending);
+            resultLog = log;
+        }
+
+        String buildingsFile = CONFIG.getString("ocpc.buildings.file", null);
+        if (buildingsFile != null) {
+            setBuildingSource(new LocalBuildingSource(new File(buildingsFile),
+                    BuildingIndex.DEFAULT_CELL_DEGREES, CONFIG.getLong("ocpc.buildings.refreshMillis", 60 * 60 * 1000),
+                    LOCATION_CACHE::clear));
+        }
+
+
+        JobManager jobs = new JobManager(CONFIG.getInt("ocpc.jobs.threads", 4),
+                CONFIG.getInt("ocpc.jobs.queue", 64), CONFIG.getLong("ocpc.jobs.retainMillis", 10 * 60 * 1000));
+        metrics.gauge("ocpc_jobs_queued", "Async image jobs waiting for a worker", jobs::getQueued);
+        metrics.gauge("ocpc_jobs_active", "Async image jobs running", jobs::getActive);
+        metrics.gauge("ocpc_jobs_stored", "Async image jobs held in the result store", jobs::getStored);
+        EventStreams streams = new EventStreams(CONFIG.getInt("ocpc.jobs.streamThreads", 4),
+                CONFIG.getInt("ocpc.jobs.maxStreams", 1000), CONFIG.getLong("ocpc.jobs.keepAliveMillis", 15000));
+        metrics.gauge("ocpc_job_streams", "Open async job event streams", streams::size);
 
         //Begin spark
+        ServerRuntime runtime = new ServerRuntime(CONFIG);
+        runtime.install();
+        exception(RemoteUnavailableException.class, (e, request, response) -> {
+            response.status(503);
+            response.header("Retry-After", "10");
+            response.type("text/plain");
+            response.body(e.getMessage());
+        });
+
         post("/image", ((request, response) -> {
-            request.attribute("org.eclipse.jetty.multipartConfig", new MultipartConfigElement("/temp"));
             double lat = Double.parseDouble(request.queryParams("lat"));
             double lon = Double.parseDouble(request.queryParams("lon"));
             double bearing = Double.parseDouble(request.queryParams("bearing"));
-            try (InputStream input = request.raw().getPart("file").getInputStream()) {
-                return classifyAndRetrieveData(service, input, lat, lon, bearing);
+            Upload upload;
+            try {
+                upload = UPLOADS.read(request.contentType(), request.raw().getContentLengthLong(),
+                        request.raw().getInputStream(), "file");
+            } catch (UploadException e) {
+                response.status(e.getStatus());
+                return e.getMessage();
             } catch (IOException e) {
+                response.status(400);
+                return e.getMessage();
+            }
+            if ("true".equals(request.queryParams("async"))) {
+                Job job;
+                try {
+                    job = submitJob(jobs, classifier, upload, lat, lon, bearing);
+                } catch (RejectedExecutionException e) {
+                    upload.close();
+                    response.status(429);
+                    response.header("Retry-After", "5");
+                    return "Too many queued images";
+                }
+                response.status(202);
+                response.type("application/json");
+                response.header("Location", "/image/" + job.getId());
+                return jobStatus(job);
+            }
+            org.eclipse.jetty.server.Request base = org.eclipse.jetty.server.Request.getBaseRequest(request.raw());
+            BooleanSupplier disconnected = () -> base != null && !base.getHttpChannel().getEndPoint().isOpen();
+            BoxCodec codec = BoxCodecs.negotiate(request.headers("Accept"));
+            try (Upload body = upload) {
+                response.type(codec.getContentType());
+                classifyAndWrite(classifier, new ByteBufferImageInputStream(body.data()), lat, lon, bearing, disconnected,
+                        codec, response.raw().getOutputStream());
+                return "";
+            } catch (IOException | UncheckedIOException | CancellationException e) {
+                response.status(failureStatus(e));
+                response.type("text/plain");
                 return e.getMessage();
             }
+        }));
 
+        get("/image/:id", (request, response) -> {
+            Job job = jobs.get(request.params("id"));
+            if (job == null) {
+                response.status(404);
+                return "Unknown or expired job";
+            }
+            response.type("application/json");
+            if (job.getStatus() == Job.Status.DONE) {
+                return job.getResult();
+            }
+            if (job.getStatus() != Job.Status.FAILED) {
+                response.status(202);
+            }
+            return jobStatus(job);
+        });
 
-        }));
+        get("/image/:id/events", (request, response) -> {
+            Job job = jobs.get(request.params("id"));
+            if (job == null) {
+                response.status(404);
+                return "Unknown or expired job";
+            }
+            if (!streams.open(job, request.raw(), response.raw())) {
+                response.status(503);
+                response.header("Retry-After", "5");
+                return "Too many event streams";
+            }
+            return "";
+        });
+
+        SessionStore sessions = new SessionStore(CONFIG.getInt("ocpc.session.max", 1024),
+                CONFIG.getLong("ocpc.session.idleMillis", 2 * 60 * 1000));
+        metrics.gauge("ocpc_sessions", "Live AR sessions", sessions::size);
+        metrics.gauge("ocpc_session_evictions", "AR sessions dropped for room or idleness", sessions::getEvictions);
+
+        post("/session/:id/frame", (request, response) -> {
+            double lat = Double.parseDouble(request.queryParams("lat"));
+            double lon = Double.parseDouble(request.queryParams("lon"));
+            double bearing = Double.parseDouble(request.queryParams("bearing"));
+            Upload upload;
+            try {
+                upload = UPLOADS.read(request.contentType(), request.raw().getContentLengthLong(),
+                        request.raw().getInputStream(), "file");
+            } catch (UploadException e) {
+                response.status(e.getStatus());
+                return e.getMessage();
+            } catch (IOException e) {
+                response.status(400);
+                return e.getMessage();
+            }
+            Session session = sessions.getOrCreate(request.params("id"));
+            try (Upload body = upload) {
+                response.type("application/json");
+                return processFrame(classifier, session, new ByteBufferImageInputStream(body.data()),
+                        lat, lon, bearing, () -> false);
+            } catch (IOException | UncheckedIOException | CancellationException e) {
+                response.status(failureStatus(e));
+                response.type("text/plain");
+                return e.getMessage();
+            }
+        });
+
+        post("/images/batch", (request, response) -> {
+            String boundary = MultipartReader.boundary(request.contentType());
+            if (boundary == null) {
+                response.status(415);
+                return "Expected multipart/form-data";
+            }
+            org.eclipse.jetty.server.Request base = org.eclipse.jetty.server.Request.getBaseRequest(request.raw());
+            BooleanSupplier disconnected = () -> base != null && !base.getHttpChannel().getEndPoint().isOpen();
+            response.type("application/x-ndjson");
+            new BatchRun(classifier, UPLOADS, response.raw().getOutputStream(), JSON,
+                    CONFIG.getInt("ocpc.batch.maxFrames", 16), disconnected)
+                    .run(new MultipartReader(request.raw().getInputStream(), boundary));
+            return "";
+        });
+
+        delete("/session/:id", (request, response) -> {
+            if (sessions.remove(request.params("id")) == null) {
+                response.status(404);
+                return "Unknown or expired session";
+            }
+            response.status(204);
+            return "";
+        });
+
+        get("/cache/stats", (request, response) -> {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("hits", cache.getHits());
+            stats.put("diskHits", cache.getDiskHits());
+            stats.put("staleHits", cache.getStaleHits());
+            stats.put("misses", cache.getMisses());
+            stats.put("evictions", cache.getEvictions());
+            stats.put("size", (long) cache.size());
+            response.type("application/json");
+            return JSON.writeValueAsString(stats);
+        });
+
+        if (clusterTransport != null) {
+            post(HttpTransport.PATH, (request, response) -> {
+                try {
+                    byte[] answer = clusterTransport.handle(request.bodyAsBytes(),
+                            request.headers(HttpTransport.SIGNATURE_HEADER));
+                    response.type(HttpTransport.CONTENT_TYPE);
+                    return answer;
+                } catch (UnauthorizedException e) {
+                    response.status(403);
+                    response.type("text/plain");
+                    return e.getMessage();
+                }
+            });
+        }
+
+        get("/metrics", (request, response) -> {
+            response.type("text/plain; version=0.0.4");
+            return metrics.scrape();
+        });
+
+        RemoteClient[] remotes = watson != null ? new RemoteClient[]{watson, SOCRATA} : new RemoteClient[]{SOCRATA};
+        get("/health", (request, response) -> {
+            Map<String, Object> health = new LinkedHashMap<>();
+            health.put("status", runtime.getStatus().name().toLowerCase(Locale.ROOT));
+            health.put("threads", runtime.getThreadMode());
+            health.put("inFlight", runtime.getInFlight());
+            //Open breakers degrade answers but do not make the instance unready
+            for (RemoteClient client : remotes) {
+                health.put(client.getName(), client.getState().name().toLowerCase(Locale.ROOT));
+            }
+            response.status(runtime.getStatus() == ServerRuntime.Status.READY ? 200 : 503);
+            response.type("application/json");
+            return JSON.writeValueAsString(health);
+        });
 
+        awaitInitialization();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            runtime.drain();
+            jobs.shutdown();
+            try {
+                jobs.awaitTermination(runtime.getDrainMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            streams.shutdown();
+            sessions.shutdown();
+            EXECUTOR.shutdown();
+            ResultLog log = resultLog;
+            if (log != null) {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    LOG.warn("Unable to close result log", e);
+                }
+            }
+            //Forces what this run classified to the disk cache, so the next start is warm
+            if (disk != null) {
+                try {
+                    disk.close();
+                } catch (IOException e) {
+                    LOG.warn("Unable to close tile cache", e);
+                }
+            }
+        }, "ocpc-drain"));
+        if (CONFIG.getBoolean("ocpc.warmup.enabled", true)) {
+            new Warmup(CONFIG.getInt("ocpc.warmup.frames", 5), CONFIG.getInt("ocpc.warmup.requests", 50))
+                    .run(authenticate, spark.Spark.port());
+        }
+        if (authenticate != null) {
+            //IAM tokens last an hour
+            Warmup.keepAuthenticated(authenticate, CONFIG.getLong("ocpc.watson.tokenRefreshMillis", 40 * 60 * 1000));
+        }
+        runtime.ready();
     }
 
     public static String classifyAndRetrieveData(VisualRecognition service, InputStream input, double lat, double lon, double bearing) {
-        List<Coordinates> boxes = classifyImage(service, splitImage(input));
-        System.out.println("Getting Buildings");
-        List<Building> buildings = getBuildingsNearLocation(lat, lon, bearing, boxes.size());
-        List<Box> result = new ArrayList<>();
-        for (int i = 0; i < Math.min(boxes.size(), buildings.size()); i++) {
-            result.add(new Box(boxes.get(i).getTopLeft(), boxes.get(i).getBottomRight(), buildings.get(i)));
+        return classifyAndRetrieveData(service, input, lat, lon, bearing, () -> false);
+    }
+
+    public static String classifyAndRetrieveData(VisualRecognition service, InputStream input, double lat, double lon, double bearing,
+                                                 BooleanSupplier cancelled) {
+        return classifyAndRetrieveData(new WatsonTileClassifier(service), input, lat, lon, bearing, cancelled);
+    }
+
+    public static String classifyAndRetrieveData(TileClassifier classifier, InputStream input, double lat, double lon, double bearing,
+                                                 BooleanSupplier cancelled) {
+        return classifyAndRetrieveData(classifier, input, lat, lon, bearing, cancelled, PipelineListener.NONE);
+    }
+
+    public static String classifyAndRetrieveData(TileClassifier classifier, InputStream input, double lat, double lon, double bearing,
+                                                 BooleanSupplier cancelled, PipelineListener listener) {
+        ImageInputStream stream;
+        try {
+            stream = ImageIO.createImageInputStream(input);
+        } catch (IOException e) {
+            PipelineMetrics.FAILURES.increment();
+            return e.getMessage();
         }
+        if (stream == null) {
+            PipelineMetrics.FAILURES.increment();
+            return "Unable to open image stream";
+        }
+        return classifyAndRetrieveData(classifier, stream, lat, lon, bearing, cancelled, listener);
+    }
+
+    public static String classifyAndRetrieveData(TileClassifier classifier, Upload upload, double lat, double lon, double bearing,
+                                                 BooleanSupplier cancelled, PipelineListener listener) {
+        return classifyAndRetrieveData(classifier, new ByteBufferImageInputStream(upload.data()), lat, lon, bearing,
+                cancelled, listener);
+    }
+
+    public static String classifyAndRetrieveData(TileClassifier classifier, ImageInputStream input, double lat, double lon, double bearing,
+                                                 BooleanSupplier cancelled, PipelineListener listener) {
         try {
-            return new ObjectMapper().writeValueAsString(result);
-        } catch (JsonProcessingException e) {
+            return classifyToJson(classifier, input, lat, lon, bearing, cancelled, listener);
+        } catch (IOException | UncheckedIOException | CancellationException e) {
             return e.getMessage();
         }
     }
 
+    /**
+     * Like classifyAndRetrieveData, but a frame that cannot be classified fails with the exception instead
+     * of returning its message, so callers can tell a result from an error.
+     */
+    public static String classifyToJson(TileClassifier classifier, ImageInputStream input, double lat, double lon, double bearing,
+                                        BooleanSupplier cancelled, PipelineListener listener) throws IOException {
+        long start = System.nanoTime();
+        try {
+            List<Box> result = detectBoxes(classifier, input, lat, lon, bearing, cancelled, listener);
+            long serialize = System.nanoTime();
+            try {
+                return BoxCodecs.JSON.toString(result);
+            } finally {
+                PipelineMetrics.SERIALIZE.recordSince(serialize);
+            }
+        } catch (IOException | UncheckedIOException | CancellationException e) {
+            PipelineMetrics.FAILURES.increment();
+            throw e;
+        } finally {
+            PipelineMetrics.recordRequest(start);
+        }
+    }
+
+    /**
+     * Queues upload for classification as an async job, which takes over closing it. The job ends DONE
+     * with the boxes as JSON, or FAILED with the reason the frame could not be classified.
+     *
+     * @throws RejectedExecutionException when the job queue is full; upload is then left open
+     */
+    public static Job submitJob(JobManager jobs, TileClassifier classifier, Upload upload, double lat, double lon,
+                                double bearing) {
+        return jobs.submit(j -> {
+            try (Upload body = upload) {
+                return classifyToJson(classifier, new ByteBufferImageInputStream(body.data()), lat, lon, bearing,
+                        () -> false, new JobProgress(j));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Runs the pipeline and writes the boxes to out in the given format, rather than building a String.
+     */
+    public static void classifyAndWrite(TileClassifier classifier, ImageInputStream input, double lat, double lon, double bearing,
+                                        BooleanSupplier cancelled, BoxCodec codec, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            List<Box> result = detectBoxes(classifier, input, lat, lon, bearing, cancelled, PipelineListener.NONE);
+            long serialize = System.nanoTime();
+            codec.write(result, out);
+            PipelineMetrics.SERIALIZE.recordSince(serialize);
+        } catch (IOException | UncheckedIOException | CancellationException e) {
+            PipelineMetrics.FAILURES.increment();
+            throw e;
+        } finally {
+            PipelineMetrics.recordRequest(start);
+        }
+    }
+
+    static Detection classifyFrame(TileClassifier classifier, ImageInputStream input, BooleanSupplier cancelled)
+            throws IOException {
+        return classifyFrame(classifier, input, cancelled, PipelineListener.NONE);
+    }
+
+    //Boxes are in the rotated grid, so the display is as wide as the source image is tall
+    private static Detection classifyFrame(TileClassifier classifier, ImageInputStream input, BooleanSupplier cancelled,
+                                           PipelineListener listener) throws IOException {
+        if (ADAPTIVE) {
+            try (RegionReader image = RegionReader.open(input, TILE_BUFFERS)) {
+                List<Coordinates> boxes = classifyImageAdaptive(classifier, image, MIN_TILE_PIX, ADAPTIVE_MAX_CELLS,
+                        cancelled, listener);
+                int cells = (image.getHeight() + MIN_TILE_PIX - 1) / MIN_TILE_PIX;
+                return new Detection(boxes, cells * MIN_TILE_PIX, MIN_TILE_PIX);
+            }
+        }
+        if (OVERLAP) {
+            try (WindowTiler windows = WindowTiler.open(input, STRIDE, SPANS, GRID_PIX, TILE_BUFFERS)) {
+                List<Coordinates> boxes = classifyImageOverlapping(classifier, windows, cancelled, listener);
+                return new Detection(boxes, windows.getRows() * STRIDE, STRIDE);
+            }
+        }
+        try (ImageTiler tiler = ImageTiler.open(input, GRID_PIX, SUBSAMPLING, STRIP_PIXELS, TILE_BUFFERS)) {
+            List<Coordinates> boxes = classifyImage(classifier, timed(tiler), tiler.getRows(), tiler.getCols(),
+                    cancelled, listener);
+            return new Detection(boxes, tiler.getRows() * GRID_PIX, GRID_PIX);
+        }
+    }
+
+    /**
+     * Pairs each detected blob with the candidate building whose azimuth, seen from lat/lon facing bearing,
+     * falls in the blob's horizontal span (see AzimuthMatcher). Blobs nothing lines up with are dropped.
+     */
+    static List<Box> matchBuildings(Detection detection, List<Building> candidates, double lat, double lon, double bearing,
+                                    PipelineListener listener) {
+        long match = System.nanoTime();
+        List<Coordinates> boxes = detection.getBoxes();
+        int width = detection.getWidth();
+        double[] left = new double[boxes.size()];
+        double[] right = new double[boxes.size()];
+        for (int i = 0; i < boxes.size(); i++) {
+            left[i] = MATCHER.pixelAngle(boxes.get(i).getTopLeft().getX(), width);
+            right[i] = MATCHER.pixelAngle(Math.min(boxes.get(i).getBottomRight().getX() + detection.getCellPix(), width), width);
+        }
+        int[] matched = MATCHER.match(candidates, lat, lon, bearing, left, right, boxes.size());
+        List<Box> result = new ArrayList<>();
+        for (int i = 0; i < matched.length; i++) {
+            if (matched[i] < 0) {
+                PipelineMetrics.BLOBS_UNMATCHED.increment();
+                continue;
+            }
+            Box box = new Box(boxes.get(i).getTopLeft(), boxes.get(i).getBottomRight(), candidates.get(matched[i]));
+            result.add(box);
+            listener.onBox(box);
+        }
+        PipelineMetrics.MATCH.recordSince(match);
+        return result;
+    }
+
+    static long locationKey(double lat, double lon, double bearing) {
+        return LOCATION_CACHE.key(lat, lon, bearing);
+    }
+
+    public static List<Box> detectBoxes(TileClassifier classifier, ImageInputStream input, double lat, double lon, double bearing,
+                                        BooleanSupplier cancelled, PipelineListener listener) throws IOException {
+        long start = System.nanoTime();
+        PipelineMetrics.REQUESTS.increment();
+        ByteBuffer image = input instanceof ByteBufferImageInputStream ? ((ByteBufferImageInputStream) input).data() : null;
+        Detection detection = classifyFrame(classifier, input, cancelled, listener);
+        List<Box> result;
+        List<Building> buildings;
+        if (detection.getBoxes().isEmpty()) {
+            result = new ArrayList<>();
+            buildings = Collections.emptyList();
+        } else {
+            long lookup = System.nanoTime();
+            buildings = candidateBuildings(lat, lon, bearing);
+            PipelineMetrics.BUILDINGS.recordSince(lookup);
+            result = matchBuildings(detection, buildings, lat, lon, bearing, listener);
+        }
+        logResult(image, lat, lon, bearing, result, classifier.getId(), buildings, start);
+        return result;
+    }
+
+    /**
+     * Queues a finished frame for the result log, if there is one. The image, when kept, is copied here,
+     * since upload buffers go back to their pool once the request is done. The candidates are only kept
+     * along with the image, as they are only needed to replay the frame (see journal.Replay).
+     */
+    static void logResult(ByteBuffer image, double lat, double lon, double bearing, List<Box> boxes,
+                          String classifierId, List<Building> candidates, long start) {
+        ResultLog log = resultLog;
+        if (log == null) {
+            return;
+        }
+        byte[] bytes = null;
+        if (LOG_IMAGES && image != null) {
+            bytes = new byte[image.remaining()];
+            image.duplicate().get(bytes);
+        }
+        log.append(new ResultRecord(System.currentTimeMillis(), System.nanoTime() - start, lat, lon, bearing, boxes,
+                classifierId, bytes != null ? new ArrayList<>(candidates) : null, bytes));
+    }
+
+    /**
+     * Processes one frame of an AR session, reusing what the session's previous frame already worked out:
+     * tile answers (see FrameClassifier) and, while the client stays within SESSION_MOVE_FEET and the
+     * same bearing quadrant, the building list. Returns only the boxes that changed since that frame,
+     * plus the ones that disappeared. A frame that cannot be classified fails with the exception, and leaves
+     * the session as it was.
+     * <p>
+     * Sessions always use the fixed GRID_PIX grid, whatever ocpc.tile.adaptive and ocpc.tile.overlap say:
+     * reuse depends on every frame having the same tiles at the same positions.
+     */
+    public static String processFrame(TileClassifier classifier, Session session, ImageInputStream input,
+                                      double lat, double lon, double bearing, BooleanSupplier cancelled) throws IOException {
+        synchronized (session) {
+            long start = System.nanoTime();
+            PipelineMetrics.REQUESTS.increment();
+            Frame previous = session.getLast();
+            boolean stayed = previous != null
+                    && feetBetween(previous.getLat(), previous.getLon(), lat, lon) < SESSION_MOVE_FEET;
+            FrameClassifier frame;
+            Detection detection;
+            try (ImageTiler tiler = ImageTiler.open(input, GRID_PIX, SUBSAMPLING, STRIP_PIXELS, TILE_BUFFERS)) {
+                int shift = stayed && previous.getGrid().getRows() == tiler.getRows()
+                        && previous.getGrid().getCols() == tiler.getCols()
+                        ? shiftRows(bearing - previous.getBearing(), tiler.getHeight()) : FrameClassifier.NO_SHIFT;
+                frame = new FrameClassifier(classifier, previous, shift, tiler.getRows(), tiler.getCols());
+                List<Coordinates> boxes = classifyImage(frame, timed(tiler), tiler.getRows(), tiler.getCols(),
+                        cancelled, PipelineListener.NONE);
+                detection = new Detection(boxes, tiler.getRows() * GRID_PIX, GRID_PIX);
+            } catch (IOException | UncheckedIOException | CancellationException e) {
+                PipelineMetrics.FAILURES.increment();
+                PipelineMetrics.recordRequest(start);
+                throw e;
+            }
+            PipelineMetrics.SESSION_TILES_REUSED.add(frame.getReused());
+
+            long lookup = System.nanoTime();
+            List<Building> buildings;
+            if (stayed && LocationCache.quadrant(bearing) == LocationCache.quadrant(previous.getBearing())) {
+                buildings = previous.getBuildings();
+                PipelineMetrics.SESSION_BUILDINGS_REUSED.increment();
+            } else {
+                buildings = candidateBuildings(lat, lon, bearing);
+            }
+            PipelineMetrics.BUILDINGS.recordSince(lookup);
+
+            List<Box> result = matchBuildings(detection, buildings, lat, lon, bearing, PipelineListener.NONE);
+            //Reused tile answers came from the previous frame's pixels, so only a frame classified afresh
+            //is attributed to the classifier and can be replayed against it
+            logResult(input instanceof ByteBufferImageInputStream ? ((ByteBufferImageInputStream) input).data() : null,
+                    lat, lon, bearing, result, frame.getReused() == 0 ? classifier.getId() : null, buildings, start);
+            Set<Box> before = previous != null ? new HashSet<>(previous.getBoxes()) : Collections.emptySet();
+            Set<Box> now = new HashSet<>(result);
+            List<Box> changed = new ArrayList<>();
+            for (Box box : result) {
+                if (!before.contains(box)) {
+                    changed.add(box);
+                }
+            }
+            List<Box> removed = new ArrayList<>();
+            if (previous != null) {
+                for (Box box : previous.getBoxes()) {
+                    if (!now.contains(box)) {
+                        removed.add(box);
+                    }
+                }
+            }
+            session.setLast(new Frame(lat, lon, bearing, frame.getTiles(), frame.getGrid(), buildings, result));
+
+            long serialize = System.nanoTime();
+            try {
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("frame", session.getFrames());
+                body.put("boxes", changed);
+                body.put("removed", removed);
+                body.put("reusedTiles", frame.getReused());
+                return JSON.writeValueAsString(body);
+            } catch (JsonProcessingException e) {
+                PipelineMetrics.FAILURES.increment();
+                throw new IllegalStateException("Unable to serialize frame", e);
+            } finally {
+                PipelineMetrics.SERIALIZE.recordSince(serialize);
+                PipelineMetrics.recordRequest(start);
+            }
+        }
+    }
+
+    /*
+     * Distance between two nearby points, in feet. A degree of longitude shrinks with cos(latitude), to about
+     * three quarters of a degree of latitude around Troy.
+     */
+    static double feetBetween(double lat1, double lon1, double lat2, double lon2) {
+        double lonScale = Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        return Math.hypot(lat2 - lat1, (lon2 - lon1) * lonScale) / FOOT_DEGREE;
+    }
+
+    /*
+     * Tile rows the view moved by when turning by delta degrees, if that is close to a whole number of tiles.
+     * The display's horizontal axis runs along the source image's rows, bottom to top (see extractBoxes),
+     * so turning right moves what was in row r to row r + cells, and the previous row is this row - cells.
+     */
+    static int shiftRows(double delta, int height) {
+        delta = ((delta % 360) + 540) % 360 - 180;
+        double cells = delta / CAMERA_FOV_DEGREES * height / GRID_PIX;
+        long whole = Math.round(cells);
+        return Math.abs(cells - whole) <= SESSION_SHIFT_TOLERANCE ? (int) -whole : FrameClassifier.NO_SHIFT;
+    }
+
+    /**
+     * Status for a frame that could not be classified: 504 past the deadline, 503 when the request was
+     * cancelled, 415 for a format no reader knows and 400 for an image that does not decode.
+     */
+    static int failureStatus(Exception e) {
+        if (e instanceof DeadlineExceededException) {
+            return 504;
+        }
+        if (e instanceof CancellationException) {
+            return 503;
+        }
+        if (e instanceof UnsupportedImageException) {
+            return 415;
+        }
+        return 400;
+    }
+
+    private static Iterator<Tile> timed(Iterator<Tile> tiles) {
+        return new Iterator<Tile>() {
+            @Override
+            public boolean hasNext() {
+                return tiles.hasNext();
+            }
+
+            @Override
+            public Tile next() {
+                long start = System.nanoTime();
+                Tile tile = tiles.next();
+                PipelineMetrics.TILE.recordSince(start);
+                return tile;
+            }
+        };
+    }
+
+    private static String jobStatus(Job job) throws JsonProcessingException {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", job.getId());
+        status.put("status", job.getStatus());
+        if (job.getStatus() == Job.Status.FAILED) {
+            status.put("error", job.getResult());
+        }
+        return JSON.writeValueAsString(status);
+    }
+
+    private static class JobProgress implements PipelineListener {
+        private final Job job;
+
+        JobProgress(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void onTile(int row, int col, boolean building) {
+            job.publish("tile", "{\"row\":" + row + ",\"col\":" + col + ",\"building\":" + building + "}");
+        }
+
+        @Override
+        public void onBox(Box box) {
+            try {
+                job.publish("box", JSON.writeValueAsString(box));
+            } catch (JsonProcessingException e) {
+                job.publish("box", "{}");
+            }
+        }
+    }
+
     public static List<List<InputStream>> splitImage(InputStream input) {
-        final BufferedImage source;
         List<List<InputStream>> chopped = new ArrayList<>();
-        try {
-            source = ImageIO.read(input);
-            for (int y = 0; y < source.getHeight() - GRID_PIX; y += GRID_PIX) {
-                chopped.add(new ArrayList<>());
-                for (int x = 0; x < source.getWidth() - GRID_PIX; x += GRID_PIX) {
-                    BufferedImage subImage = source.getSubimage(x, y, GRID_PIX, GRID_PIX);
-                    ByteArrayOutputStream os = new ByteArrayOutputStream();
-                    ImageIO.write(subImage, "jpg", os);
-                    InputStream is = new ByteArrayInputStream(os.toByteArray());
-                    chopped.get(y / GRID_PIX).add(is);
+        for (List<Tile> row : splitTiles(input)) {
+            List<InputStream> streams = new ArrayList<>();
+            for (Tile tile : row) {
+                streams.add(tile.open());
+            }
+            chopped.add(streams);
+        }
+        return chopped;
+    }
+
+    public static List<List<Tile>> splitTiles(InputStream input) {
+        List<List<Tile>> chopped = new ArrayList<>();
+        try (ImageTiler tiler = ImageTiler.open(input, GRID_PIX, SUBSAMPLING, STRIP_PIXELS, null)) {
+            while (tiler.hasNext()) {
+                Tile tile = tiler.next();
+                if (tile.getCol() == 0) {
+                    chopped.add(new ArrayList<>());
                 }
+                chopped.get(tile.getRow()).add(tile);
             }
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             e.printStackTrace();
         }
         return chopped;
     }
 
     public static List<Coordinates> classifyImage(VisualRecognition service, List<List<InputStream>> chopped) {
-        List<List<Boolean>> foundBuilding = chopped.stream()
-                .map(row ->
-                        row.stream()
-                                .map(image -> containsBuilding(service, image))
-                                .collect(Collectors.toList())
-                )
-                .collect(Collectors.toList());
-
-        foundBuilding = rotateCW(foundBuilding);
-
-        for (List<Boolean> row : foundBuilding) {
-            for (boolean i : row) {
-                System.out.print(i ? "T " : "F ");
-            }
-            System.out.println();
-        }
-
-        List<List<Integer>> colored = extractBlobs(foundBuilding);
-        int maxLabel = 0;
-        for (List<Integer> row : colored) {
-            for (int i : row) {
-                System.out.print(i + " ");
-                maxLabel = Math.max(i, maxLabel);
-            }
-            System.out.println();
-        }
-        int[] xmins = new int[maxLabel];
-        int[] ymins = new int[maxLabel];
-        Arrays.fill(xmins, colored.get(0).size());
-        Arrays.fill(ymins, colored.size());
-        int[] xmaxs = new int[maxLabel];
-        int[] ymaxs = new int[maxLabel];
-        for (int y = 0; y < colored.size(); y++) {
-            for (int x = 0; x < colored.get(y).size(); x++) {
-                int lbl = colored.get(y).get(x) - 1;
-                if (lbl >= 0) {
-                    xmins[lbl] = Math.min(xmins[lbl], x);
-                    ymins[lbl] = Math.min(ymins[lbl], y);
-                    xmaxs[lbl] = Math.max(xmaxs[lbl], x);
-                    ymaxs[lbl] = Math.max(ymaxs[lbl], y);
+        List<List<Tile>> tiles = new ArrayList<>();
+        try {
+            for (int y = 0; y < chopped.size(); y++) {
+                tiles.add(new ArrayList<>());
+                for (int x = 0; x < chopped.get(y).size(); x++) {
+                    byte[] bytes = readFully(chopped.get(y).get(x));
+                    tiles.get(y).add(new Tile(y, x, bytes, bytes.length));
                 }
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return classifyImage(new WatsonTileClassifier(service), tiles, () -> false);
+    }
+
+    public static List<Coordinates> classifyImage(TileClassifier classifier, List<List<Tile>> chopped,
+                                                  BooleanSupplier cancelled) {
+        int cols = chopped.isEmpty() ? 0 : chopped.get(0).size();
+        return classifyImage(classifier, chopped.stream().flatMap(List::stream).iterator(), chopped.size(), cols, cancelled,
+                PipelineListener.NONE);
+    }
+
+    public static List<Coordinates> classifyImage(TileClassifier classifier, Iterator<Tile> tiles, int rows, int cols,
+                                                  BooleanSupplier cancelled, PipelineListener listener) {
+        if (rows == 0 || cols == 0) {
+            return new ArrayList<>();
         }
-        System.out.println("Found mins and maxes");
-        List<Coordinates> coords = new ArrayList<>();
-        for (int i = 0; i < maxLabel; i++) {
-            coords.add(new Coordinates(xmins[i] * GRID_PIX, ymins[i] * GRID_PIX,
-                    xmaxs[i] * GRID_PIX, ymaxs[i] * GRID_PIX));
+        long classify = System.nanoTime();
+        int[] pending = new int[rows];
+        Arrays.fill(pending, cols);
+        RowMerge merge = new RowMerge(new OccupancyGrid(rows, cols), pending);
+        classifyTiles(classifier, tiles, merge, cancelled, listener);
+        PipelineMetrics.CLASSIFY.recordSince(classify);
+        return extractBoxes(merge, GRID_PIX);
+    }
+
+    /**
+     * Coarse-to-fine variant of classifyImage: only regions of the frame that test positive are split
+     * further, down to cells of cellPix source pixels, which are then the unit of the returned boxes.
+     */
+    public static List<Coordinates> classifyImageAdaptive(TileClassifier classifier, RegionReader image, int cellPix, int maxCells,
+                                                          BooleanSupplier cancelled, PipelineListener listener) {
+        long classify = System.nanoTime();
+        OccupancyGrid found = AdaptiveTiling.classify(classifier, image, cellPix, GRID_PIX, maxCells, EXECUTOR,
+                cancelled, listener);
+        PipelineMetrics.CLASSIFY.recordSince(classify);
+        //Regions resolve coarse to fine, so no row is final before the end and the merge gets them all at once
+        return extractBoxes(new RowMerge(found, new int[found.getRows()]), cellPix);
+    }
+
+    /**
+     * Overlapping, multi-scale variant of classifyImage (see OverlapTiling); boxes are in cells of the
+     * windows' stride.
+     */
+    public static List<Coordinates> classifyImageOverlapping(TileClassifier classifier, WindowTiler windows,
+                                                             BooleanSupplier cancelled, PipelineListener listener) {
+        if (windows.getRows() == 0 || windows.getCols() == 0) {
+            return new ArrayList<>();
         }
-        System.out.println("Returning coordinates");
-        return coords;
+        long classify = System.nanoTime();
+        RowMerge merge = OverlapTiling.classify(classifier, windows, timed(windows), VOTE, EXECUTOR, cancelled, listener);
+        PipelineMetrics.CLASSIFY.recordSince(classify);
+        return extractBoxes(merge, windows.getStride());
     }
 
-    public static boolean containsBuilding(VisualRecognition service, InputStream image) {
-        List<ClassifierResult> classifiers = classifyImage(service, image).getClassifiers();
-        if (!classifiers.isEmpty()) {
-            List<ClassResult> classes = classifiers.get(0).getClasses();
-            for (ClassResult result : classes) {
-                if (result.getClassName().equalsIgnoreCase("building")) {
-                    return true;
-                }
-            }
+    //Rows have been labelled as they completed, so this is mostly the final sort
+    private static List<Coordinates> extractBoxes(RowMerge merge, int cellPix) {
+        List<Coordinates> coords = merge.finish(cellPix);
+        if (LOG.isDebugEnabled() && DEBUG_SAMPLES.getAndIncrement() % DEBUG_SAMPLE_RATE == 0) {
+            LOG.debug("Classified grid:\n{}Blobs:\n{}", merge.getGrid().rotateCW(), coords);
         }
-        return false;
+        return coords;
     }
 
-    public static List<List<Integer>> extractBlobs(List<List<Boolean>> foundBuilding) {
-        //Initialize to 0s
-        List<List<Integer>> colored = new ArrayList<>();
-        for (int y = 0; y < foundBuilding.size(); y++) {
-            colored.add(new ArrayList<>());
-            for (int x = 0; x < foundBuilding.get(y).size(); x++) {
-                colored.get(y).add(0);
-            }
-        }
-
-        int label = 1;
-        LinkedList<Point> queue = new LinkedList<>();
-        for (int y = 0; y < foundBuilding.size(); y++) {
-            for (int x = 0; x < foundBuilding.get(y).size(); x++) {
-                if (colored.get(y).get(x) == 0
-                        && foundBuilding.get(y).get(x)) {
-                    colored.get(y).set(x, label);
-                    queue.add(new Point(x, y));
-                    while (!queue.isEmpty()) {
-                        Point next = queue.pop();
-                        int x1 = (int) next.getX();
-                        int y1 = (int) next.getY();
-                        if (y1 > 0) {
-                            if (colored.get(y1 - 1).get(x1) == 0
-                                    && foundBuilding.get(y1 - 1).get(x1)) {
-                                colored.get(y1 - 1).set(x1, label);
-                                queue.add(new Point(x1, y1 - 1));
-                            }
-                        }
-                        if (y1 < colored.size() - 1) {
-                            if (colored.get(y1 + 1).get(x1) == 0
-                                    && foundBuilding.get(y1 + 1).get(x1)) {
-                                colored.get(y1 + 1).set(x1, label);
-                                queue.add(new Point(x1, y1 + 1));
-                            }
-                        }
-                        if (x1 > 0) {
-                            if (colored.get(y1).get(x1 - 1) == 0
-                                    && foundBuilding.get(y1).get(x1 - 1)) {
-                                colored.get(y1).set(x1 - 1, label);
-                                queue.add(new Point(x1 - 1, y1));
-                            }
-                        }
-                        if (x1 < colored.get(y1).size() - 1) {
-                            if (colored.get(y1).get(x1 + 1) == 0
-                                    && foundBuilding.get(y1).get(x1 + 1)) {
-                                colored.get(y1).set(x1 + 1, label);
-                                queue.add(new Point(x1 + 1, y1));
-                            }
-                        }
+    /**
+     * Pulls tiles lazily, sends them to the classifier in batches of at most maxBatchSize, running the
+     * batches concurrently, and returns a rows x cols grid. Each tile is released as soon as its batch
+     * has been classified, so only the in-flight batches are held in memory.
+     */
+    public static OccupancyGrid classifyTiles(TileClassifier classifier, Iterator<Tile> tiles, int rows, int cols,
+                                              BooleanSupplier cancelled, PipelineListener listener) {
+        int[] pending = new int[rows];
+        Arrays.fill(pending, cols);
+        RowMerge merge = new RowMerge(new OccupancyGrid(rows, cols), pending);
+        classifyTiles(classifier, tiles, merge, cancelled, listener);
+        return merge.getGrid();
+    }
+
+    /**
+     * classifyTiles that writes into merge as batches complete, each tile counting once towards its row.
+     */
+    private static void classifyTiles(TileClassifier classifier, Iterator<Tile> tiles, RowMerge merge,
+                                      BooleanSupplier cancelled, PipelineListener listener) {
+        OccupancyGrid found = merge.getGrid();
+        Iterator<List<Tile>> batches = new Iterator<List<Tile>>() {
+            @Override
+            public boolean hasNext() {
+                return tiles.hasNext();
+            }
+
+            @Override
+            public List<Tile> next() {
+                List<Tile> batch = new ArrayList<>(classifier.maxBatchSize());
+                while (tiles.hasNext() && batch.size() < classifier.maxBatchSize()) {
+                    batch.add(tiles.next());
+                }
+                return batch;
+            }
+        };
+        EXECUTOR.map(batches, batch -> {
+            long start = System.nanoTime();
+            try {
+                boolean[] result = classifier.containsBuildings(batch);
+                long elapsed = System.nanoTime() - start;
+                PipelineMetrics.CLASSIFY_BATCH.record(elapsed);
+                for (int i = 0; i < batch.size(); i++) {
+                    PipelineMetrics.CLASSIFY_TILE.record(elapsed / batch.size());
+                }
+                PipelineMetrics.TILES.add(batch.size());
+                //Each tile owns its own bit, but cells share words, so writes must not interleave
+                synchronized (merge) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        found.set(batch.get(i).getRow(), batch.get(i).getCol(), result[i]);
+                        merge.arrived(batch.get(i).getRow());
                     }
-                    label++;
+                    merge.label();
                 }
+                for (int i = 0; i < batch.size(); i++) {
+                    listener.onTile(batch.get(i).getRow(), batch.get(i).getCol(), result[i]);
+                }
+                return result;
+            } finally {
+                batch.forEach(Tile::release);
             }
-        }
-        return colored;
+        }, cancelled);
+    }
+
+    public static boolean containsBuilding(VisualRecognition service, InputStream image) {
+        return WatsonTileClassifier.containsBuilding(classifyImage(service, image));
+    }
+
+    public static List<List<Integer>> extractBlobs(List<List<Boolean>> foundBuilding) {
+        return BlobLabeler.label(OccupancyGrid.of(foundBuilding)).toLists();
     }
 
     public static ClassifiedImage classifyImage(VisualRecognition service, InputStream input) {
-        ClassifyOptions classifyOptions = new ClassifyOptions.Builder()
-                .imagesFile(input)
-                .imagesFilename("test.jpg")
-                .threshold((float) 0.3)
-                .classifierIds(Arrays.asList("default"))
-                .build();
-        ClassifiedImages result = service.classify(classifyOptions).execute();
-        return result.getImages().get(0);
+        return new WatsonTileClassifier(service).classify(input, "test.jpg");
     }
 
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            os.write(buffer, 0, read);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * The numBuildings nearest buildings ahead of the viewer, ordered along the bearing.
+     */
     public static List<Building> getBuildingsNearLocation(double lat, double lon, double bearing, int numBuildings) {
-        List<Building> buildings = new ArrayList<>();
+        List<Building> sorted = sortAlongBearing(new ArrayList<>(candidateBuildings(lat, lon, bearing)), bearing);
+        return sorted.subList(0, Math.min(numBuildings, sorted.size()));
+    }
+
+    /**
+     * All buildings in the box ahead of the viewer, in no particular order; AzimuthMatcher does not need one.
+     */
+    static List<Building> candidateBuildings(double lat, double lon, double bearing) {
         //For demo only
         if (lat >= 42.5 && lat <= 43 && lon >= -73.9 && lon <= -73.3) {
             Building b = new Building();
             b.setLatitute(42.7);
             b.setLongitude(-73.6);
             b.setOccupancy(4780);
-            buildings.add(b);
-            return buildings;
+            return Collections.singletonList(b);
+        }
+        //Everyone in the same cell facing the same quadrant shares one lookup, made from the cell's center
+        return cachedCandidates(LOCATION_CACHE.key(lat, lon, bearing), true);
+    }
+
+    //In a cluster, a cell another node owns is asked of that node, so it is loaded once for all of them
+    private static List<Building> cachedCandidates(long cell, boolean forward) {
+        //Hits skip building the capturing loader below
+        List<Building> cached = LOCATION_CACHE.get(cell);
+        if (cached != null) {
+            return cached;
         }
+        try {
+            return LOCATION_CACHE.getOrLoad(cell, key -> {
+                ClusterNode node = cluster;
+                if (forward && node != null && !node.owns(key)) {
+                    List<Building> owned = node.lookupBuildings(key);
+                    if (owned != null) {
+                        return Collections.unmodifiableList(owned);
+                    }
+                }
+                return Collections.unmodifiableList(queryCandidates(LOCATION_CACHE.cellLatitude(key),
+                        LOCATION_CACHE.cellLongitude(key), LocationCache.quadrantBearing(LocationCache.quadrant(key))));
+            });
+        } catch (RemoteUnavailableException e) {
+            List<Building> stale = LOCATION_CACHE.getStale(cell);
+            if (stale == null) {
+                throw e;
+            }
+            PipelineMetrics.BUILDINGS_STALE.increment();
+            return stale;
+        }
+    }
+
+    /**
+     * Uncached lookup: all buildings in the box ahead of the viewer, ordered along the bearing.
+     */
+    public static List<Building> queryBuildingsNearLocation(double lat, double lon, double bearing) {
+        return sortAlongBearing(queryCandidates(lat, lon, bearing), bearing);
+    }
+
+    private static List<Building> queryCandidates(double lat, double lon, double bearing) {
         double lat1, lon1;
         if (bearing > 315 || bearing < 45) {
             lat1 = lat + FOOT_DEGREE * LOCATION_RANGE;
@@ -270,30 +1173,11 @@ public class Application {
         }
 //        System.out.println(String.format("%f, %f, %f, %f", lat, lat1, lon, lon1));
 
-        try {
-            HttpResponse<JsonNode> jsonResponse = Unirest.get("https://data.cityofnewyork.us/resource/2vyb-t2nz.json")
-                    .header("accept", "application/json")
-                    .queryString("$select", "latitude,longitude,ex_dwelling_unit")
-                    .queryString("$where", "within_box(location,"
-                            + Math.max(lat, lat1) + ","
-                            + Math.min(lon, lon1) + ","
-                            + Math.min(lat, lat1) + ","
-                            + Math.max(lon, lon1) + ")")
-                    .asJson();
-            JSONArray buildingsRoot = jsonResponse.getBody().getArray();
-            for (int i = 0; i < buildingsRoot.length(); i++) {
-                JSONObject buildingObject = buildingsRoot.getJSONObject(i);
-                if (buildingObject.keySet().size() == 3) {
-                    Building building = new Building();
-                    building.setLatitute(buildingObject.getDouble("latitude"));
-                    building.setLongitude(buildingObject.getDouble("longitude"));
-                    building.setOccupancy(buildingObject.getInt("ex_dwelling_unit"));
-                    buildings.add(building);
-                }
-            }
-        } catch (UnirestException e) {
-            e.printStackTrace();
-        }
+        return new ArrayList<>(buildingSource.within(Math.max(lat, lat1), Math.min(lon, lon1),
+                Math.min(lat, lat1), Math.max(lon, lon1)));
+    }
+
+    private static List<Building> sortAlongBearing(List<Building> buildings, double bearing) {
         if (bearing > 315 || bearing < 45) {
             Collections.sort(buildings, Comparator.comparing(Building::getLatitute).thenComparing(Building::getLongitude));
         } else if (bearing < 135) {
@@ -304,21 +1188,15 @@ public class Application {
             Collections.sort(buildings, Comparator.comparing(Building::getLongitude).reversed().thenComparing(Building::getLatitute));
         }
 
-        return buildings.subList(0, Math.min(numBuildings, buildings.size()));
+        return buildings;
     }
 
-    static List<List<Boolean>> rotateCW(List<List<Boolean>> mat) {
-        final int M = mat.size();
-        final int N = mat.get(0).size();
-        List<List<Boolean>> ret = new ArrayList<>();
-        for (int i = 0; i < N; i++) {
-            ret.add(new ArrayList<>(Collections.nCopies(M, false)));
-        }
-        for (int r = 0; r < M; r++) {
-            for (int c = 0; c < N; c++) {
-                ret.get(c).set(M - 1 - r, mat.get(r).get(c));
-            }
-        }
-        return ret;
+    public static void setBuildingSource(BuildingSource source) {
+        buildingSource = source;
+        LOCATION_CACHE.clear();
+    }
+
+    public static List<List<Boolean>> rotateCW(List<List<Boolean>> mat) {
+        return OccupancyGrid.of(mat).rotateCW().toLists();
     }
 }
@@ -0,0 +1,280 @@
+package api;
+
+import classifier.DedupingTileClassifier;
+import classifier.TileClassifier;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import config.Config;
+import image.ByteBufferImageInputStream;
+import ingest.MultipartReader;
+import ingest.Upload;
+import ingest.UploadException;
+import ingest.UploadReader;
+import model.Box;
+import model.Building;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import remote.RemoteUnavailableException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One POST /images/batch request. Frames are read off the multipart stream one after another and
+ * handed to a shared pool as soon as each arrives, so decoding overlaps with the upload and with other
+ * frames. Identical tiles across the batch are classified once, frames in the same location cell
+ * share one building lookup, and each frame's result is written as an NDJSON line when it finishes.
+ * <p>
+ * A frame is a file part preceded by lat, lon and bearing fields, and optionally an id field:
+ * <pre>-F lat=.. -F lon=.. -F bearing=.. -F file=@a.jpg -F lat=.. ...</pre>
+ */
+final class BatchRun {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchRun.class);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService FRAMES = Executors.newFixedThreadPool(
+            Config.global().getInt("ocpc.batch.threads", Runtime.getRuntime().availableProcessors()), r -> {
+                Thread t = new Thread(r, "batch-frame-" + THREADS.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+    private static final int MAX_FIELD_BYTES = 256;
+
+    private final DedupingTileClassifier classifier;
+    private final UploadReader uploads;
+    private final OutputStream out;
+    private final ObjectMapper json;
+    private final BooleanSupplier cancelled;
+    //Frames read but not finished; bounds the uploads held in memory
+    private final Semaphore window;
+    private final Map<Long, CompletableFuture<List<Building>>> cells = new ConcurrentHashMap<>();
+
+    BatchRun(TileClassifier classifier, UploadReader uploads, OutputStream out, ObjectMapper json, int maxFrames,
+             BooleanSupplier cancelled) {
+        this.classifier = new DedupingTileClassifier(classifier);
+        this.uploads = uploads;
+        this.out = out;
+        this.json = json;
+        this.window = new Semaphore(maxFrames);
+        this.cancelled = cancelled;
+    }
+
+    void run(MultipartReader reader) throws IOException {
+        List<Future<?>> frames = new ArrayList<>();
+        IOException unreadable = null;
+        try {
+            readFrames(reader, frames);
+        } catch (IOException e) {
+            unreadable = e;
+        }
+        //Finish what was read, then report why the rest could not be
+        try {
+            awaitAll(frames);
+        } finally {
+            PipelineMetrics.BATCH_TILES_DEDUPLICATED.add(classifier.getDuplicates());
+        }
+        if (unreadable != null) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("error", unreadable.getMessage());
+            writeLine(line);
+        }
+    }
+
+    //Tiles answered by an identical tile elsewhere in the batch
+    long getDuplicates() {
+        return classifier.getDuplicates();
+    }
+
+    private void readFrames(MultipartReader reader, List<Future<?>> frames) throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        MultipartReader.Part part;
+        while ((part = reader.nextPart()) != null) {
+            if (!"file".equals(part.getName())) {
+                if (part.getName() != null) {
+                    ByteArrayOutputStream value = new ByteArrayOutputStream();
+                    reader.readBody(value, MAX_FIELD_BYTES);
+                    fields.put(part.getName(), new String(value.toByteArray(), StandardCharsets.UTF_8).trim());
+                }
+                continue;
+            }
+            int index = frames.size();
+            String id = fields.containsKey("id") ? fields.get("id")
+                    : part.getFilename() != null ? part.getFilename() : String.valueOf(index);
+            Double lat = number(fields.get("lat"));
+            Double lon = number(fields.get("lon"));
+            Double bearing = number(fields.get("bearing"));
+            fields.clear();
+            if (lat == null || lon == null || bearing == null) {
+                frames.add(CompletableFuture.completedFuture(null));
+                writeError(index, id, "Missing or invalid lat, lon or bearing");
+                continue;
+            }
+            try {
+                window.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for frame slot");
+            }
+            Upload upload;
+            try {
+                upload = uploads.readPart(reader, part);
+            } catch (UploadException e) {
+                window.release();
+                //A rejected type leaves the stream intact; anything else means the rest cannot be read
+                if (e.getStatus() != 415) {
+                    throw e;
+                }
+                frames.add(CompletableFuture.completedFuture(null));
+                writeError(index, id, e.getMessage());
+                continue;
+            } catch (IOException | RuntimeException e) {
+                window.release();
+                throw e;
+            }
+            frames.add(FRAMES.submit(() -> {
+                try (Upload body = upload) {
+                    process(index, id, body, lat, lon, bearing);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    window.release();
+                }
+            }));
+        }
+    }
+
+    private static Double number(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    //A frame that fails for any reason gets an error line; the rest of the batch carries on
+    private void process(int index, String id, Upload upload, double lat, double lon, double bearing) throws IOException {
+        try {
+            processFrame(index, id, upload, lat, lon, bearing);
+        } catch (RuntimeException e) {
+            PipelineMetrics.FAILURES.increment();
+            LOG.warn("Batch frame {} failed", id, e);
+            writeError(index, id, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    private void processFrame(int index, String id, Upload upload, double lat, double lon, double bearing)
+            throws IOException {
+        long start = System.nanoTime();
+        PipelineMetrics.BATCH_FRAMES.increment();
+        Detection detection;
+        try {
+            detection = Application.classifyFrame(classifier, new ByteBufferImageInputStream(upload.data()), cancelled);
+        } catch (IOException | UncheckedIOException | CancellationException | RemoteUnavailableException e) {
+            PipelineMetrics.FAILURES.increment();
+            writeError(index, id, e.getMessage());
+            return;
+        }
+        List<Building> buildings;
+        try {
+            buildings = buildingsNear(lat, lon, bearing);
+        } catch (RemoteUnavailableException e) {
+            PipelineMetrics.FAILURES.increment();
+            writeError(index, id, e.getMessage());
+            return;
+        }
+        List<Box> result = Application.matchBuildings(detection, buildings, lat, lon, bearing, PipelineListener.NONE);
+        Application.logResult(upload.data(), lat, lon, bearing, result, classifier.getId(), buildings, start);
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", index);
+        line.put("id", id);
+        line.put("boxes", result);
+        writeLine(line);
+    }
+
+    //One lookup per location cell for the whole batch, however many frames land in it
+    private List<Building> buildingsNear(double lat, double lon, double bearing) {
+        long key = Application.locationKey(lat, lon, bearing);
+        CompletableFuture<List<Building>> mine = new CompletableFuture<>();
+        CompletableFuture<List<Building>> existing = cells.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                //Rethrow the lookup's own exception so a RemoteUnavailableException is reported as such
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        List<Building> buildings;
+        try {
+            buildings = Application.candidateBuildings(lat, lon, bearing);
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        mine.complete(buildings);
+        return buildings;
+    }
+
+    private void writeError(int index, String id, String message) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", index);
+        line.put("id", id);
+        line.put("error", message);
+        writeLine(line);
+    }
+
+    private void writeLine(Map<String, Object> line) throws IOException {
+        byte[] bytes = json.writeValueAsBytes(line);
+        synchronized (out) {
+            out.write(bytes);
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    //Frames report their own failures, so what reaches here means the response can no longer be written
+    private void awaitAll(List<Future<?>> frames) throws IOException {
+        for (Future<?> frame : frames) {
+            try {
+                frame.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for frames");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+}
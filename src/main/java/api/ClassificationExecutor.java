@@ -0,0 +1,162 @@
+package api;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+public class ClassificationExecutor {
+    private static final long POLL_MILLIS = 50;
+
+    private final ThreadPoolExecutor pool;
+    private final Semaphore inFlight;
+    private final long deadlineMillis;
+
+    public ClassificationExecutor(int threads, int maxInFlight, long deadlineMillis) {
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "tile-classifier-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.pool.allowCoreThreadTimeOut(true);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Applies task to every cell of the grid on the worker pool. The returned grid has the same shape
+     * as the input. If the deadline passes or cancelled reports true, outstanding work is cancelled
+     * and a CancellationException is thrown.
+     */
+    public <T, R> List<List<R>> mapGrid(List<List<T>> grid, Function<T, R> task, BooleanSupplier cancelled) {
+        List<T> cells = new ArrayList<>();
+        for (List<T> row : grid) {
+            cells.addAll(row);
+        }
+        List<R> flat = map(cells, task, cancelled);
+        List<List<R>> results = new ArrayList<>();
+        int i = 0;
+        for (List<T> row : grid) {
+            results.add(new ArrayList<>(flat.subList(i, i + row.size())));
+            i += row.size();
+        }
+        return results;
+    }
+
+    /**
+     * Applies task to every item on the worker pool and returns the results in input order.
+     */
+    public <T, R> List<R> map(List<T> items, Function<T, R> task, BooleanSupplier cancelled) {
+        return map(items.iterator(), task, cancelled);
+    }
+
+    /**
+     * Like map(List, ...), but pulls items lazily on the calling thread. Once the in-flight limit is
+     * reached the iterator is not advanced until a slot frees up, so producing items overlaps with
+     * running them without building up an unbounded backlog.
+     */
+    public <T, R> List<R> map(Iterator<T> items, Function<T, R> task, BooleanSupplier cancelled) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        List<Future<R>> futures = new ArrayList<>();
+        try {
+            while (items.hasNext()) {
+                acquire(deadline, cancelled);
+                T item;
+                try {
+                    item = items.next();
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                //The slot is given back once by whichever comes first: the task finishing, or a cancel
+                //before it started. A running task keeps its slot after cancel(true) until it really ends.
+                AtomicBoolean claimed = new AtomicBoolean();
+                FutureTask<R> future = new FutureTask<R>(() -> {
+                    if (!claimed.compareAndSet(false, true)) {
+                        return null;
+                    }
+                    try {
+                        return task.apply(item);
+                    } finally {
+                        inFlight.release();
+                    }
+                }) {
+                    @Override
+                    protected void done() {
+                        if (isCancelled() && claimed.compareAndSet(false, true)) {
+                            inFlight.release();
+                        }
+                    }
+                };
+                try {
+                    pool.execute(future);
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+                futures.add(future);
+            }
+
+            List<R> results = new ArrayList<>(futures.size());
+            for (Future<R> future : futures) {
+                results.add(await(future, deadline, cancelled));
+            }
+            return results;
+        } catch (RuntimeException e) {
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void acquire(long deadline, BooleanSupplier cancelled) {
+        try {
+            while (!inFlight.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkCancelled(deadline, cancelled);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a classifier slot");
+        }
+    }
+
+    private <R> R await(Future<R> future, long deadline, BooleanSupplier cancelled) {
+        while (true) {
+            checkCancelled(deadline, cancelled);
+            try {
+                return future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                //Keep polling until the deadline or a disconnect
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while classifying tiles");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private static void checkCancelled(long deadline, BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Client disconnected");
+        }
+        if (System.nanoTime() - deadline > 0) {
+            throw new DeadlineExceededException("Classification deadline exceeded");
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package api;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Classification was given up because it ran past ocpc.classify.deadlineMillis, as opposed to being
+ * cancelled by the client going away.
+ */
+public class DeadlineExceededException extends CancellationException {
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,39 @@
+package api;
+
+import model.Coordinates;
+
+import java.util.List;
+
+/**
+ * Blobs found in one frame, in display coordinates (the classified grid rotated clockwise), along with
+ * what is needed to turn their edges into camera angles.
+ */
+final class Detection {
+    private final List<Coordinates> boxes;
+    private final int width;
+    private final int cellPix;
+
+    Detection(List<Coordinates> boxes, int width, int cellPix) {
+        this.boxes = boxes;
+        this.width = width;
+        this.cellPix = cellPix;
+    }
+
+    List<Coordinates> getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * Display width in source pixels, rounded up to whole cells.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Size of one grid cell; a box's bottom-right corner is the top-left of its last cell.
+     */
+    int getCellPix() {
+        return cellPix;
+    }
+}
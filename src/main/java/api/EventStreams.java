@@ -0,0 +1,190 @@
+package api;
+
+import jobs.Job;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-sent events for async jobs without a request thread per subscriber. Each stream is put in
+ * async mode and its request thread returned to Jetty; a new job event schedules the stream on a small
+ * writer pool, which sends whatever is queued. Idle streams get a keep-alive comment every
+ * keepAliveMillis, which is also how a client that went away is noticed.
+ */
+final class EventStreams {
+    private static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ExecutorService writers;
+    private final ScheduledExecutorService keepAlive;
+    private final Set<Stream> open = ConcurrentHashMap.newKeySet();
+    private final int maxStreams;
+
+    EventStreams(int threads, int maxStreams, long keepAliveMillis) {
+        AtomicInteger count = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "job-events-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.keepAlive = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-events-keepalive");
+            t.setDaemon(true);
+            return t;
+        });
+        this.maxStreams = maxStreams;
+        keepAlive.scheduleWithFixedDelay(() -> {
+            for (Stream stream : open) {
+                writers.execute(stream::keepAlive);
+            }
+        }, keepAliveMillis, keepAliveMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replays job's events so far to the client and follows the job until it finishes. The response is
+     * committed before this returns, so the route's own return value is not written.
+     *
+     * @return false, having written nothing, when maxStreams are already open
+     */
+    boolean open(Job job, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (open.size() >= maxStreams) {
+            return false;
+        }
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        AsyncContext async = request.startAsync();
+        async.setTimeout(0);
+        Stream stream = new Stream(job, async, response.getOutputStream());
+        async.addListener(stream);
+        open.add(stream);
+        response.flushBuffer();
+        stream.queue = job.subscribe(stream::schedule);
+        stream.schedule();
+        return true;
+    }
+
+    int size() {
+        return open.size();
+    }
+
+    void shutdown() {
+        keepAlive.shutdownNow();
+        for (Stream stream : open) {
+            stream.close();
+        }
+        writers.shutdown();
+    }
+
+    private final class Stream implements AsyncListener {
+        private final Job job;
+        private final AsyncContext async;
+        private final OutputStream out;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile BlockingQueue<Job.Event> queue;
+        private boolean closed;
+
+        Stream(Job job, AsyncContext async, OutputStream out) {
+            this.job = job;
+            this.async = async;
+            this.out = out;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                writers.execute(this::drain);
+            }
+        }
+
+        //Writes are serialized per stream, since a drain and a keep-alive can be running at once
+        synchronized void drain() {
+            scheduled.set(false);
+            BlockingQueue<Job.Event> events = queue;
+            if (events == null || closed) {
+                return;
+            }
+            StringBuilder frame = new StringBuilder();
+            boolean finished = false;
+            Job.Event event;
+            while (!finished && (event = events.poll()) != null) {
+                frame.append("event: ").append(event.getType()).append('\n');
+                for (String line : String.valueOf(event.getData()).split("\n", -1)) {
+                    frame.append("data: ").append(line).append('\n');
+                }
+                frame.append('\n');
+                finished = event.isTerminal();
+            }
+            if (frame.length() > 0 && write(frame.toString().getBytes(StandardCharsets.UTF_8)) && finished) {
+                close();
+            }
+        }
+
+        synchronized void keepAlive() {
+            if (!closed) {
+                write(KEEP_ALIVE);
+            }
+        }
+
+        private boolean write(byte[] bytes) {
+            try {
+                out.write(bytes);
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                //Client went away
+                close();
+                return false;
+            }
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            open.remove(this);
+            BlockingQueue<Job.Event> events = queue;
+            if (events != null) {
+                job.unsubscribe(events);
+            }
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                //Already completed by the container
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package api;
+
+import classifier.TileClassifier;
+import grid.OccupancyGrid;
+import image.WindowTiler;
+import model.Tile;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Classification over overlapping windows at several scales (see WindowTiler). A cell is a building
+ * when, at some scale, at least vote of the windows covering it say so; with the default of every
+ * window, a scale keeps only the cells that all its windows agree on, which trims the positive windows
+ * down to the building while a second, coarser scale catches what the finer one cut in half.
+ * <p>
+ * Cells are decided as soon as the last window over their row comes back, and rows go straight into
+ * a RowMerge, so blobs are built while lower windows are still being classified.
+ */
+final class OverlapTiling {
+    private OverlapTiling() {
+    }
+
+    static RowMerge classify(TileClassifier classifier, WindowTiler windows, Iterator<Tile> tiles, double vote,
+                             ClassificationExecutor executor, BooleanSupplier cancelled, PipelineListener listener) {
+        int rows = windows.getRows();
+        int cols = windows.getCols();
+        int[] spans = windows.getSpans();
+        int[] pending = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            for (int span : spans) {
+                pending[r] += WindowTiler.covering(rows, span, r) * WindowTiler.positions(cols, span);
+            }
+        }
+        RowMerge merge = new RowMerge(new OccupancyGrid(rows, cols), pending);
+        Votes votes = new Votes(rows, cols, spans, vote);
+        Iterator<List<Tile>> batches = new Iterator<List<Tile>>() {
+            @Override
+            public boolean hasNext() {
+                return tiles.hasNext();
+            }
+
+            @Override
+            public List<Tile> next() {
+                List<Tile> batch = new ArrayList<>(classifier.maxBatchSize());
+                while (tiles.hasNext() && batch.size() < classifier.maxBatchSize()) {
+                    batch.add(tiles.next());
+                }
+                return batch;
+            }
+        };
+        executor.map(batches, batch -> {
+            long start = System.nanoTime();
+            try {
+                boolean[] result = classifier.containsBuildings(batch);
+                long elapsed = System.nanoTime() - start;
+                PipelineMetrics.CLASSIFY_BATCH.record(elapsed);
+                for (int i = 0; i < batch.size(); i++) {
+                    PipelineMetrics.CLASSIFY_TILE.record(elapsed / batch.size());
+                }
+                PipelineMetrics.TILES.add(batch.size());
+                synchronized (merge) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        resolve(batch.get(i), result[i], votes, merge, listener);
+                    }
+                    merge.label();
+                }
+                return result;
+            } finally {
+                batch.forEach(Tile::release);
+            }
+        }, cancelled);
+        return merge;
+    }
+
+    private static void resolve(Tile window, boolean building, Votes votes, RowMerge merge, PipelineListener listener) {
+        OccupancyGrid grid = merge.getGrid();
+        int scale = votes.scale(window.getSpan());
+        int lastRow = Math.min(window.getRow() + window.getSpan(), grid.getRows());
+        int lastCol = Math.min(window.getCol() + window.getSpan(), grid.getCols());
+        if (building) {
+            for (int r = window.getRow(); r < lastRow; r++) {
+                for (int c = window.getCol(); c < lastCol; c++) {
+                    votes.add(scale, r, c);
+                }
+            }
+        }
+        for (int r = window.getRow(); r < lastRow; r++) {
+            if (!merge.arrived(r)) {
+                continue;
+            }
+            for (int c = 0; c < grid.getCols(); c++) {
+                boolean found = votes.decide(r, c);
+                grid.set(r, c, found);
+                listener.onTile(r, c, found);
+            }
+        }
+    }
+
+    //Positive windows per scale and cell
+    private static final class Votes {
+        private final int rows;
+        private final int cols;
+        private final int[] spans;
+        private final double vote;
+        private final int[][] positive;
+
+        Votes(int rows, int cols, int[] spans, double vote) {
+            this.rows = rows;
+            this.cols = cols;
+            this.spans = spans;
+            this.vote = vote;
+            this.positive = new int[spans.length][rows * cols];
+        }
+
+        int scale(int span) {
+            for (int i = 0; i < spans.length; i++) {
+                if (spans[i] == span) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("No scale with span " + span);
+        }
+
+        void add(int scale, int row, int col) {
+            positive[scale][row * cols + col]++;
+        }
+
+        boolean decide(int row, int col) {
+            for (int i = 0; i < spans.length; i++) {
+                int covering = WindowTiler.covering(rows, spans[i], row) * WindowTiler.covering(cols, spans[i], col);
+                if (positive[i][row * cols + col] >= vote * covering) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package api;
+
+import model.Box;
+
+/**
+ * Progress callbacks from classifyAndRetrieveData. onTile is called from classifier threads as
+ * batches complete, so implementations must be thread-safe.
+ */
+public interface PipelineListener {
+    PipelineListener NONE = new PipelineListener() {
+    };
+
+    default void onTile(int row, int col, boolean building) {
+    }
+
+    default void onBox(Box box) {
+    }
+}
@@ -0,0 +1,51 @@
+package api;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+final class PipelineMetrics {
+    private static final MetricsRegistry REGISTRY = MetricsRegistry.global();
+
+    static final Histogram REQUEST = REGISTRY.histogram("ocpc_request_seconds", "End to end /image processing time");
+    static final Histogram TILE = REGISTRY.histogram("ocpc_tile_seconds", "Decode and JPEG encode time per tile");
+    static final Histogram CLASSIFY = REGISTRY.histogram("ocpc_classify_seconds", "Time to classify all tiles of a request");
+    static final Histogram CLASSIFY_BATCH = REGISTRY.histogram("ocpc_classify_batch_seconds", "Classifier call time per batch");
+    static final Histogram CLASSIFY_TILE = REGISTRY.histogram("ocpc_classify_tile_seconds", "Classifier call time per tile, amortized over its batch");
+    static final Histogram BLOBS = REGISTRY.histogram("ocpc_blobs_seconds", "Rotation, blob labelling and box extraction time");
+    static final Histogram BUILDINGS = REGISTRY.histogram("ocpc_buildings_seconds", "Building lookup time");
+    static final Histogram MATCH = REGISTRY.histogram("ocpc_match_seconds", "Blob to building matching time");
+    static final Histogram SERIALIZE = REGISTRY.histogram("ocpc_serialize_seconds", "Response serialization time");
+
+    static final Counter REQUESTS = REGISTRY.counter("ocpc_requests_total", "Images processed");
+    static final Counter FAILURES = REGISTRY.counter("ocpc_request_failures_total", "Images that could not be processed");
+    static final Counter TILES = REGISTRY.counter("ocpc_tiles_total", "Tiles classified");
+    static final Counter SESSION_TILES_REUSED = REGISTRY.counter("ocpc_session_tiles_reused_total", "AR session tiles answered from the previous frame");
+    static final Counter SESSION_BUILDINGS_REUSED = REGISTRY.counter("ocpc_session_buildings_reused_total", "AR session frames that kept the previous building list");
+    static final Counter BATCH_FRAMES = REGISTRY.counter("ocpc_batch_frames_total", "Frames processed through /images/batch");
+    static final Counter BATCH_TILES_DEDUPLICATED = REGISTRY.counter("ocpc_batch_tiles_deduplicated_total", "Batch tiles answered by an identical tile elsewhere in the batch");
+    static final Counter BUILDINGS_STALE = REGISTRY.counter("ocpc_buildings_stale_total", "Building lookups served expired because the source was unavailable");
+    static final Counter TILES_SKIPPED = REGISTRY.counter("ocpc_tiles_skipped_total", "Cells resolved by a negative coarse region in adaptive tiling");
+    static final Counter BLOBS_UNMATCHED = REGISTRY.counter("ocpc_blobs_unmatched_total", "Blobs no candidate building lined up with");
+
+    //Time taken by the first request after startup, which pays for whatever warm-up missed
+    private static final AtomicLong FIRST_REQUEST = new AtomicLong(-1);
+
+    static {
+        REGISTRY.gauge("ocpc_first_request_seconds", "End to end time of the first /image request after startup", () -> {
+            long nanos = FIRST_REQUEST.get();
+            return nanos < 0 ? Double.NaN : nanos / 1e9;
+        });
+    }
+
+    private PipelineMetrics() {
+    }
+
+    static void recordRequest(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        REQUEST.record(elapsed);
+        FIRST_REQUEST.compareAndSet(-1, elapsed);
+    }
+}
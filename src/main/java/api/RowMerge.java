@@ -0,0 +1,73 @@
+package api;
+
+import grid.OccupancyGrid;
+import grid.StreamingBlobLabeler;
+import model.Coordinates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds a grid into a StreamingBlobLabeler while it is being classified. Each row starts out waiting
+ * on some number of classifier results; once a row and every row above it have all of theirs, they are
+ * labelled right away on the classifier thread that completed them, so by the time the last result
+ * lands only that row and the final sort are left.
+ * <p>
+ * Callers synchronize on the merge around writing cells, arrived and label, since cells share words.
+ */
+final class RowMerge {
+    private final OccupancyGrid grid;
+    private final StreamingBlobLabeler labeler;
+    private final int[] pending;
+    private long labelNanos;
+
+    /**
+     * @param pending per row, the number of arrived calls that complete it; taken over by the merge
+     */
+    RowMerge(OccupancyGrid grid, int[] pending) {
+        this.grid = grid;
+        this.labeler = new StreamingBlobLabeler(grid.getRows(), grid.getCols());
+        this.pending = pending;
+    }
+
+    OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Counts one result in for row.
+     *
+     * @return whether this completed the row, whose cells must then be written before the next label
+     */
+    boolean arrived(int row) {
+        return --pending[row] == 0;
+    }
+
+    /**
+     * Labels every complete row that has no incomplete row above it.
+     */
+    void label() {
+        long start = System.nanoTime();
+        int next;
+        while ((next = labeler.getRow()) < pending.length && pending[next] == 0) {
+            labeler.add(grid, next);
+        }
+        labelNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Boxes of the rotated grid in source pixels, in BlobLabeler order.
+     */
+    synchronized List<Coordinates> finish(int cellPix) {
+        label();
+        long start = System.nanoTime();
+        labeler.finish();
+        List<Coordinates> coords = new ArrayList<>(labeler.getCount());
+        for (int i = 0; i < labeler.getCount(); i++) {
+            coords.add(new Coordinates(labeler.getMinX(i) * cellPix, labeler.getMinY(i) * cellPix,
+                    labeler.getMaxX(i) * cellPix, labeler.getMaxY(i) * cellPix));
+        }
+        PipelineMetrics.BLOBS.record(labelNanos + System.nanoTime() - start);
+        return coords;
+    }
+}
@@ -0,0 +1,192 @@
+package api;
+
+import classifier.LocalTileClassifier;
+import classifier.TileClassifier;
+import codec.BoxCodecs;
+import codec.JsonBoxCodec;
+import image.ByteBufferImageInputStream;
+import metrics.MetricsRegistry;
+import model.Box;
+import model.Building;
+import model.Point;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work that would otherwise land on the first requests after a scale-up: ImageIO plugin discovery and
+ * codec loading, Jackson serializer lookup, the first pass through the tiling and blob code, Jetty's
+ * request path, and the Watson IAM token fetch. Runs after the server is listening but before it
+ * reports ready, so /health answers 503 "starting" meanwhile.
+ * <p>
+ * Synthetic frames go through a local classifier rather than the configured one, so they neither call
+ * Watson nor land in the tile cache. Their stage timings do show up in the stage histograms.
+ */
+final class Warmup {
+    private static final Logger LOG = LoggerFactory.getLogger(Warmup.class);
+    //Demo location, so building lookups never leave the process
+    private static final double LAT = 42.73;
+    private static final double LON = -73.68;
+
+    private final int frames;
+    private final int requests;
+    private volatile double seconds = Double.NaN;
+
+    Warmup(int frames, int requests) {
+        this.frames = frames;
+        this.requests = requests;
+        MetricsRegistry.global().gauge("ocpc_warmup_seconds", "Time spent warming up before reporting ready", () -> seconds);
+    }
+
+    /**
+     * @param authenticate fetches the classifier's credentials, or null when there are none to fetch
+     * @param port         the port the server is listening on
+     */
+    void run(Runnable authenticate, int port) {
+        long start = System.nanoTime();
+        if (authenticate != null) {
+            step("credentials", authenticate);
+        }
+        step("ImageIO", Warmup::imageIO);
+        step("serializers", Warmup::serializers);
+        step("pipeline", this::pipeline);
+        step("request path", () -> requestPath(port));
+        seconds = (System.nanoTime() - start) / 1e9;
+        LOG.info("Warmed up in {}s", seconds);
+    }
+
+    /**
+     * Re-runs authenticate every periodMillis on a daemon thread, so token refreshes happen there instead
+     * of on a request.
+     */
+    static void keepAuthenticated(Runnable authenticate, long periodMillis) {
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "credential-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> step("credentials", authenticate), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //A failed step costs the first request some latency, it should not keep the server from starting
+    private static void step(String name, Runnable step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+            LOG.info("Warmed up {} in {}ms", name, (System.nanoTime() - start) / 1000000);
+        } catch (RuntimeException e) {
+            LOG.warn("Warming up {} failed", name, e);
+        }
+    }
+
+    private static void imageIO() {
+        ImageIO.scanForPlugins();
+        try {
+            for (String format : new String[]{"jpeg", "png"}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB), format, out);
+                ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void serializers() {
+        Building building = building();
+        Box box = new Box(new Point(0, 0), new Point(110, 220), building);
+        try {
+            BoxCodecs.JSON.toString(Collections.singletonList(box));
+            BoxCodecs.BINARY.write(Collections.singletonList(box), new ByteArrayOutputStream());
+            JsonBoxCodec.mapper().writeValueAsString(box);
+            JsonBoxCodec.mapper().writeValueAsString(building);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void pipeline() {
+        TileClassifier classifier = new LocalTileClassifier();
+        List<Building> candidates = Collections.singletonList(building());
+        try {
+            for (int i = 0; i < frames; i++) {
+                byte[] jpeg = frame(i);
+                Detection detection = Application.classifyFrame(classifier,
+                        new ByteBufferImageInputStream(ByteBuffer.wrap(jpeg)), () -> false);
+                Application.matchBuildings(detection, candidates, LAT, LON, 0, PipelineListener.NONE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Answers are 503 until ready, which still takes each request through Jetty and Spark's routing
+    private void requestPath(int port) {
+        try {
+            URL url = new URL("http://localhost:" + port + "/health");
+            byte[] buffer = new byte[1024];
+            for (int i = 0; i < requests; i++) {
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                connection.setConnectTimeout(5000);
+                connection.setReadTimeout(5000);
+                connection.getResponseCode();
+                InputStream in = connection.getErrorStream() != null ? connection.getErrorStream() : connection.getInputStream();
+                while (in.read(buffer) >= 0) {
+                    //Drain so the connection is reused
+                }
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Building building() {
+        Building building = new Building();
+        building.setLatitute(LAT + 0.01);
+        building.setLongitude(LON);
+        building.setOccupancy(100);
+        return building;
+    }
+
+    //A street-sized frame with a few hard-edged "facades" so the blob code has something to label
+    private static byte[] frame(int seed) throws IOException {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(1500, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(135, 180, 230));
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        for (int i = 0; i < 4; i++) {
+            int x = random.nextInt(1200);
+            int y = random.nextInt(700);
+            g.setColor(Color.DARK_GRAY);
+            g.fillRect(x, y, 300, 300);
+            g.setColor(Color.WHITE);
+            for (int w = 0; w < 300; w += 30) {
+                g.fillRect(x + w + 5, y + 10, 12, 280);
+            }
+        }
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
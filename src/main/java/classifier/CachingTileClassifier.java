@@ -0,0 +1,194 @@
+package classifier;
+
+import model.Tile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Serves repeated tiles from memory (size-bounded LRU with a TTL) and, optionally, from a DiskTileCache
+ * before falling back to the wrapped classifier for the remaining tiles of a batch. In a cluster, only
+ * the answers for keys this node owns are kept; the rest belong in their owner's cache.
+ */
+public class CachingTileClassifier implements TileClassifier {
+    private final TileClassifier delegate;
+    private final Map<TileKey, Entry> memory;
+    private final long ttlMillis;
+    private final DiskTileCache disk;
+    private final Predicate<TileKey> retain;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingTileClassifier(TileClassifier delegate, int maxEntries, long ttlMillis) {
+        this(delegate, maxEntries, ttlMillis, null);
+    }
+
+    public CachingTileClassifier(TileClassifier delegate, int maxEntries, long ttlMillis, DiskTileCache disk) {
+        this(delegate, maxEntries, ttlMillis, disk, key -> true);
+    }
+
+    /**
+     * @param retain whether answers the delegate gives for a key are kept here
+     */
+    public CachingTileClassifier(TileClassifier delegate, int maxEntries, long ttlMillis, DiskTileCache disk,
+                                 Predicate<TileKey> retain) {
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.disk = disk;
+        this.retain = retain;
+        this.memory = new LinkedHashMap<TileKey, CachingTileClassifier.Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, CachingTileClassifier.Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public boolean[] containsBuildings(List<Tile> tiles) {
+        boolean[] found = new boolean[tiles.size()];
+        TileKey[] keys = new TileKey[tiles.size()];
+        List<Tile> missed = new ArrayList<>();
+        List<Integer> missedIndex = new ArrayList<>();
+        String id = delegate.getId();
+        for (int i = 0; i < tiles.size(); i++) {
+            keys[i] = TileKey.of(id, tiles.get(i));
+            int cached = lookup(keys[i]);
+            if (cached >= 0) {
+                found[i] = cached == 1;
+            } else {
+                missed.add(tiles.get(i));
+                missedIndex.add(i);
+            }
+        }
+        if (!missed.isEmpty()) {
+            boolean[] classified;
+            try {
+                classified = delegate.containsBuildings(missed);
+            } catch (RuntimeException e) {
+                //Answer from expired entries if every missed tile still has one
+                for (int j = 0; j < missed.size(); j++) {
+                    int i = missedIndex.get(j);
+                    int stale = lookupStale(keys[i]);
+                    if (stale < 0) {
+                        throw e;
+                    }
+                    found[i] = stale == 1;
+                }
+                staleHits.add(missed.size());
+                return found;
+            }
+            for (int j = 0; j < classified.length; j++) {
+                int i = missedIndex.get(j);
+                found[i] = classified[j];
+                if (retain.test(keys[i])) {
+                    store(keys[i], classified[j]);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return delegate.maxBatchSize();
+    }
+
+    @Override
+    public String getId() {
+        return delegate.getId();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    /**
+     * Tiles answered from expired entries because the classifier failed.
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int size() {
+        return memory.size();
+    }
+
+    /**
+     * @return 1 or 0 when cached, -1 otherwise
+     */
+    public int lookup(TileKey key) {
+        Entry entry;
+        synchronized (this) {
+            entry = memory.get(key);
+            //Expired entries stay until pushed out, as a fallback when the classifier is down
+            if (entry != null && System.currentTimeMillis() - entry.storedAt > ttlMillis) {
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hits.increment();
+            return entry.building ? 1 : 0;
+        }
+        if (disk != null) {
+            int stored = disk.get(key);
+            if (stored >= 0) {
+                diskHits.increment();
+                synchronized (this) {
+                    memory.put(key, new Entry(stored == 1, System.currentTimeMillis()));
+                }
+                return stored;
+            }
+        }
+        misses.increment();
+        return -1;
+    }
+
+    private synchronized int lookupStale(TileKey key) {
+        Entry entry = memory.get(key);
+        return entry == null ? -1 : entry.building ? 1 : 0;
+    }
+
+    public void store(TileKey key, boolean building) {
+        synchronized (this) {
+            memory.put(key, new Entry(building, System.currentTimeMillis()));
+        }
+        if (disk != null && disk.put(key, building)) {
+            evictions.increment();
+        }
+    }
+
+    private static class Entry {
+        final boolean building;
+        final long storedAt;
+
+        Entry(boolean building, long storedAt) {
+            this.building = building;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package classifier;
+
+import model.Tile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Classifies each distinct tile once across everything that goes through it. The first caller to see
+ * a tile classifies it; callers with an identical tile, in the same or another thread, wait for that
+ * answer. Entries are never dropped, so an instance should live as long as one unit of work (such as
+ * a batch request).
+ */
+public class DedupingTileClassifier implements TileClassifier {
+    private final TileClassifier delegate;
+    private final ConcurrentHashMap<TileKey, CompletableFuture<Boolean>> answers = new ConcurrentHashMap<>();
+    private final LongAdder duplicates = new LongAdder();
+
+    public DedupingTileClassifier(TileClassifier delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean[] containsBuildings(List<Tile> tiles) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(tiles.size());
+        List<Tile> owned = new ArrayList<>();
+        List<TileKey> ownedKeys = new ArrayList<>();
+        List<CompletableFuture<Boolean>> ownedFutures = new ArrayList<>();
+        String id = delegate.getId();
+        for (Tile tile : tiles) {
+            TileKey key = TileKey.of(id, tile);
+            CompletableFuture<Boolean> mine = new CompletableFuture<>();
+            CompletableFuture<Boolean> existing = answers.putIfAbsent(key, mine);
+            if (existing != null) {
+                duplicates.increment();
+                futures.add(existing);
+            } else {
+                futures.add(mine);
+                owned.add(tile);
+                ownedKeys.add(key);
+                ownedFutures.add(mine);
+            }
+        }
+        //Answer our own tiles before waiting on anyone else's, so waits can never form a cycle
+        if (!owned.isEmpty()) {
+            try {
+                boolean[] classified = delegate.containsBuildings(owned);
+                for (int i = 0; i < classified.length; i++) {
+                    ownedFutures.get(i).complete(classified[i]);
+                }
+            } catch (RuntimeException | Error e) {
+                //Fail current waiters, but let later callers try these tiles again
+                for (int i = 0; i < ownedKeys.size(); i++) {
+                    answers.remove(ownedKeys.get(i), ownedFutures.get(i));
+                    ownedFutures.get(i).completeExceptionally(e);
+                }
+                throw e;
+            }
+        }
+        boolean[] found = new boolean[tiles.size()];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = answer(futures.get(i));
+        }
+        return found;
+    }
+
+    //The classifying caller's exception rather than a CompletionException, so callers can tell failures apart
+    private static boolean answer(CompletableFuture<Boolean> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return delegate.maxBatchSize();
+    }
+
+    @Override
+    public String getId() {
+        return delegate.getId();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public int size() {
+        return answers.size();
+    }
+}
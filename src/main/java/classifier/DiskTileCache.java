@@ -0,0 +1,116 @@
+package classifier;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed-size, memory-mapped open-addressing table of classification results that survives restarts.
+ * Each slot holds a TileKey, the time it was stored and the answer. A full probe window overwrites
+ * its oldest slot, so the file never grows.
+ */
+public class DiskTileCache implements Closeable {
+    private static final long MAGIC = 0x4f435043_54494c45L;
+    private static final int HEADER = 16;
+    private static final int SLOT = 32;
+    private static final int PROBES = 8;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final long ttlMillis;
+
+    public DiskTileCache(File path, int slots, long ttlMillis) throws IOException {
+        if (Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two: " + slots);
+        }
+        this.slots = slots;
+        this.ttlMillis = ttlMillis;
+        this.file = new RandomAccessFile(path, "rw");
+        long size = HEADER + (long) slots * SLOT;
+        boolean fresh = file.length() != size;
+        file.setLength(size);
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (fresh || buffer.getLong(0) != MAGIC || buffer.getInt(8) != slots) {
+            //Unknown layout, start from an empty table
+            for (long i = 0; i < size; i += 8) {
+                buffer.putLong((int) i, 0);
+            }
+            buffer.putLong(0, MAGIC);
+            buffer.putInt(8, slots);
+        }
+    }
+
+    /**
+     * @return 1 for building, 0 for no building, -1 when absent or expired
+     */
+    public synchronized int get(TileKey key) {
+        long now = System.currentTimeMillis();
+        long lo = nonZero(key.getLo());
+        int start = index(key);
+        for (int i = 0; i < PROBES; i++) {
+            int offset = offset(start + i);
+            if (buffer.getLong(offset) == key.getHi() && buffer.getLong(offset + 8) == lo) {
+                if (now - buffer.getLong(offset + 16) > ttlMillis) {
+                    return -1;
+                }
+                return buffer.get(offset + 24);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true when a live entry for another key was overwritten
+     */
+    public synchronized boolean put(TileKey key, boolean value) {
+        long now = System.currentTimeMillis();
+        long lo = nonZero(key.getLo());
+        int start = index(key);
+        int target = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < PROBES; i++) {
+            int offset = offset(start + i);
+            long slotLo = buffer.getLong(offset + 8);
+            long stored = buffer.getLong(offset + 16);
+            if (slotLo == 0 || now - stored > ttlMillis
+                    || (buffer.getLong(offset) == key.getHi() && slotLo == lo)) {
+                target = offset;
+                oldest = Long.MIN_VALUE;
+                break;
+            }
+            if (stored < oldest) {
+                oldest = stored;
+                target = offset;
+            }
+        }
+        boolean evicted = oldest != Long.MIN_VALUE;
+        buffer.putLong(target, key.getHi());
+        buffer.putLong(target + 8, lo);
+        buffer.putLong(target + 16, now);
+        buffer.put(target + 24, (byte) (value ? 1 : 0));
+        return evicted;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private int index(TileKey key) {
+        return (int) (key.getHi() ^ (key.getHi() >>> 32)) & (slots - 1);
+    }
+
+    private int offset(int slot) {
+        return HEADER + (slot & (slots - 1)) * SLOT;
+    }
+
+    //A zero low word marks an empty slot
+    private static long nonZero(long lo) {
+        return lo == 0 ? 1 : lo;
+    }
+}
@@ -0,0 +1,90 @@
+package classifier;
+
+import model.Tile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline stand-in for the remote classifier. A tile counts as a building when enough of it is made
+ * of hard edges, which is a rough but deterministic proxy that separates facades from sky and road.
+ * An optional per-call latency mimics a network round trip for load tests.
+ */
+public class LocalTileClassifier implements TileClassifier {
+    private static final int SAMPLE_STEP = 4;
+    private static final int EDGE_CONTRAST = 24;
+
+    private final double edgeFraction;
+    private final long latencyMillis;
+    private final int maxBatchSize;
+
+    public LocalTileClassifier() {
+        this(0.08, 0, WatsonTileClassifier.MAX_BATCH);
+    }
+
+    public LocalTileClassifier(double edgeFraction, long latencyMillis, int maxBatchSize) {
+        this.edgeFraction = edgeFraction;
+        this.latencyMillis = latencyMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public boolean[] containsBuildings(List<Tile> tiles) {
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        boolean[] found = new boolean[tiles.size()];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = containsBuilding(tiles.get(i));
+        }
+        return found;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public String getId() {
+        return "local@" + edgeFraction;
+    }
+
+    private boolean containsBuilding(Tile tile) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(tile.open());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (image == null) {
+            return false;
+        }
+        int samples = 0;
+        int edges = 0;
+        for (int y = 0; y + SAMPLE_STEP < image.getHeight(); y += SAMPLE_STEP) {
+            for (int x = 0; x + SAMPLE_STEP < image.getWidth(); x += SAMPLE_STEP) {
+                int here = gray(image.getRGB(x, y));
+                int right = gray(image.getRGB(x + SAMPLE_STEP, y));
+                int below = gray(image.getRGB(x, y + SAMPLE_STEP));
+                if (Math.abs(here - right) + Math.abs(here - below) > EDGE_CONTRAST) {
+                    edges++;
+                }
+                samples++;
+            }
+        }
+        return samples > 0 && edges >= samples * edgeFraction;
+    }
+
+    private static int gray(int rgb) {
+        return (((rgb >> 16) & 0xff) * 77 + ((rgb >> 8) & 0xff) * 151 + (rgb & 0xff) * 28) >> 8;
+    }
+}
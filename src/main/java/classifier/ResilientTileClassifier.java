@@ -0,0 +1,43 @@
+package classifier;
+
+import model.Tile;
+import remote.RemoteClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sends a remote classifier's calls through a RemoteClient. Tiles are copied first: an attempt abandoned
+ * after a timeout, or the slower of two hedged attempts, may still be reading them after the caller has
+ * released the originals back to their pool.
+ */
+public class ResilientTileClassifier implements TileClassifier {
+    private final TileClassifier delegate;
+    private final RemoteClient client;
+
+    public ResilientTileClassifier(TileClassifier delegate, RemoteClient client) {
+        this.delegate = delegate;
+        this.client = client;
+    }
+
+    @Override
+    public boolean[] containsBuildings(List<Tile> tiles) {
+        List<Tile> copies = new ArrayList<>(tiles.size());
+        for (Tile tile : tiles) {
+            copies.add(new Tile(tile.getRow(), tile.getCol(), Arrays.copyOf(tile.getData(), tile.getLength()),
+                    tile.getLength(), null));
+        }
+        return client.call(() -> delegate.containsBuildings(copies));
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return delegate.maxBatchSize();
+    }
+
+    @Override
+    public String getId() {
+        return delegate.getId();
+    }
+}
@@ -0,0 +1,24 @@
+package classifier;
+
+import model.Tile;
+
+import java.util.List;
+
+public interface TileClassifier {
+    /**
+     * Classifies a batch of encoded tiles in one call. The result has one entry per tile, in the same
+     * order, that is true when the tile contains a building.
+     */
+    boolean[] containsBuildings(List<Tile> tiles);
+
+    /**
+     * Largest batch the backend accepts in a single call.
+     */
+    int maxBatchSize();
+
+    /**
+     * Identifies the backend and every setting that changes its answers (model, threshold), so that
+     * cached results from one configuration are never served for another.
+     */
+    String getId();
+}
@@ -0,0 +1,72 @@
+package classifier;
+
+import model.Tile;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 128 bits of the SHA-256 of a classifier id and the encoded tile bytes.
+ */
+public final class TileKey {
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final long hi;
+    private final long lo;
+
+    public TileKey(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    public static TileKey of(String classifierId, Tile tile) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        digest.update(classifierId.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(tile.getData(), 0, tile.getLength());
+        byte[] hash = digest.digest();
+        return new TileKey(toLong(hash, 0), toLong(hash, 8));
+    }
+
+    public long getHi() {
+        return hi;
+    }
+
+    public long getLo() {
+        return lo;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TileKey)) return false;
+        TileKey other = (TileKey) o;
+        return hi == other.hi && lo == other.lo;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (lo ^ (lo >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", hi, lo);
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
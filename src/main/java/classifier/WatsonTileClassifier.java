@@ -0,0 +1,134 @@
+package classifier;
+
+import com.ibm.watson.developer_cloud.visual_recognition.v3.VisualRecognition;
+import com.ibm.watson.developer_cloud.visual_recognition.v3.model.*;
+import model.Tile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class WatsonTileClassifier implements TileClassifier {
+    //Visual Recognition v3 accepts at most 20 images per zip
+    public static final int MAX_BATCH = 20;
+    public static final float DEFAULT_THRESHOLD = 0.3f;
+
+    private final VisualRecognition service;
+    private final float threshold;
+    private final List<String> classifierIds;
+
+    public WatsonTileClassifier(VisualRecognition service) {
+        this(service, DEFAULT_THRESHOLD, Collections.singletonList("default"));
+    }
+
+    public WatsonTileClassifier(VisualRecognition service, float threshold, List<String> classifierIds) {
+        this.service = service;
+        this.threshold = threshold;
+        this.classifierIds = classifierIds;
+    }
+
+    @Override
+    public boolean[] containsBuildings(List<Tile> tiles) {
+        boolean[] found = new boolean[tiles.size()];
+        if (tiles.isEmpty()) {
+            return found;
+        }
+        if (tiles.size() == 1) {
+            found[0] = containsBuilding(classify(tiles.get(0).open(), "tile.jpg"));
+            return found;
+        }
+        for (ClassifiedImage image : classifyAll(zip(tiles), "tiles.zip")) {
+            int index = tileIndex(image.getImage());
+            if (index >= 0 && index < found.length) {
+                found[index] = containsBuilding(image);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return MAX_BATCH;
+    }
+
+    @Override
+    public String getId() {
+        return "watson:" + String.join(",", classifierIds) + "@" + threshold;
+    }
+
+    /**
+     * Makes a cheap authenticated call, so the SDK fetches its IAM token now, or refreshes it if it is
+     * close to expiry, rather than on the next classification.
+     */
+    public void authenticate() {
+        service.listClassifiers(new ListClassifiersOptions.Builder().verbose(false).build()).execute();
+    }
+
+    public ClassifiedImage classify(InputStream input, String filename) {
+        return classifyAll(input, filename).get(0);
+    }
+
+    public static boolean containsBuilding(ClassifiedImage image) {
+        List<ClassifierResult> classifiers = image.getClassifiers();
+        if (classifiers != null && !classifiers.isEmpty()) {
+            List<ClassResult> classes = classifiers.get(0).getClasses();
+            for (ClassResult result : classes) {
+                if (result.getClassName().equalsIgnoreCase("building")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private List<ClassifiedImage> classifyAll(InputStream input, String filename) {
+        ClassifyOptions classifyOptions = new ClassifyOptions.Builder()
+                .imagesFile(input)
+                .imagesFilename(filename)
+                .threshold(threshold)
+                .classifierIds(classifierIds)
+                .build();
+        ClassifiedImages result = service.classify(classifyOptions).execute();
+        return result.getImages();
+    }
+
+    private static InputStream zip(List<Tile> tiles) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            //JPEG data does not compress further, so skip the deflate work
+            zip.setLevel(0);
+            for (int i = 0; i < tiles.size(); i++) {
+                Tile tile = tiles.get(i);
+                zip.putNextEntry(new ZipEntry("tile-" + i + ".jpg"));
+                zip.write(tile.getData(), 0, tile.getLength());
+                zip.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    //Watson reports zipped images as "<archive>/<entry>"
+    static int tileIndex(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int start = name.lastIndexOf("tile-");
+        int end = name.lastIndexOf(".jpg");
+        if (start < 0 || end <= start + 5) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(start + 5, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
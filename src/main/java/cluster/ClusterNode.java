@@ -0,0 +1,236 @@
+package cluster;
+
+import classifier.CachingTileClassifier;
+import classifier.TileKey;
+import model.Building;
+import remote.CircuitBreaker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * One server's place in a cluster. Tile keys and location cells are split between nodes by a HashRing,
+ * and each node keeps the cached answers for its share: tile classifications in its CachingTileClassifier,
+ * building lists in its location cache. Other nodes ask the owner instead of Watson or Socrata, so
+ * adding nodes adds cache capacity rather than another copy of the same entries.
+ * <p>
+ * Messages, big-endian, start with an opcode:
+ * <pre>
+ * TILE_GET   int32 count, count * (int64 hi, int64 lo)      -> count * int8 (1, 0, or -1 when not cached)
+ * TILE_PUT   int32 count, count * (int64 hi, int64 lo, int8) -> empty
+ * BUILDINGS  int64 cell                                      -> int32 count, count * (float64 lat, float64 lon, int32 occupancy)
+ * </pre>
+ * Every request to a peer may fail; callers then carry on as if there were no cluster, and a peer that
+ * keeps failing is skipped by its circuit breaker until it recovers.
+ */
+public class ClusterNode {
+    static final byte TILE_GET = 1;
+    static final byte TILE_PUT = 2;
+    static final byte BUILDINGS = 3;
+
+    private final String self;
+    private final HashRing ring;
+    private final Transport transport;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private CachingTileClassifier tiles;
+    private LongFunction<List<Building>> buildings;
+
+    private final LongAdder peerHits = new LongAdder();
+    private final LongAdder peerMisses = new LongAdder();
+    private final LongAdder peerFailures = new LongAdder();
+    private final LongAdder served = new LongAdder();
+
+    public ClusterNode(String self, HashRing ring, Transport transport) {
+        if (!ring.getNodes().contains(self)) {
+            throw new IllegalArgumentException("Node " + self + " is not on the ring " + ring.getNodes());
+        }
+        this.self = self;
+        this.ring = ring;
+        this.transport = transport;
+        for (String node : ring.getNodes()) {
+            if (!node.equals(self)) {
+                breakers.put(node, new CircuitBreaker(10, 3, 0.5, 5000));
+            }
+        }
+    }
+
+    /**
+     * Starts answering peers from this node's tile cache and, for building lists, from buildings,
+     * which must load locally and never ask the cluster.
+     */
+    public void serve(CachingTileClassifier tiles, LongFunction<List<Building>> buildings) {
+        this.tiles = tiles;
+        this.buildings = buildings;
+        transport.bind(self, this::handle);
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public String owner(long key) {
+        return ring.owner(key);
+    }
+
+    public boolean owns(long key) {
+        return self.equals(ring.owner(key));
+    }
+
+    /**
+     * Tile keys are placed by their high word, which is already uniformly distributed.
+     */
+    public boolean ownsTile(TileKey key) {
+        return owns(key.getHi());
+    }
+
+    public String tileOwner(TileKey key) {
+        return owner(key.getHi());
+    }
+
+    /**
+     * Tile answers peers had cached.
+     */
+    public long getPeerHits() {
+        return peerHits.sum();
+    }
+
+    public long getPeerMisses() {
+        return peerMisses.sum();
+    }
+
+    /**
+     * Requests to peers that failed or were skipped.
+     */
+    public long getPeerFailures() {
+        return peerFailures.sum();
+    }
+
+    /**
+     * Requests answered for peers.
+     */
+    public long getServed() {
+        return served.sum();
+    }
+
+    /**
+     * Asks peer for the cached answers for keys.
+     *
+     * @return per key 1 or 0 when cached, -1 otherwise; all -1 when the peer could not be asked
+     */
+    public int[] lookupTiles(String peer, List<TileKey> keys) {
+        int[] found = new int[keys.size()];
+        Arrays.fill(found, -1);
+        ByteBuffer request = ByteBuffer.allocate(1 + 4 + keys.size() * 16);
+        request.put(TILE_GET).putInt(keys.size());
+        for (TileKey key : keys) {
+            request.putLong(key.getHi()).putLong(key.getLo());
+        }
+        byte[] response = send(peer, request.array());
+        if (response == null || response.length != keys.size()) {
+            return found;
+        }
+        for (int i = 0; i < found.length; i++) {
+            found[i] = response[i];
+            if (found[i] >= 0) {
+                peerHits.increment();
+            } else {
+                peerMisses.increment();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Hands freshly classified tiles to the peer that owns them.
+     */
+    public void storeTiles(String peer, List<TileKey> keys, List<Boolean> values) {
+        ByteBuffer request = ByteBuffer.allocate(1 + 4 + keys.size() * 17);
+        request.put(TILE_PUT).putInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            request.putLong(keys.get(i).getHi()).putLong(keys.get(i).getLo()).put((byte) (values.get(i) ? 1 : 0));
+        }
+        send(peer, request.array());
+    }
+
+    /**
+     * Building list for cell from the node owning it, which loads it at most once for the whole cluster.
+     *
+     * @return null if the owner could not be asked
+     */
+    public List<Building> lookupBuildings(long cell) {
+        byte[] response = send(owner(cell), ByteBuffer.allocate(1 + 8).put(BUILDINGS).putLong(cell).array());
+        if (response == null) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(response);
+        int count = in.getInt();
+        List<Building> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Building building = new Building();
+            building.setLatitute(in.getDouble());
+            building.setLongitude(in.getDouble());
+            building.setOccupancy(in.getInt());
+            result.add(building);
+        }
+        return result;
+    }
+
+    private byte[] send(String peer, byte[] request) {
+        CircuitBreaker breaker = breakers.get(peer);
+        if (breaker == null || !breaker.allow()) {
+            peerFailures.increment();
+            return null;
+        }
+        try {
+            byte[] response = transport.send(peer, request);
+            breaker.onSuccess();
+            return response;
+        } catch (IOException | RuntimeException e) {
+            breaker.onFailure();
+            peerFailures.increment();
+            return null;
+        }
+    }
+
+    byte[] handle(byte[] message) throws IOException {
+        served.increment();
+        ByteBuffer in = ByteBuffer.wrap(message);
+        byte op = in.get();
+        if (op == TILE_GET) {
+            byte[] found = new byte[in.getInt()];
+            for (int i = 0; i < found.length; i++) {
+                found[i] = (byte) tiles.lookup(new TileKey(in.getLong(), in.getLong()));
+            }
+            return found;
+        }
+        if (op == TILE_PUT) {
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                tiles.store(new TileKey(in.getLong(), in.getLong()), in.get() == 1);
+            }
+            return new byte[0];
+        }
+        if (op == BUILDINGS) {
+            List<Building> list;
+            try {
+                list = buildings.apply(in.getLong());
+            } catch (RuntimeException e) {
+                throw new IOException("Building lookup failed: " + e.getMessage(), e);
+            }
+            ByteBuffer out = ByteBuffer.allocate(4 + list.size() * 20);
+            out.putInt(list.size());
+            for (Building building : list) {
+                out.putDouble(building.getLatitute()).putDouble(building.getLongitude()).putInt(building.getOccupancy());
+            }
+            return out.array();
+        }
+        throw new IOException("Unknown cluster message " + op);
+    }
+}
@@ -0,0 +1,80 @@
+package cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consistent hashing of 64-bit keys onto nodes. Each node is placed at virtualNodes points around the
+ * ring and a key belongs to the first point at or after its hash, so adding or removing a node only
+ * moves the keys next to that node's points, roughly 1/n of them, and every node computes the same
+ * owner from the same node list without talking to the others.
+ */
+public final class HashRing {
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    public HashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one node and one point per node");
+        }
+        List<String> sorted = new ArrayList<>(nodes);
+        Collections.sort(sorted);
+        this.nodes = Collections.unmodifiableList(sorted);
+        int count = sorted.size() * virtualNodes;
+        long[] keys = new long[count];
+        for (int n = 0; n < sorted.size(); n++) {
+            long seed = hash(sorted.get(n));
+            for (int v = 0; v < virtualNodes; v++) {
+                //Point hash in the high bits, node index in the low ones, so sorting keeps the pairing
+                keys[n * virtualNodes + v] = mix(seed + v * 0x9e3779b97f4a7c15L) & ~0xffffL | n;
+            }
+        }
+        Arrays.sort(keys);
+        this.points = new long[count];
+        this.owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = keys[i] & ~0xffffL;
+            owners[i] = (int) (keys[i] & 0xffff);
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Node owning key. Keys need not be uniformly distributed; they are hashed first.
+     */
+    public String owner(long key) {
+        long hash = mix(key) & ~0xffffL;
+        int i = Arrays.binarySearch(points, hash);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return nodes.get(owners[i == points.length ? 0 : i]);
+    }
+
+    //64-bit finalizer from MurmurHash3
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    //FNV-1a
+    private static long hash(String node) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : node.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+}
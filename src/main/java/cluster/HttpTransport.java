@@ -0,0 +1,126 @@
+package cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Transport between server instances: a request is POSTed to PATH on the peer's base URL, where the
+ * server hands it to handle(). Every request carries an HMAC-SHA256 of its body keyed by the cluster's
+ * shared secret in SIGNATURE_HEADER, and handle() refuses anything not signed with the same secret, so
+ * clients reaching the public port cannot read or write a node's caches.
+ */
+public class HttpTransport implements Transport {
+    public static final String PATH = "/cluster";
+    public static final String CONTENT_TYPE = "application/x-ocpc-cluster";
+    public static final String SIGNATURE_HEADER = "X-OCPC-Cluster-Signature";
+
+    private final Map<String, String> urls;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final SecretKeySpec key;
+    private volatile Handler handler;
+
+    /**
+     * @param urls   base URL of every node, by id
+     * @param secret shared by every node of the cluster
+     */
+    public HttpTransport(Map<String, String> urls, int connectTimeoutMillis, int readTimeoutMillis, String secret) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs a shared secret");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.urls = urls;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public void bind(String node, Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Answers a request another node sent here.
+     *
+     * @param signature the request's SIGNATURE_HEADER, or null if it had none
+     * @throws UnauthorizedException if the request was not signed with this cluster's secret
+     */
+    public byte[] handle(byte[] request, String signature) throws IOException {
+        byte[] presented;
+        try {
+            presented = signature != null ? Base64.getDecoder().decode(signature) : null;
+        } catch (IllegalArgumentException e) {
+            presented = null;
+        }
+        //Constant time, so the signature cannot be guessed byte by byte
+        if (presented == null || !MessageDigest.isEqual(presented, sign(request))) {
+            throw new UnauthorizedException("Cluster request is not signed with this cluster's secret");
+        }
+        Handler local = handler;
+        if (local == null) {
+            throw new IOException("Cluster node not started");
+        }
+        return local.handle(request);
+    }
+
+    @Override
+    public byte[] send(String node, byte[] request) throws IOException {
+        String url = urls.get(node);
+        if (url == null) {
+            throw new IOException("No node " + node);
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + PATH).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(request.length);
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+        connection.setRequestProperty(SIGNATURE_HEADER, signature(request));
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(request);
+        }
+        int status = connection.getResponseCode();
+        if (status != 200) {
+            connection.disconnect();
+            throw new IOException("Node " + node + " returned HTTP " + status);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                response.write(buffer, 0, read);
+            }
+            return response.toByteArray();
+        }
+    }
+
+    /**
+     * The SIGNATURE_HEADER value for request.
+     */
+    public String signature(byte[] request) {
+        return Base64.getEncoder().encodeToString(sign(request));
+    }
+
+    private byte[] sign(byte[] request) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac.doFinal(request);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package cluster;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process transport, so several nodes can run in one JVM. Messages are copied both ways, as they
+ * would be over a network, so no node ever shares an array with another.
+ */
+public class LocalTransport implements Transport {
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+
+    @Override
+    public void bind(String node, Handler handler) {
+        handlers.put(node, handler);
+    }
+
+    /**
+     * Takes node off the transport, as if it had crashed.
+     */
+    public void unbind(String node) {
+        handlers.remove(node);
+    }
+
+    @Override
+    public byte[] send(String node, byte[] request) throws IOException {
+        Handler handler = handlers.get(node);
+        if (handler == null) {
+            throw new IOException("No node " + node);
+        }
+        byte[] response = handler.handle(Arrays.copyOf(request, request.length));
+        return Arrays.copyOf(response, response.length);
+    }
+}
@@ -0,0 +1,99 @@
+package cluster;
+
+import classifier.TileClassifier;
+import classifier.TileKey;
+import model.Tile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Goes between the local CachingTileClassifier and the remote classifier. Tiles the local cache missed
+ * and another node owns are looked up in the owner's cache, one request per owner; only the rest are
+ * classified, and those answers are handed to their owners to cache. Tiles this node owns go straight
+ * to the classifier, since the local cache already missed them.
+ */
+public class PeerTileClassifier implements TileClassifier {
+    private final TileClassifier delegate;
+    private final ClusterNode node;
+
+    public PeerTileClassifier(TileClassifier delegate, ClusterNode node) {
+        this.delegate = delegate;
+        this.node = node;
+    }
+
+    @Override
+    public boolean[] containsBuildings(List<Tile> tiles) {
+        boolean[] found = new boolean[tiles.size()];
+        TileKey[] keys = new TileKey[tiles.size()];
+        String id = delegate.getId();
+        Map<String, List<Integer>> byOwner = new LinkedHashMap<>();
+        List<Integer> missedIndex = new ArrayList<>();
+        for (int i = 0; i < tiles.size(); i++) {
+            //Same key as CachingTileClassifier, whose id is the delegate's
+            keys[i] = TileKey.of(id, tiles.get(i));
+            String owner = node.tileOwner(keys[i]);
+            if (owner.equals(node.getSelf())) {
+                missedIndex.add(i);
+            } else {
+                byOwner.computeIfAbsent(owner, o -> new ArrayList<>()).add(i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : byOwner.entrySet()) {
+            List<Integer> indices = entry.getValue();
+            int[] cached = node.lookupTiles(entry.getKey(), keysAt(keys, indices));
+            for (int j = 0; j < cached.length; j++) {
+                if (cached[j] >= 0) {
+                    found[indices.get(j)] = cached[j] == 1;
+                } else {
+                    missedIndex.add(indices.get(j));
+                }
+            }
+        }
+        if (missedIndex.isEmpty()) {
+            return found;
+        }
+        List<Tile> missed = new ArrayList<>(missedIndex.size());
+        for (int i : missedIndex) {
+            missed.add(tiles.get(i));
+        }
+        boolean[] classified = delegate.containsBuildings(missed);
+        Map<String, List<Integer>> toStore = new LinkedHashMap<>();
+        for (int j = 0; j < classified.length; j++) {
+            int i = missedIndex.get(j);
+            found[i] = classified[j];
+            String owner = node.tileOwner(keys[i]);
+            if (!owner.equals(node.getSelf())) {
+                toStore.computeIfAbsent(owner, o -> new ArrayList<>()).add(i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : toStore.entrySet()) {
+            List<Boolean> values = new ArrayList<>(entry.getValue().size());
+            for (int i : entry.getValue()) {
+                values.add(found[i]);
+            }
+            node.storeTiles(entry.getKey(), keysAt(keys, entry.getValue()), values);
+        }
+        return found;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return delegate.maxBatchSize();
+    }
+
+    @Override
+    public String getId() {
+        return delegate.getId();
+    }
+
+    private static List<TileKey> keysAt(TileKey[] keys, List<Integer> indices) {
+        List<TileKey> result = new ArrayList<>(indices.size());
+        for (int i : indices) {
+            result.add(keys[i]);
+        }
+        return result;
+    }
+}
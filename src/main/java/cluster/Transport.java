@@ -0,0 +1,25 @@
+package cluster;
+
+import java.io.IOException;
+
+/**
+ * Carries opaque request and response messages between cluster nodes. ClusterNode defines the messages;
+ * a transport only has to deliver a request to the handler bound under a node's id and bring the
+ * answer back.
+ */
+public interface Transport {
+    interface Handler {
+        byte[] handle(byte[] request) throws IOException;
+    }
+
+    /**
+     * Makes handler answer the requests sent to node.
+     */
+    void bind(String node, Handler handler);
+
+    /**
+     * Sends request to node and waits for its answer. Fails with an IOException when the node cannot be
+     * reached or its handler failed.
+     */
+    byte[] send(String node, byte[] request) throws IOException;
+}
@@ -0,0 +1,12 @@
+package cluster;
+
+import java.io.IOException;
+
+/**
+ * A cluster message arrived without a valid signature from a node sharing this node's secret.
+ */
+public class UnauthorizedException extends IOException {
+    public UnauthorizedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,82 @@
+package codec;
+
+import model.Box;
+import model.Building;
+import model.Point;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-layout little-endian record stream:
+ * <pre>
+ * header  int32 magic "OCPB", int32 record count
+ * record  int32 left, top, right, bottom
+ *         float64 latitude, longitude
+ *         int32 occupancy
+ * </pre>
+ * 36 bytes a box instead of about 130 as JSON, and readable with a single ByteBuffer on the client.
+ */
+public class BinaryBoxCodec implements BoxCodec {
+    public static final String CONTENT_TYPE = "application/x-ocpc-boxes";
+    public static final int MAGIC = 0x4250434F;
+    public static final int HEADER_BYTES = 8;
+    public static final int RECORD_BYTES = 36;
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public void write(List<Box> boxes, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + RECORD_BYTES * boxes.size()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(boxes.size());
+        for (Box box : boxes) {
+            buffer.putInt(box.getTopLeft().getX()).putInt(box.getTopLeft().getY())
+                    .putInt(box.getBottomRight().getX()).putInt(box.getBottomRight().getY());
+            Building building = box.getBuilding();
+            buffer.putDouble(building.getLatitute()).putDouble(building.getLongitude()).putInt(building.getOccupancy());
+        }
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+    public static List<Box> read(InputStream in) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(readExactly(in, HEADER_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a box record stream");
+        }
+        int count = header.getInt();
+        ByteBuffer records = ByteBuffer.wrap(readExactly(in, RECORD_BYTES * count)).order(ByteOrder.LITTLE_ENDIAN);
+        List<Box> boxes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Point topLeft = new Point(records.getInt(), records.getInt());
+            Point bottomRight = new Point(records.getInt(), records.getInt());
+            Building building = new Building();
+            building.setLatitute(records.getDouble());
+            building.setLongitude(records.getDouble());
+            building.setOccupancy(records.getInt());
+            boxes.add(new Box(topLeft, bottomRight, building));
+        }
+        return boxes;
+    }
+
+    private static byte[] readExactly(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Box record stream ended after " + read + " of " + length + " bytes");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+}
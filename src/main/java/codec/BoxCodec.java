@@ -0,0 +1,16 @@
+package codec;
+
+import model.Box;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A wire format for /image results, written straight to the response stream.
+ */
+public interface BoxCodec {
+    String getContentType();
+
+    void write(List<Box> boxes, OutputStream out) throws IOException;
+}
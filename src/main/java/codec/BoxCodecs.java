@@ -0,0 +1,45 @@
+package codec;
+
+import java.util.Locale;
+
+/**
+ * Picks the response format from an Accept header. JSON is the default, including for missing or
+ * unrecognised headers, so existing clients are unaffected.
+ */
+public final class BoxCodecs {
+    public static final JsonBoxCodec JSON = new JsonBoxCodec();
+    public static final BinaryBoxCodec BINARY = new BinaryBoxCodec();
+
+    private BoxCodecs() {
+    }
+
+    public static BoxCodec negotiate(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        BoxCodec best = JSON;
+        double bestQ = 0;
+        for (String range : accept.split(",")) {
+            String[] params = range.split(";");
+            String type = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            BoxCodec codec = type.equals(BinaryBoxCodec.CONTENT_TYPE) ? BINARY
+                    : type.equals(JsonBoxCodec.CONTENT_TYPE) ? JSON : null;
+            if (codec != null && q > bestQ) {
+                best = codec;
+                bestQ = q;
+            }
+        }
+        return best;
+    }
+}
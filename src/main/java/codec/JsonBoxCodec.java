@@ -0,0 +1,44 @@
+package codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import model.Box;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * The original JSON array of boxes, from one shared writer. ObjectWriter is immutable and thread-safe,
+ * so building it once saves the per-request ObjectMapper setup and serializer lookups.
+ */
+public class JsonBoxCodec implements BoxCodec {
+    public static final String CONTENT_TYPE = "application/json";
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final ObjectWriter WRITER = MAPPER.writerFor(new TypeReference<List<Box>>() {
+    });
+
+    /**
+     * The mapper behind the box writer, for the other JSON bodies the API returns.
+     */
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    public String toString(List<Box> boxes) throws IOException {
+        return WRITER.writeValueAsString(boxes);
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public void write(List<Box> boxes, OutputStream out) throws IOException {
+        WRITER.writeValue(out, boxes);
+    }
+}
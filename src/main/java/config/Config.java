@@ -0,0 +1,122 @@
+package config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * Settings, looked up by their ocpc.* key in order: JVM system property, environment variable, config
+ * file, then the caller's default. The environment variable for a key is the key upper-cased with dots
+ * turned into underscores, so ocpc.upload.maxBytes can be set with OCPC_UPLOAD_MAXBYTES.
+ * <p>
+ * The file is the properties file named by ocpc.config (or OCPC_CONFIG), or else ocpc.properties on the
+ * classpath if there is one. A file that is named but cannot be read fails startup.
+ */
+public final class Config {
+    private static volatile Config global;
+
+    private final Properties system;
+    private final Map<String, String> env;
+    private final Properties file;
+    private final String origin;
+
+    public Config(Properties system, Map<String, String> env, Properties file, String origin) {
+        this.system = system;
+        this.env = env;
+        this.file = file;
+        this.origin = origin;
+    }
+
+    public static Config global() {
+        Config config = global;
+        if (config == null) {
+            synchronized (Config.class) {
+                if (global == null) {
+                    global = load();
+                }
+                config = global;
+            }
+        }
+        return config;
+    }
+
+    private static Config load() {
+        Map<String, String> env = System.getenv();
+        String path = System.getProperty("ocpc.config", env.get("OCPC_CONFIG"));
+        Properties file = new Properties();
+        if (path != null) {
+            try (InputStream in = new FileInputStream(new File(path))) {
+                file.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read config file " + path, e);
+            }
+            return new Config(System.getProperties(), env, file, path);
+        }
+        try (InputStream in = Config.class.getClassLoader().getResourceAsStream("ocpc.properties")) {
+            if (in == null) {
+                return new Config(System.getProperties(), env, file, "defaults");
+            }
+            file.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read ocpc.properties", e);
+        }
+        return new Config(System.getProperties(), env, file, "classpath:ocpc.properties");
+    }
+
+    /**
+     * Where file settings came from, for the startup log.
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = system.getProperty(key);
+        if (value == null) {
+            value = env.get(envName(key));
+        }
+        if (value == null) {
+            value = file.getProperty(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        return value != null ? parse(key, value, Integer::parseInt) : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        return value != null ? parse(key, value, Long::parseLong) : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        return value != null ? parse(key, value, Double::parseDouble) : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    //A typo in a setting should stop startup, not silently fall back to the default
+    private static <T> T parse(String key, String value, Function<String, T> parser) {
+        try {
+            return parser.apply(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + key + ": " + value, e);
+        }
+    }
+
+    static String envName(String key) {
+        return key.toUpperCase(Locale.ROOT).replace('.', '_');
+    }
+}
@@ -0,0 +1,112 @@
+package geo;
+
+import model.Building;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pairs image blobs with buildings by horizontal angle. Each candidate building is projected to its
+ * azimuth relative to the camera's bearing, and each blob's left and right edges are converted to angles
+ * through a pinhole camera with the given horizontal field of view. A blob takes the nearest unused
+ * building whose azimuth falls inside its span; failing that, the one with the smallest angular error,
+ * up to maxErrorDegrees. Nearest wins because it is the one in front.
+ * <p>
+ * Candidates are projected into reusable per-thread primitive arrays and each blob is a single pass
+ * over them, so matching allocates nothing per building and needs no sort.
+ */
+public class AzimuthMatcher {
+    private final double fovDegrees;
+    private final double maxErrorDegrees;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public AzimuthMatcher(double fovDegrees, double maxErrorDegrees) {
+        this.fovDegrees = fovDegrees;
+        this.maxErrorDegrees = maxErrorDegrees;
+    }
+
+    /**
+     * Angle off the camera axis, in degrees, of horizontal position x in an image width pixels wide.
+     */
+    public double pixelAngle(double x, double width) {
+        double focal = (width / 2) / Math.tan(Math.toRadians(fovDegrees / 2));
+        return Math.toDegrees(Math.atan((x - width / 2) / focal));
+    }
+
+    /**
+     * @param left  left edge angle of each blob, from pixelAngle
+     * @param right right edge angle of each blob
+     * @return index into buildings for each blob, or -1 where nothing is close enough
+     */
+    public int[] match(List<Building> buildings, double lat, double lon, double bearing,
+                       double[] left, double[] right, int blobs) {
+        int n = buildings.size();
+        Scratch s = scratch.get();
+        s.ensure(n);
+        double[] azimuth = s.azimuth;
+        double[] distance = s.distance;
+        boolean[] used = s.used;
+        double lonScale = Math.cos(Math.toRadians(lat));
+        for (int i = 0; i < n; i++) {
+            Building building = buildings.get(i);
+            double north = building.getLatitute() - lat;
+            double east = (building.getLongitude() - lon) * lonScale;
+            azimuth[i] = normalize(Math.toDegrees(Math.atan2(east, north)) - bearing);
+            //Only compared, so degrees will do
+            distance[i] = north * north + east * east;
+            used[i] = false;
+        }
+
+        int[] matched = new int[blobs];
+        for (int b = 0; b < blobs; b++) {
+            double lo = Math.min(left[b], right[b]);
+            double hi = Math.max(left[b], right[b]);
+            int best = -1;
+            double bestError = maxErrorDegrees;
+            double bestDistance = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                if (used[i]) {
+                    continue;
+                }
+                double a = azimuth[i];
+                double error = a < lo ? lo - a : a > hi ? a - hi : 0;
+                if (error < bestError || (error == bestError && distance[i] < bestDistance)) {
+                    best = i;
+                    bestError = error;
+                    bestDistance = distance[i];
+                }
+            }
+            //Claimed candidates are skipped by later blobs
+            if (best >= 0) {
+                used[best] = true;
+            }
+            matched[b] = best;
+        }
+        return matched;
+    }
+
+    private static double normalize(double degrees) {
+        double d = degrees % 360;
+        if (d >= 180) {
+            d -= 360;
+        } else if (d < -180) {
+            d += 360;
+        }
+        return d;
+    }
+
+    private static final class Scratch {
+        double[] azimuth = new double[0];
+        double[] distance = new double[0];
+        boolean[] used = new boolean[0];
+
+        void ensure(int n) {
+            if (azimuth.length < n) {
+                int size = Math.max(n, azimuth.length * 2);
+                azimuth = Arrays.copyOf(azimuth, size);
+                distance = Arrays.copyOf(distance, size);
+                used = Arrays.copyOf(used, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package geo;
+
+import model.Building;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable uniform-grid index over the building dataset. Points are bucketed into square cells and
+ * stored cell by cell in parallel primitive arrays, with cellStart giving each cell's range, so a box
+ * query only touches the cells it overlaps.
+ */
+public final class BuildingIndex {
+    public static final double DEFAULT_CELL_DEGREES = 0.001;
+    private static final double MAX_CELLS = 1 << 22;
+
+    private final double cellDegrees;
+    private final double minLat;
+    private final double minLon;
+    private final int rows;
+    private final int cols;
+    private final int[] cellStart;
+    private final double[] lats;
+    private final double[] lons;
+    private final int[] occupancy;
+
+    private BuildingIndex(double cellDegrees, double minLat, double minLon, int rows, int cols,
+                          int[] cellStart, double[] lats, double[] lons, int[] occupancy) {
+        this.cellDegrees = cellDegrees;
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.rows = rows;
+        this.cols = cols;
+        this.cellStart = cellStart;
+        this.lats = lats;
+        this.lons = lons;
+        this.occupancy = occupancy;
+    }
+
+    public static BuildingIndex build(double[] lats, double[] lons, int[] occupancy, int count, double cellDegrees) {
+        if (count == 0) {
+            return new BuildingIndex(cellDegrees, 0, 0, 1, 1, new int[2], new double[0], new double[0], new int[0]);
+        }
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+        //Stray points (e.g. geocoded to 0,0) would blow up the cell table, so coarsen until it fits
+        while (((maxLat - minLat) / cellDegrees + 1) * ((maxLon - minLon) / cellDegrees + 1) > MAX_CELLS) {
+            cellDegrees *= 2;
+        }
+        int rows = (int) ((maxLat - minLat) / cellDegrees) + 1;
+        int cols = (int) ((maxLon - minLon) / cellDegrees) + 1;
+
+        //Counting sort by cell
+        int[] cells = new int[count];
+        int[] cellStart = new int[rows * cols + 1];
+        for (int i = 0; i < count; i++) {
+            int row = (int) ((lats[i] - minLat) / cellDegrees);
+            int col = (int) ((lons[i] - minLon) / cellDegrees);
+            cells[i] = row * cols + col;
+            cellStart[cells[i] + 1]++;
+        }
+        for (int c = 0; c < rows * cols; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = Arrays.copyOf(cellStart, rows * cols);
+        double[] sortedLats = new double[count];
+        double[] sortedLons = new double[count];
+        int[] sortedOccupancy = new int[count];
+        for (int i = 0; i < count; i++) {
+            int at = next[cells[i]]++;
+            sortedLats[at] = lats[i];
+            sortedLons[at] = lons[i];
+            sortedOccupancy[at] = occupancy[i];
+        }
+        return new BuildingIndex(cellDegrees, minLat, minLon, rows, cols, cellStart, sortedLats, sortedLons, sortedOccupancy);
+    }
+
+    public int size() {
+        return lats.length;
+    }
+
+    public List<Building> within(double north, double west, double south, double east) {
+        List<Building> buildings = new ArrayList<>();
+        int row0 = clamp((int) Math.floor((south - minLat) / cellDegrees), rows);
+        int row1 = clamp((int) Math.floor((north - minLat) / cellDegrees), rows);
+        int col0 = clamp((int) Math.floor((west - minLon) / cellDegrees), cols);
+        int col1 = clamp((int) Math.floor((east - minLon) / cellDegrees), cols);
+        if (north < minLat || south > minLat + rows * cellDegrees
+                || east < minLon || west > minLon + cols * cellDegrees) {
+            return buildings;
+        }
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int cell = row * cols + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    if (lats[i] <= north && lats[i] >= south && lons[i] >= west && lons[i] <= east) {
+                        Building building = new Building();
+                        building.setLatitute(lats[i]);
+                        building.setLongitude(lons[i]);
+                        building.setOccupancy(occupancy[i]);
+                        buildings.add(building);
+                    }
+                }
+            }
+        }
+        return buildings;
+    }
+
+    /**
+     * Loads a Socrata export of the dataset, either CSV with a header row or a JSON array of objects.
+     * Rows missing latitude, longitude or ex_dwelling_unit are skipped.
+     */
+    public static BuildingIndex load(File file, double cellDegrees) throws IOException {
+        Columns columns = new Columns();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            if (file.getName().toLowerCase().endsWith(".json")) {
+                readJson(reader, columns);
+            } else {
+                readCsv(reader, columns);
+            }
+        }
+        return build(columns.lats, columns.lons, columns.occupancy, columns.count, cellDegrees);
+    }
+
+    private static void readJson(Reader reader, Columns columns) {
+        JSONArray rows = new JSONArray(new JSONTokener(reader));
+        for (int i = 0; i < rows.length(); i++) {
+            JSONObject row = rows.getJSONObject(i);
+            if (row.has("latitude") && row.has("longitude") && row.has("ex_dwelling_unit")) {
+                columns.add(row.getDouble("latitude"), row.getDouble("longitude"), row.getInt("ex_dwelling_unit"));
+            }
+        }
+    }
+
+    private static void readCsv(BufferedReader reader, Columns columns) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            return;
+        }
+        List<String> names = splitCsv(header);
+        int latColumn = indexOf(names, "latitude");
+        int lonColumn = indexOf(names, "longitude");
+        int occupancyColumn = indexOf(names, "ex_dwelling_unit");
+        if (latColumn < 0 || lonColumn < 0 || occupancyColumn < 0) {
+            throw new IOException("CSV header must contain latitude, longitude and ex_dwelling_unit");
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            List<String> fields = splitCsv(line);
+            if (fields.size() <= Math.max(latColumn, Math.max(lonColumn, occupancyColumn))) {
+                continue;
+            }
+            try {
+                columns.add(Double.parseDouble(fields.get(latColumn)),
+                        Double.parseDouble(fields.get(lonColumn)),
+                        (int) Double.parseDouble(fields.get(occupancyColumn)));
+            } catch (NumberFormatException e) {
+                //Blank or malformed values, same as the rows the API filter drops
+            }
+        }
+    }
+
+    private static int indexOf(List<String> names, String name) {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    private static class Columns {
+        double[] lats = new double[1024];
+        double[] lons = new double[1024];
+        int[] occupancy = new int[1024];
+        int count;
+
+        void add(double lat, double lon, int units) {
+            if (count == lats.length) {
+                lats = Arrays.copyOf(lats, count * 2);
+                lons = Arrays.copyOf(lons, count * 2);
+                occupancy = Arrays.copyOf(occupancy, count * 2);
+            }
+            lats[count] = lat;
+            lons[count] = lon;
+            occupancy[count] = units;
+            count++;
+        }
+    }
+}
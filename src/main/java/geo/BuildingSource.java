@@ -0,0 +1,13 @@
+package geo;
+
+import model.Building;
+
+import java.util.List;
+
+public interface BuildingSource {
+    /**
+     * Buildings inside the box with the given north-west and south-east corners, in no particular order.
+     * Fails with an unchecked exception when the source cannot be reached, rather than returning nothing.
+     */
+    List<Building> within(double north, double west, double south, double east);
+}
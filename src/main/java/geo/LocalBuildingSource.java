@@ -0,0 +1,82 @@
+package geo;
+
+import model.Building;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers box queries from a BuildingIndex loaded from a local export of the dataset. The file is
+ * polled in the background and a rebuilt index is swapped in atomically when it changes; queries in
+ * flight keep using the index they started with.
+ */
+public class LocalBuildingSource implements BuildingSource, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalBuildingSource.class);
+
+    private final File file;
+    private final double cellDegrees;
+    private final ScheduledExecutorService refresher;
+    private final Runnable onRefresh;
+    private volatile BuildingIndex index;
+    private volatile long loadedModified;
+
+    public LocalBuildingSource(File file, double cellDegrees, long refreshMillis) throws IOException {
+        this(file, cellDegrees, refreshMillis, () -> {
+        });
+    }
+
+    /**
+     * @param onRefresh run after a rebuilt index is swapped in, e.g. to drop lists cached from the old one
+     */
+    public LocalBuildingSource(File file, double cellDegrees, long refreshMillis, Runnable onRefresh) throws IOException {
+        this.file = file;
+        this.cellDegrees = cellDegrees;
+        this.onRefresh = onRefresh;
+        this.loadedModified = file.lastModified();
+        this.index = BuildingIndex.load(file, cellDegrees);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "building-index-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        if (refreshMillis > 0) {
+            refresher.scheduleWithFixedDelay(this::refreshIfChanged, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public List<Building> within(double north, double west, double south, double east) {
+        return index.within(north, west, south, east);
+    }
+
+    public BuildingIndex getIndex() {
+        return index;
+    }
+
+    public void refreshIfChanged() {
+        long modified = file.lastModified();
+        if (modified == loadedModified) {
+            return;
+        }
+        try {
+            index = BuildingIndex.load(file, cellDegrees);
+            loadedModified = modified;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to reload {}, keeping the previous index", file, e);
+            return;
+        }
+        onRefresh.run();
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,213 @@
+package geo;
+
+import model.Building;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Read-through cache of building lists keyed by a quantized location cell and bearing quadrant.
+ * <p>
+ * The table is direct-mapped: a key lives in exactly one slot and a newer key for the same slot
+ * replaces it, which bounds the size without any bookkeeping. A hit is a hash, an array read and a
+ * key/expiry comparison, with no allocation. Concurrent misses for one key share a single load.
+ */
+public class LocationCache {
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+    private final long ttlMillis;
+    private final int precisionBits;
+    private final ConcurrentHashMap<Long, CompletableFuture<List<Building>>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param size          number of slots, rounded up to a power of two
+     * @param precisionBits bits per axis of the cell; 20 gives cells of roughly 20m
+     */
+    public LocationCache(int size, long ttlMillis, int precisionBits) {
+        int slots = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.table = new AtomicReferenceArray<>(slots);
+        this.mask = slots - 1;
+        this.ttlMillis = ttlMillis;
+        this.precisionBits = precisionBits;
+    }
+
+    /**
+     * Quadrant of the bearing, using the same boundaries as the box selection in getBuildingsNearLocation:
+     * 0 north, 1 east, 2 south, 3 west.
+     */
+    public static int quadrant(double bearing) {
+        if (bearing > 315 || bearing < 45) {
+            return 0;
+        } else if (bearing < 135) {
+            return 1;
+        } else if (bearing < 225) {
+            return 2;
+        }
+        return 3;
+    }
+
+    public static double quadrantBearing(int quadrant) {
+        return quadrant * 90;
+    }
+
+    /**
+     * Geohash-style key: the interleaved bits of the quantized latitude and longitude, followed by the
+     * two quadrant bits.
+     */
+    public long key(double lat, double lon, double bearing) {
+        long y = quantize((lat + 90) / 180);
+        long x = quantize((lon + 180) / 360);
+        return (interleave(x, y) << 2) | quadrant(bearing);
+    }
+
+    public double cellLatitude(long key) {
+        return center(deinterleave(key >>> 3)) * 180 - 90;
+    }
+
+    public double cellLongitude(long key) {
+        return center(deinterleave(key >>> 2)) * 360 - 180;
+    }
+
+    public static int quadrant(long key) {
+        return (int) (key & 3);
+    }
+
+    public List<Building> get(long key) {
+        Entry entry = table.get(slot(key));
+        if (entry != null && entry.key == key && System.currentTimeMillis() < entry.expiresAt) {
+            hits.increment();
+            return entry.buildings;
+        }
+        return null;
+    }
+
+    /**
+     * The last list stored for key even if it has expired, for when the source cannot be reached. Null
+     * once the slot has been taken by another key.
+     */
+    public List<Building> getStale(long key) {
+        Entry entry = table.get(slot(key));
+        return entry != null && entry.key == key ? entry.buildings : null;
+    }
+
+    /**
+     * Returns the cached list for key, or runs loader once for all concurrent callers and caches the
+     * result. The loader's list is shared between callers and must not be modified afterwards.
+     */
+    public List<Building> getOrLoad(long key, LongFunction<List<Building>> loader) {
+        List<Building> cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        misses.increment();
+        CompletableFuture<List<Building>> mine = new CompletableFuture<>();
+        CompletableFuture<List<Building>> existing = loading.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                //Waiters see the loader's own exception, as the caller that ran it does
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            //Another caller may have finished loading between our get and putIfAbsent
+            List<Building> buildings = table.get(slot(key)) != null ? get(key) : null;
+            if (buildings == null) {
+                buildings = loader.apply(key);
+            }
+            put(key, buildings);
+            mine.complete(buildings);
+            return buildings;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    public void put(long key, List<Building> buildings) {
+        Entry previous = table.getAndSet(slot(key), new Entry(key, System.currentTimeMillis() + ttlMillis, buildings));
+        if (previous != null && previous.key != key && System.currentTimeMillis() < previous.expiresAt) {
+            evictions.increment();
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, null);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    private long quantize(double unit) {
+        long cells = 1L << precisionBits;
+        return Math.max(0, Math.min(cells - 1, (long) (unit * cells)));
+    }
+
+    private double center(long cell) {
+        return (cell + 0.5) / (1L << precisionBits);
+    }
+
+    private static long interleave(long x, long y) {
+        long result = 0;
+        for (int i = 0; i < 31; i++) {
+            result |= ((x >>> i) & 1) << (2 * i);
+            result |= ((y >>> i) & 1) << (2 * i + 1);
+        }
+        return result;
+    }
+
+    //Collects every other bit, starting from the lowest
+    private static long deinterleave(long bits) {
+        long result = 0;
+        for (int i = 0; i < 31; i++) {
+            result |= ((bits >>> (2 * i)) & 1) << i;
+        }
+        return result;
+    }
+
+    private static final class Entry {
+        final long key;
+        final long expiresAt;
+        final List<Building> buildings;
+
+        Entry(long key, long expiresAt, List<Building> buildings) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            this.buildings = buildings;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package geo;
+
+import model.Building;
+import remote.RemoteClient;
+
+import java.util.List;
+
+/**
+ * Sends a remote building source's queries through a RemoteClient.
+ */
+public class ResilientBuildingSource implements BuildingSource {
+    private final BuildingSource delegate;
+    private final RemoteClient client;
+
+    public ResilientBuildingSource(BuildingSource delegate, RemoteClient client) {
+        this.delegate = delegate;
+        this.client = client;
+    }
+
+    @Override
+    public List<Building> within(double north, double west, double south, double east) {
+        return client.call(() -> delegate.within(north, west, south, east));
+    }
+}
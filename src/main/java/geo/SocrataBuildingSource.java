@@ -0,0 +1,63 @@
+package geo;
+
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.JsonNode;
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import model.Building;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SocrataBuildingSource implements BuildingSource {
+    public static final String DATASET = "https://data.cityofnewyork.us/resource/2vyb-t2nz.json";
+
+    public SocrataBuildingSource() {
+        this(2000, 5000);
+    }
+
+    /**
+     * Unirest's timeouts are process-wide, so these apply to every Unirest call.
+     */
+    public SocrataBuildingSource(long connectTimeoutMillis, long readTimeoutMillis) {
+        Unirest.setTimeouts(connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    @Override
+    public List<Building> within(double north, double west, double south, double east) {
+        List<Building> buildings = new ArrayList<>();
+        try {
+            HttpResponse<JsonNode> jsonResponse = Unirest.get(DATASET)
+                    .header("accept", "application/json")
+                    .queryString("$select", "latitude,longitude,ex_dwelling_unit")
+                    .queryString("$where", "within_box(location,"
+                            + north + ","
+                            + west + ","
+                            + south + ","
+                            + east + ")")
+                    .asJson();
+            if (jsonResponse.getStatus() != 200) {
+                String message = "Socrata returned HTTP " + jsonResponse.getStatus();
+                throw new UncheckedIOException(message, new IOException(message));
+            }
+            JSONArray buildingsRoot = jsonResponse.getBody().getArray();
+            for (int i = 0; i < buildingsRoot.length(); i++) {
+                JSONObject buildingObject = buildingsRoot.getJSONObject(i);
+                if (buildingObject.keySet().size() == 3) {
+                    Building building = new Building();
+                    building.setLatitute(buildingObject.getDouble("latitude"));
+                    building.setLongitude(buildingObject.getDouble("longitude"));
+                    building.setOccupancy(buildingObject.getInt("ex_dwelling_unit"));
+                    buildings.add(building);
+                }
+            }
+        } catch (UnirestException e) {
+            throw new UncheckedIOException("Socrata query failed: " + e.getMessage(), new IOException(e));
+        }
+        return buildings;
+    }
+}
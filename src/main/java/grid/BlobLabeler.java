@@ -0,0 +1,93 @@
+package grid;
+
+import java.util.Arrays;
+
+/**
+ * Two-pass, 4-connected component labelling with union-find over int arrays. Labels are numbered in
+ * the raster order of each blob's first cell, which is the same numbering the old breadth-first
+ * flood fill produced, and bounding boxes are collected during the second pass.
+ */
+public final class BlobLabeler {
+    private BlobLabeler() {
+    }
+
+    public static Blobs label(OccupancyGrid grid) {
+        final int rows = grid.getRows();
+        final int cols = grid.getCols();
+        int[] labels = new int[rows * cols];
+        //A blob needs at least one empty cell between it and the next, so this bounds the provisional labels
+        int[] parent = new int[rows * cols / 2 + 2];
+        int next = 1;
+
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                if (!grid.get(y, x)) {
+                    continue;
+                }
+                int up = y > 0 ? labels[(y - 1) * cols + x] : 0;
+                int left = x > 0 ? labels[y * cols + x - 1] : 0;
+                int label;
+                if (up == 0 && left == 0) {
+                    if (next == parent.length) {
+                        parent = Arrays.copyOf(parent, parent.length * 2);
+                    }
+                    label = next++;
+                    parent[label] = label;
+                } else if (up == 0 || left == 0) {
+                    label = up + left;
+                } else {
+                    label = union(parent, up, left);
+                }
+                labels[y * cols + x] = label;
+            }
+        }
+
+        int[] compact = new int[next];
+        int count = 0;
+        int[] minX = new int[next];
+        int[] minY = new int[next];
+        int[] maxX = new int[next];
+        int[] maxY = new int[next];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                if (labels[i] == 0) {
+                    continue;
+                }
+                int root = find(parent, labels[i]);
+                if (compact[root] == 0) {
+                    compact[root] = ++count;
+                    minX[count - 1] = x;
+                    minY[count - 1] = y;
+                    maxX[count - 1] = x;
+                    maxY[count - 1] = y;
+                }
+                int blob = compact[root] - 1;
+                labels[i] = blob + 1;
+                minX[blob] = Math.min(minX[blob], x);
+                maxX[blob] = Math.max(maxX[blob], x);
+                maxY[blob] = y;
+            }
+        }
+        return new Blobs(rows, cols, labels, count, minX, minY, maxX, maxY);
+    }
+
+    private static int find(int[] parent, int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private static int union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+            return rootA;
+        }
+        parent[rootA] = rootB;
+        return rootB;
+    }
+}
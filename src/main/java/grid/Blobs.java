@@ -0,0 +1,86 @@
+package grid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of BlobLabeler: a row-major label per cell (0 for empty, 1..count for blobs) and each blob's
+ * bounding box, indexed by label - 1.
+ */
+public final class Blobs {
+    private final int rows;
+    private final int cols;
+    private final int[] labels;
+    private final int count;
+    private final int[] minX;
+    private final int[] minY;
+    private final int[] maxX;
+    private final int[] maxY;
+
+    Blobs(int rows, int cols, int[] labels, int count, int[] minX, int[] minY, int[] maxX, int[] maxY) {
+        this.rows = rows;
+        this.cols = cols;
+        this.labels = labels;
+        this.count = count;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int label(int row, int col) {
+        return labels[row * cols + col];
+    }
+
+    public int getMinX(int blob) {
+        return minX[blob];
+    }
+
+    public int getMinY(int blob) {
+        return minY[blob];
+    }
+
+    public int getMaxX(int blob) {
+        return maxX[blob];
+    }
+
+    public int getMaxY(int blob) {
+        return maxY[blob];
+    }
+
+    public List<List<Integer>> toLists() {
+        List<List<Integer>> lists = new ArrayList<>();
+        for (int y = 0; y < rows; y++) {
+            List<Integer> row = new ArrayList<>(cols);
+            for (int x = 0; x < cols; x++) {
+                row.add(labels[y * cols + x]);
+            }
+            lists.add(row);
+        }
+        return lists;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                sb.append(labels[y * cols + x]).append(' ');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
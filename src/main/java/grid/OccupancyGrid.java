@@ -0,0 +1,125 @@
+package grid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boolean grid packed into a long[] bitmask. Rotations are views over the same bits that only change
+ * how (row, col) maps to a bit index, so rotating never copies.
+ */
+public final class OccupancyGrid {
+    private final long[] bits;
+    private final int storedRows;
+    private final int storedCols;
+    private final int quarterTurns;
+
+    public OccupancyGrid(int rows, int cols) {
+        this(new long[(rows * cols + 63) >>> 6], rows, cols, 0);
+    }
+
+    private OccupancyGrid(long[] bits, int storedRows, int storedCols, int quarterTurns) {
+        this.bits = bits;
+        this.storedRows = storedRows;
+        this.storedCols = storedCols;
+        this.quarterTurns = quarterTurns & 3;
+    }
+
+    public static OccupancyGrid of(List<List<Boolean>> cells) {
+        int rows = cells.size();
+        int cols = rows == 0 ? 0 : cells.get(0).size();
+        OccupancyGrid grid = new OccupancyGrid(rows, cols);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cells.get(y).size(); x++) {
+                grid.set(y, x, cells.get(y).get(x));
+            }
+        }
+        return grid;
+    }
+
+    public int getRows() {
+        return (quarterTurns & 1) == 0 ? storedRows : storedCols;
+    }
+
+    public int getCols() {
+        return (quarterTurns & 1) == 0 ? storedCols : storedRows;
+    }
+
+    public boolean get(int row, int col) {
+        int i = index(row, col);
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public void set(int row, int col, boolean value) {
+        int i = index(row, col);
+        if (value) {
+            bits[i >>> 6] |= 1L << i;
+        } else {
+            bits[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * A view of this grid turned 90 degrees clockwise. Writes through either view are visible in both.
+     */
+    public OccupancyGrid rotateCW() {
+        return new OccupancyGrid(bits, storedRows, storedCols, quarterTurns + 1);
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public List<List<Boolean>> toLists() {
+        List<List<Boolean>> lists = new ArrayList<>();
+        for (int y = 0; y < getRows(); y++) {
+            List<Boolean> row = new ArrayList<>(getCols());
+            for (int x = 0; x < getCols(); x++) {
+                row.add(get(y, x));
+            }
+            lists.add(row);
+        }
+        return lists;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < getRows(); y++) {
+            for (int x = 0; x < getCols(); x++) {
+                sb.append(get(y, x) ? "T " : "F ");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    //Maps view coordinates back to the stored, unrotated row-major index
+    private int index(int row, int col) {
+        int r, c;
+        switch (quarterTurns) {
+            case 1:
+                r = storedRows - 1 - col;
+                c = row;
+                break;
+            case 2:
+                r = storedRows - 1 - row;
+                c = storedCols - 1 - col;
+                break;
+            case 3:
+                r = col;
+                c = storedCols - 1 - row;
+                break;
+            default:
+                r = row;
+                c = col;
+        }
+        if (r < 0 || r >= storedRows || c < 0 || c >= storedCols) {
+            throw new IndexOutOfBoundsException("(" + row + ", " + col + ")");
+        }
+        return r * storedCols + c;
+    }
+}
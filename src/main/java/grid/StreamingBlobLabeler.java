@@ -0,0 +1,175 @@
+package grid;
+
+import java.util.Arrays;
+
+/**
+ * Connected-component labelling that takes a grid one row at a time, in order, holding only the previous
+ * row's labels, so blobs can be built while later rows are still being classified. Blobs are reported
+ * for the grid rotated clockwise, bounding boxes and numbering alike, which is what
+ * BlobLabeler.label(grid.rotateCW()) gives for the complete grid.
+ * <p>
+ * Provisional labels are merged with union-find as in BlobLabeler; each root carries its blob's extent
+ * and the rotated raster position of its first cell, so no second pass over the cells is needed.
+ */
+public final class StreamingBlobLabeler {
+    private final int rows;
+    private final int cols;
+    private int[] previous;
+    private int[] current;
+    private int row;
+    private int next = 1;
+
+    private int[] parent = new int[16];
+    private int[] minRow = new int[16];
+    private int[] maxRow = new int[16];
+    private int[] minCol = new int[16];
+    private int[] maxCol = new int[16];
+    private long[] first = new long[16];
+
+    private int count = -1;
+    private int[] order;
+
+    public StreamingBlobLabeler(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.previous = new int[cols];
+        this.current = new int[cols];
+    }
+
+    /**
+     * @return the row add expects next
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Labels row getRow() of grid, which must be final by now.
+     */
+    public void add(OccupancyGrid grid, int row) {
+        if (row != this.row || count >= 0) {
+            throw new IllegalStateException("Expected row " + this.row + ", got " + row);
+        }
+        int[] labels = previous;
+        previous = current;
+        current = labels;
+        for (int x = 0; x < cols; x++) {
+            if (!grid.get(row, x)) {
+                current[x] = 0;
+                continue;
+            }
+            int up = previous[x];
+            int left = x > 0 ? current[x - 1] : 0;
+            int label;
+            if (up == 0 && left == 0) {
+                label = create();
+            } else if (up == 0 || left == 0) {
+                label = find(up + left);
+            } else {
+                label = union(up, left);
+            }
+            current[x] = label;
+            include(label, row, x);
+        }
+        this.row++;
+    }
+
+    /**
+     * Ends the grid; the getters below are valid afterwards. Rows never added count as empty.
+     */
+    public void finish() {
+        if (count >= 0) {
+            return;
+        }
+        int roots = 0;
+        long[] keys = new long[next];
+        for (int label = 1; label < next; label++) {
+            if (parent[label] == label) {
+                //The rotated raster position fits in the high bits, so sorting keys sorts roots by first cell
+                keys[roots++] = first[label] << 32 | label;
+            }
+        }
+        Arrays.sort(keys, 0, roots);
+        order = new int[roots];
+        for (int i = 0; i < roots; i++) {
+            order[i] = (int) keys[i];
+        }
+        count = roots;
+        previous = null;
+        current = null;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    //Rotating clockwise, source row r becomes column rows - 1 - r and source column c becomes row c
+    public int getMinX(int blob) {
+        return rows - 1 - maxRow[order[blob]];
+    }
+
+    public int getMinY(int blob) {
+        return minCol[order[blob]];
+    }
+
+    public int getMaxX(int blob) {
+        return rows - 1 - minRow[order[blob]];
+    }
+
+    public int getMaxY(int blob) {
+        return maxCol[order[blob]];
+    }
+
+    private int create() {
+        if (next == parent.length) {
+            int size = parent.length * 2;
+            parent = Arrays.copyOf(parent, size);
+            minRow = Arrays.copyOf(minRow, size);
+            maxRow = Arrays.copyOf(maxRow, size);
+            minCol = Arrays.copyOf(minCol, size);
+            maxCol = Arrays.copyOf(maxCol, size);
+            first = Arrays.copyOf(first, size);
+        }
+        int label = next++;
+        parent[label] = label;
+        minRow[label] = Integer.MAX_VALUE;
+        maxRow[label] = Integer.MIN_VALUE;
+        minCol[label] = Integer.MAX_VALUE;
+        maxCol[label] = Integer.MIN_VALUE;
+        first[label] = Long.MAX_VALUE;
+        return label;
+    }
+
+    private void include(int root, int y, int x) {
+        minRow[root] = Math.min(minRow[root], y);
+        maxRow[root] = Math.max(maxRow[root], y);
+        minCol[root] = Math.min(minCol[root], x);
+        maxCol[root] = Math.max(maxCol[root], x);
+        first[root] = Math.min(first[root], (long) x * rows + (rows - 1 - y));
+    }
+
+    private int find(int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private int union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return rootA;
+        }
+        int root = Math.min(rootA, rootB);
+        int other = Math.max(rootA, rootB);
+        parent[other] = root;
+        minRow[root] = Math.min(minRow[root], minRow[other]);
+        maxRow[root] = Math.max(maxRow[root], maxRow[other]);
+        minCol[root] = Math.min(minCol[root], minCol[other]);
+        maxCol[root] = Math.max(maxCol[root], maxCol[other]);
+        first[root] = Math.min(first[root], first[other]);
+        return root;
+    }
+}
@@ -0,0 +1,28 @@
+package image;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+public class BufferPool {
+    private final ArrayBlockingQueue<TileBuffer> free;
+    private final int initialSize;
+
+    public BufferPool(int capacity, int initialSize) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.initialSize = initialSize;
+    }
+
+    public TileBuffer acquire() {
+        TileBuffer buffer = free.poll();
+        return buffer != null ? buffer : new TileBuffer(initialSize);
+    }
+
+    public void release(TileBuffer buffer) {
+        buffer.reset();
+        //Drop the buffer if the pool is already full
+        free.offer(buffer);
+    }
+
+    public int available() {
+        return free.size();
+    }
+}
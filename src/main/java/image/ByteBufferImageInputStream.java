@@ -0,0 +1,58 @@
+package image;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * ImageInputStream reading straight from a ByteBuffer, so a direct or mapped upload can be decoded
+ * without ImageIO first copying it into its own cache.
+ */
+public class ByteBufferImageInputStream extends ImageInputStreamImpl {
+    private final ByteBuffer buffer;
+
+    public ByteBufferImageInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    /**
+     * @return the whole image, independent of the stream position
+     */
+    public ByteBuffer data() {
+        return buffer.duplicate();
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= buffer.limit()) {
+            return -1;
+        }
+        return buffer.get((int) streamPos++) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        int available = buffer.limit() - (int) Math.min(streamPos, buffer.limit());
+        if (available == 0) {
+            return -1;
+        }
+        int n = Math.min(len, available);
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) streamPos);
+        view.get(b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    @Override
+    public long length() {
+        return buffer.limit();
+    }
+}
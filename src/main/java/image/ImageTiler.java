@@ -0,0 +1,217 @@
+package image;
+
+import model.Tile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Cuts an encoded image into JPEG tiles without holding the whole decoded bitmap in memory unless it
+ * fits a budget. The source is decoded one strip (as many rows of tiles as fit in maxStripPixels) at a
+ * time through ImageReader source regions, and tiles are encoded lazily as the iterator advances. The
+ * last row and column are kept even when they are narrower than a full tile.
+ * <p>
+ * A sequential JPEG cannot be decoded from the middle, so each strip re-decodes every scanline above
+ * it: n strips cost about (n + 1) / 2 full decodes. A budget that holds the whole frame decodes it
+ * once; one tile row per strip keeps the least in memory and costs the most CPU.
+ */
+public class ImageTiler implements Iterator<Tile>, Closeable {
+    /**
+     * Half a 12MP frame: two decode passes, which cost about as much CPU as one full decode plus
+     * re-encoding the tiles, with half the bitmap held.
+     */
+    public static final long DEFAULT_STRIP_PIXELS = 6_000_000;
+
+    private final ImageInputStream stream;
+    private final ImageReader reader;
+    private final TileEncoder encoder;
+    private final int tilePix;
+    private final int subsampling;
+    private final int width;
+    private final int height;
+    private final int rows;
+    private final int cols;
+    private final int stripRows;
+
+    private BufferedImage strip;
+    private int stripRow;
+    private int row;
+    private int col;
+
+    private ImageTiler(ImageInputStream stream, ImageReader reader, BufferPool pool, int tilePix, int subsampling,
+                       long maxStripPixels) throws IOException {
+        this.stream = stream;
+        this.reader = reader;
+        this.encoder = new TileEncoder(pool);
+        this.tilePix = tilePix;
+        this.subsampling = subsampling;
+        this.width = reader.getWidth(0);
+        this.height = reader.getHeight(0);
+        this.rows = (height + tilePix - 1) / tilePix;
+        this.cols = (width + tilePix - 1) / tilePix;
+        long rowPixels = (long) scaled(width) * scaled(tilePix);
+        this.stripRows = (int) Math.max(1, Math.min(rows, maxStripPixels / Math.max(1, rowPixels)));
+    }
+
+    /**
+     * @param pool        encode buffers are taken from here and returned by Tile.release(). If null, every
+     *                    tile gets its own buffer.
+     * @param subsampling decode every n-th source pixel; must divide tilePix
+     */
+    public static ImageTiler open(InputStream input, int tilePix, int subsampling, BufferPool pool) throws IOException {
+        return open(input, tilePix, subsampling, DEFAULT_STRIP_PIXELS, pool);
+    }
+
+    /**
+     * @param maxStripPixels most decoded pixels held at once; a strip is always at least one row of tiles
+     */
+    public static ImageTiler open(InputStream input, int tilePix, int subsampling, long maxStripPixels, BufferPool pool)
+            throws IOException {
+        if (tilePix % subsampling != 0) {
+            throw new IllegalArgumentException("Subsampling " + subsampling + " does not divide tile size " + tilePix);
+        }
+        ImageInputStream stream = ImageIO.createImageInputStream(input);
+        if (stream == null) {
+            throw new IOException("Unable to open image stream");
+        }
+        return open(stream, tilePix, subsampling, maxStripPixels, pool);
+    }
+
+    /**
+     * Tiles an already open stream, which the tiler closes.
+     */
+    public static ImageTiler open(ImageInputStream stream, int tilePix, int subsampling, BufferPool pool) throws IOException {
+        return open(stream, tilePix, subsampling, DEFAULT_STRIP_PIXELS, pool);
+    }
+
+    public static ImageTiler open(ImageInputStream stream, int tilePix, int subsampling, long maxStripPixels,
+                                  BufferPool pool) throws IOException {
+        if (tilePix % subsampling != 0) {
+            stream.close();
+            throw new IllegalArgumentException("Subsampling " + subsampling + " does not divide tile size " + tilePix);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new UnsupportedImageException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(stream, true, true);
+        try {
+            return new ImageTiler(stream, reader, pool, tilePix, subsampling, maxStripPixels);
+        } catch (IOException | RuntimeException e) {
+            reader.dispose();
+            stream.close();
+            throw e;
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Rows of tiles decoded per ImageReader call.
+     */
+    public int getStripRows() {
+        return stripRows;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return row < rows && cols > 0;
+    }
+
+    @Override
+    public Tile next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            if (col == 0 && row % stripRows == 0) {
+                strip = readStrip(row);
+                stripRow = row;
+            }
+            Tile tile = encode(row, col);
+            if (++col == cols) {
+                col = 0;
+                //The strip is kept for the next strip to decode into
+                if (++row == rows) {
+                    strip = null;
+                }
+            }
+            return tile;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Stream<Tile> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(this, (long) rows * cols,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.SIZED), false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        strip = null;
+        encoder.dispose();
+        reader.dispose();
+        stream.close();
+    }
+
+    private BufferedImage readStrip(int row) throws IOException {
+        int y = row * tilePix;
+        int h = Math.min(stripRows * tilePix, height - y);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, y, width, h));
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        //Reuse the previous strip's pixels when the shape matches, which is every strip but the last
+        int w = scaled(width);
+        int sh = scaled(h);
+        if (strip == null || strip.getWidth() != w || strip.getHeight() != sh) {
+            ImageTypeSpecifier type = reader.getImageTypes(0).next();
+            strip = type.createBufferedImage(w, sh);
+        }
+        param.setDestination(strip);
+        return reader.read(0, param);
+    }
+
+    private Tile encode(int row, int col) throws IOException {
+        int x = scaled(col * tilePix);
+        int y = scaled((row - stripRow) * tilePix);
+        int w = Math.min(scaled(tilePix), strip.getWidth() - x);
+        int h = Math.min(scaled(tilePix), strip.getHeight() - y);
+        return encoder.encode(row, col, strip.getSubimage(x, y, w, h));
+    }
+
+    private int scaled(int pixels) {
+        return (pixels + subsampling - 1) / subsampling;
+    }
+}
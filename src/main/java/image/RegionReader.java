@@ -0,0 +1,85 @@
+package image;
+
+import model.Tile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Random-access counterpart of ImageTiler: decodes arbitrary regions of an image, subsampled so the
+ * longer side fits a tile, and encodes each as a JPEG tile. Regions are decoded from the source
+ * every time, so nothing larger than one tile is kept in memory. Not thread-safe.
+ */
+public class RegionReader implements Closeable {
+    private final ImageInputStream stream;
+    private final ImageReader reader;
+    private final TileEncoder encoder;
+    private final int width;
+    private final int height;
+
+    private RegionReader(ImageInputStream stream, ImageReader reader, BufferPool pool) throws IOException {
+        this.stream = stream;
+        this.reader = reader;
+        this.encoder = new TileEncoder(pool);
+        this.width = reader.getWidth(0);
+        this.height = reader.getHeight(0);
+    }
+
+    /**
+     * @param stream must support seeking back, as regions are read in any order; closed by close()
+     */
+    public static RegionReader open(ImageInputStream stream, BufferPool pool) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new UnsupportedImageException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(stream, false, true);
+        try {
+            return new RegionReader(stream, reader, pool);
+        } catch (IOException | RuntimeException e) {
+            reader.dispose();
+            stream.close();
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Decodes region (clipped to the image) at the smallest subsampling that fits maxPix, and encodes it
+     * as a tile labelled row, col.
+     */
+    public Tile read(int row, int col, Rectangle region, int maxPix) throws IOException {
+        Rectangle clipped = region.intersection(new Rectangle(0, 0, width, height));
+        if (clipped.isEmpty()) {
+            throw new IllegalArgumentException("Region " + region + " is outside the image");
+        }
+        int longer = Math.max(clipped.width, clipped.height);
+        int subsampling = (longer + maxPix - 1) / maxPix;
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(clipped);
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return encoder.encode(row, col, reader.read(0, param));
+    }
+
+    @Override
+    public void close() throws IOException {
+        encoder.dispose();
+        reader.dispose();
+        stream.close();
+    }
+}
@@ -0,0 +1,16 @@
+package image;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encode buffer whose backing array can be handed out without the copy made by toByteArray.
+ */
+public class TileBuffer extends ByteArrayOutputStream {
+    public TileBuffer(int size) {
+        super(size);
+    }
+
+    public byte[] array() {
+        return buf;
+    }
+}
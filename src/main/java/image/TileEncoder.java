@@ -0,0 +1,56 @@
+package image;
+
+import model.Tile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * JPEG encoder shared by the tilers, reusing one writer and one opaque canvas across tiles.
+ */
+class TileEncoder {
+    private final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+    private final BufferPool pool;
+    private BufferedImage opaque;
+
+    TileEncoder(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    Tile encode(int row, int col, BufferedImage image) throws IOException {
+        return encode(row, col, 1, image);
+    }
+
+    Tile encode(int row, int col, int span, BufferedImage image) throws IOException {
+        if (image.getColorModel().hasAlpha()) {
+            //The JPEG writer rejects alpha, so flatten onto a reusable opaque canvas
+            if (opaque == null || opaque.getWidth() != image.getWidth() || opaque.getHeight() != image.getHeight()) {
+                opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D g = opaque.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            image = opaque;
+        }
+
+        TileBuffer buffer = pool != null ? pool.acquire() : new TileBuffer(64 * 1024);
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(buffer)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), null);
+        } finally {
+            writer.reset();
+        }
+        Runnable release = pool != null ? () -> pool.release(buffer) : null;
+        return new Tile(row, col, span, buffer.array(), buffer.size(), release);
+    }
+
+    void dispose() {
+        opaque = null;
+        writer.dispose();
+    }
+}
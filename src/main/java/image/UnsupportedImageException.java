@@ -0,0 +1,12 @@
+package image;
+
+import java.io.IOException;
+
+/**
+ * No ImageIO reader recognises the upload, as opposed to a known format that fails to decode.
+ */
+public class UnsupportedImageException extends IOException {
+    public UnsupportedImageException(String message) {
+        super(message);
+    }
+}
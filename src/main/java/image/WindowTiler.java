@@ -0,0 +1,234 @@
+package image;
+
+import model.Tile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Overlapping counterpart of ImageTiler. The image is divided into cells of stride pixels, and square
+ * windows of span cells per side are placed at every cell that keeps them inside the grid, for each of
+ * the given spans, so neighbouring windows overlap and a building on one window's edge is in the middle
+ * of another. Windows larger than tilePix are scaled down to fit, which makes the larger spans the
+ * coarser scales.
+ * <p>
+ * Windows come out in order of their top row, so rows of cells are finished top to bottom. The source is
+ * decoded once, into a band as tall as the largest window that slides down the image, and every window
+ * starting in the band's top row is cut from it.
+ */
+public class WindowTiler implements Iterator<Tile>, Closeable {
+    private final ImageInputStream stream;
+    private final ImageReader reader;
+    private final TileEncoder encoder;
+    private final int stride;
+    private final int[] spans;
+    private final int tilePix;
+    private final int width;
+    private final int height;
+    private final int rows;
+    private final int cols;
+
+    private BufferedImage band;
+    //Image rows held in band
+    private int top;
+    private int bottom;
+    private BufferedImage scaled;
+
+    private int row;
+    private int span = -1;
+    private int col;
+
+    private WindowTiler(ImageInputStream stream, ImageReader reader, BufferPool pool, int stride, int[] spans,
+                        int tilePix) throws IOException {
+        this.stream = stream;
+        this.reader = reader;
+        this.encoder = new TileEncoder(pool);
+        this.stride = stride;
+        this.spans = spans;
+        this.tilePix = tilePix;
+        this.width = reader.getWidth(0);
+        this.height = reader.getHeight(0);
+        this.rows = (height + stride - 1) / stride;
+        this.cols = (width + stride - 1) / stride;
+        this.span = rows > 0 && cols > 0 ? firstSpan(0) : -1;
+    }
+
+    /**
+     * Tiles an already open stream, which the tiler closes.
+     *
+     * @param spans window sides in cells, ascending
+     */
+    public static WindowTiler open(ImageInputStream stream, int stride, int[] spans, int tilePix, BufferPool pool)
+            throws IOException {
+        if (spans.length == 0 || spans[0] < 1 || !isAscending(spans)) {
+            stream.close();
+            throw new IllegalArgumentException("Window spans must be positive and ascending: " + Arrays.toString(spans));
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new UnsupportedImageException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(stream, true, true);
+        try {
+            return new WindowTiler(stream, reader, pool, stride, spans.clone(), tilePix);
+        } catch (IOException | RuntimeException e) {
+            reader.dispose();
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of positions a window of span cells takes along a side of cells cells.
+     */
+    public static int positions(int cells, int span) {
+        return Math.max(0, cells - span) + 1;
+    }
+
+    /**
+     * Number of windows of span cells, along a side of cells cells, that cover cell i.
+     */
+    public static int covering(int cells, int span, int i) {
+        return Math.min(i, positions(cells, span) - 1) - Math.max(0, i - span + 1) + 1;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int[] getSpans() {
+        return spans.clone();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return span >= 0;
+    }
+
+    @Override
+    public Tile next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            Tile tile = encode(row, col, spans[span]);
+            if (++col == positions(cols, spans[span])) {
+                col = 0;
+                span = nextSpan(row, span);
+                while (span < 0 && ++row < rows) {
+                    span = firstSpan(row);
+                }
+                if (row == rows) {
+                    band = null;
+                    scaled = null;
+                }
+            }
+            return tile;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        band = null;
+        scaled = null;
+        encoder.dispose();
+        reader.dispose();
+        stream.close();
+    }
+
+    private int firstSpan(int row) {
+        return row < positions(rows, spans[0]) ? 0 : -1;
+    }
+
+    private int nextSpan(int row, int span) {
+        return span + 1 < spans.length && row < positions(rows, spans[span + 1]) ? span + 1 : -1;
+    }
+
+    private Tile encode(int row, int col, int span) throws IOException {
+        int x = col * stride;
+        int y = row * stride;
+        int w = Math.min(span * stride, width - x);
+        int h = Math.min(span * stride, height - y);
+        fill(y, y + h);
+        BufferedImage window = band.getSubimage(x, y - top, w, h);
+        //Same output size as decoding the window at the smallest subsampling that fits tilePix
+        int subsampling = (Math.max(w, h) + tilePix - 1) / tilePix;
+        if (subsampling > 1) {
+            int sw = (w + subsampling - 1) / subsampling;
+            int sh = (h + subsampling - 1) / subsampling;
+            if (scaled == null || scaled.getWidth() != sw || scaled.getHeight() != sh) {
+                scaled = new BufferedImage(sw, sh, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D g = scaled.createGraphics();
+            g.drawImage(window, 0, 0, sw, sh, null);
+            g.dispose();
+            window = scaled;
+        }
+        return encoder.encode(row, col, span, window);
+    }
+
+    //Makes band hold image rows from..to, sliding it down and decoding as far as it reaches
+    private void fill(int from, int to) throws IOException {
+        if (band == null) {
+            int tallest = Math.min(spans[spans.length - 1] * stride, height);
+            ImageTypeSpecifier type = reader.getImageTypes(0).next();
+            band = type.createBufferedImage(width, tallest);
+            top = from;
+            bottom = from;
+        }
+        if (to <= bottom) {
+            return;
+        }
+        if (from > top) {
+            int kept = Math.max(0, bottom - from);
+            if (kept > 0) {
+                Graphics2D g = band.createGraphics();
+                g.copyArea(0, from - top, width, kept, 0, top - from);
+                g.dispose();
+            }
+            top = from;
+            bottom = from + kept;
+        }
+        int end = Math.min(top + band.getHeight(), height);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, bottom, width, end - bottom));
+        param.setDestination(band);
+        param.setDestinationOffset(new Point(0, bottom - top));
+        reader.read(0, param);
+        bottom = end;
+    }
+
+    private static boolean isAscending(int[] spans) {
+        for (int i = 1; i < spans.length; i++) {
+            if (spans[i] <= spans[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
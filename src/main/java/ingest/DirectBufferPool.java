@@ -0,0 +1,45 @@
+package ingest;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fixed-size direct buffers, at most maxBuffers of them handed out at once. Direct memory is only
+ * freed when the GC gets round to it, so an unbounded number of in-flight uploads would exhaust it.
+ */
+public class DirectBufferPool {
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final Semaphore outstanding;
+    private final int bufferSize;
+
+    public DirectBufferPool(int capacity, int bufferSize, int maxBuffers) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.outstanding = new Semaphore(maxBuffers);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return a cleared buffer, or null if maxBuffers are already in use
+     */
+    public ByteBuffer acquire() {
+        if (!outstanding.tryAcquire()) {
+            return null;
+        }
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        free.offer(buffer);
+        outstanding.release();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
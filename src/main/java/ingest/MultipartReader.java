@@ -0,0 +1,252 @@
+package ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Single-pass multipart/form-data reader. Parts are visited in order with nextPart(), and each body is
+ * either copied to a sink or skipped, so nothing is buffered beyond a small read window.
+ */
+public class MultipartReader {
+    private static final int WINDOW = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private final InputStream input;
+    private final byte[] delimiter;
+    private final byte[] buf = new byte[WINDOW];
+    private int start;
+    private int end;
+    private boolean bodyPending;
+    private boolean finished;
+
+    public MultipartReader(InputStream input, String boundary) {
+        this.input = input;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return the boundary parameter of a multipart content type, or null if there is none
+     */
+    public static String boundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                String value = trimmed.substring("boundary=".length());
+                return value.startsWith("\"") && value.endsWith("\"") && value.length() > 1
+                        ? value.substring(1, value.length() - 1) : value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Advances to the next part, skipping the unread body of the current one.
+     *
+     * @return the next part's headers, or null after the closing boundary
+     */
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (bodyPending) {
+            skipBody();
+        } else if (start == 0 && end == 0) {
+            //The first boundary is not preceded by CRLF, so pretend it was
+            buf[0] = '\r';
+            buf[1] = '\n';
+            end = 2;
+            copyUntilDelimiter(null, Long.MAX_VALUE);
+        }
+        if (!fill(2)) {
+            throw new UploadException(400, "Truncated multipart body");
+        }
+        if (buf[start] == '-' && buf[start + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        Part part = readHeaders();
+        bodyPending = true;
+        return part;
+    }
+
+    /**
+     * Copies the current part's body to sink. Fails with 413 once more than maxBytes would be written.
+     */
+    public long readBody(OutputStream sink, long maxBytes) throws IOException {
+        if (!bodyPending) {
+            throw new IllegalStateException("No part body to read");
+        }
+        bodyPending = false;
+        return copyUntilDelimiter(sink, maxBytes);
+    }
+
+    public void skipBody() throws IOException {
+        bodyPending = false;
+        copyUntilDelimiter(null, Long.MAX_VALUE);
+    }
+
+    private Part readHeaders() throws IOException {
+        Part part = new Part();
+        //Skip the CRLF that ends the boundary line
+        skipLine();
+        int total = 0;
+        while (true) {
+            String line = readLine();
+            total += line.length();
+            if (total > MAX_HEADER_BYTES) {
+                throw new UploadException(400, "Multipart headers too large");
+            }
+            if (line.isEmpty()) {
+                return part;
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (name.equals("content-type")) {
+                part.contentType = value;
+            } else if (name.equals("content-disposition")) {
+                part.name = param(value, "name");
+                part.filename = param(value, "filename");
+            }
+        }
+    }
+
+    private static String param(String header, String key) {
+        for (String piece : header.split(";")) {
+            String trimmed = piece.trim();
+            int eq = trimmed.indexOf('=');
+            if (eq > 0 && trimmed.substring(0, eq).trim().equalsIgnoreCase(key)) {
+                String value = trimmed.substring(eq + 1).trim();
+                if (value.startsWith("\"") && value.endsWith("\"") && value.length() > 1) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private void skipLine() throws IOException {
+        readLine();
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            if (!fill(1)) {
+                throw new UploadException(400, "Truncated multipart headers");
+            }
+            byte b = buf[start++];
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) (b & 0xff));
+            if (line.length() > MAX_HEADER_BYTES) {
+                throw new UploadException(400, "Multipart header line too long");
+            }
+        }
+    }
+
+    //Streams bytes up to the next delimiter into sink (or nowhere), leaving start just past the delimiter
+    private long copyUntilDelimiter(OutputStream sink, long maxBytes) throws IOException {
+        long copied = 0;
+        while (true) {
+            int found = indexOf(delimiter, start, end);
+            if (found >= 0) {
+                copied += emit(sink, found - start, copied, maxBytes);
+                start = found + delimiter.length;
+                return copied;
+            }
+            //Everything except a possible partial delimiter at the tail is body
+            int safe = Math.max(start, end - delimiter.length + 1);
+            copied += emit(sink, safe - start, copied, maxBytes);
+            start = safe;
+            if (!readMore()) {
+                throw new UploadException(400, "Multipart body is missing its closing boundary");
+            }
+        }
+    }
+
+    private int emit(OutputStream sink, int length, long copied, long maxBytes) throws IOException {
+        if (length <= 0) {
+            return 0;
+        }
+        if (copied + length > maxBytes) {
+            throw new UploadException(413, "Part exceeds " + maxBytes + " bytes");
+        }
+        if (sink != null) {
+            sink.write(buf, start, length);
+        }
+        return length;
+    }
+
+    private boolean fill(int needed) throws IOException {
+        while (end - start < needed) {
+            if (!readMore()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean readMore() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buf.length) {
+            throw new UploadException(400, "Multipart line exceeds read window");
+        }
+        int read = input.read(buf, end, buf.length - end);
+        if (read < 0) {
+            return false;
+        }
+        end += read;
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buf[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public static class Part {
+        private String name;
+        private String filename;
+        private String contentType;
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
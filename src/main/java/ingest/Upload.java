@@ -0,0 +1,58 @@
+package ingest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An uploaded body held either in a pooled direct buffer or, past the memory threshold, in a
+ * memory-mapped temp file. close() returns the buffer to its pool or deletes the file.
+ */
+public class Upload implements Closeable {
+    private final ByteBuffer data;
+    private final String contentType;
+    private final DirectBufferPool pool;
+    private final File spill;
+    private boolean closed;
+
+    Upload(ByteBuffer data, String contentType, DirectBufferPool pool, File spill) {
+        this.data = data;
+        this.contentType = contentType;
+        this.pool = pool;
+        this.spill = spill;
+    }
+
+    /**
+     * A read-only view positioned at the start of the body. Each call returns an independent view.
+     */
+    public ByteBuffer data() {
+        return data.asReadOnlyBuffer();
+    }
+
+    public int size() {
+        return data.remaining();
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean isSpilled() {
+        return spill != null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pool != null) {
+            pool.release(data);
+        }
+        if (spill != null && !spill.delete()) {
+            spill.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ingest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sink for an upload body. Bytes go straight into a pooled direct buffer; if the body outgrows it,
+ * what was buffered is moved to a temp file and the rest is appended there, and the file is mapped
+ * when the body is complete. When the pool has no buffer to spare the body goes to the file from the
+ * start. Writing past maxBytes fails with 413.
+ */
+public class UploadBuffer extends OutputStream {
+    private final DirectBufferPool pool;
+    private final long maxBytes;
+    private final File tempDir;
+    private ByteBuffer buffer;
+    private File spill;
+    private RandomAccessFile spillFile;
+    private long written;
+
+    public UploadBuffer(DirectBufferPool pool, long maxBytes, File tempDir) {
+        this.pool = pool;
+        this.maxBytes = maxBytes;
+        this.tempDir = tempDir;
+        this.buffer = pool.acquire();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        written += length;
+        if (written > maxBytes) {
+            throw new UploadException(413, "Upload exceeds " + maxBytes + " bytes");
+        }
+        if (buffer != null && buffer.remaining() >= length) {
+            buffer.put(bytes, offset, length);
+            return;
+        }
+        if (spillFile == null) {
+            spill();
+        }
+        spillFile.write(bytes, offset, length);
+    }
+
+    private void spill() throws IOException {
+        spill = File.createTempFile("upload", ".part", tempDir);
+        spillFile = new RandomAccessFile(spill, "rw");
+        if (buffer != null) {
+            buffer.flip();
+            spillFile.getChannel().write(buffer);
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Hands the body over to an Upload, which then owns the buffer or temp file.
+     */
+    public Upload finish(String contentType) throws IOException {
+        if (buffer != null) {
+            buffer.flip();
+            return new Upload(buffer, contentType, pool, null);
+        }
+        if (spillFile == null) {
+            spill();
+        }
+        try {
+            FileChannel channel = spillFile.getChannel();
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Upload(mapped, contentType, null, spill);
+        } finally {
+            spillFile.close();
+        }
+    }
+
+    /**
+     * Releases the buffer or temp file of a body that will not be finished.
+     */
+    public void discard() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                //Deleting below is all that matters
+            }
+            spill.delete();
+        }
+    }
+}
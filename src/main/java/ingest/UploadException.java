@@ -0,0 +1,19 @@
+package ingest;
+
+import java.io.IOException;
+
+/**
+ * An upload rejected before decoding, with the HTTP status to answer with.
+ */
+public class UploadException extends IOException {
+    private final int status;
+
+    public UploadException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
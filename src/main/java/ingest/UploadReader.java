@@ -0,0 +1,110 @@
+package ingest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Reads an image upload from a request body, either multipart/form-data (the named field) or a raw
+ * image/jpeg or image/png body, into an Upload. Oversized, mistyped and malformed bodies are rejected
+ * with an UploadException before anything is decoded.
+ */
+public class UploadReader {
+    private final DirectBufferPool pool;
+    private final long maxBytes;
+    private final File tempDir;
+
+    /**
+     * @param memoryThreshold bodies up to this size stay in pooled direct buffers
+     * @param pooledBuffers   number of idle buffers kept for reuse
+     * @param memoryBuffers   most bodies held in direct buffers at once; the rest go to temp files
+     * @param tempDir         directory for bodies past the threshold; null for the system default
+     */
+    public UploadReader(long maxBytes, int memoryThreshold, int pooledBuffers, int memoryBuffers, File tempDir) {
+        this.pool = new DirectBufferPool(pooledBuffers, memoryThreshold, memoryBuffers);
+        this.maxBytes = maxBytes;
+        this.tempDir = tempDir;
+    }
+
+    public Upload read(String contentType, long contentLength, InputStream body, String field) throws IOException {
+        if (contentLength > maxBytes) {
+            throw new UploadException(413, "Upload exceeds " + maxBytes + " bytes");
+        }
+        String boundary = MultipartReader.boundary(contentType);
+        if (boundary != null) {
+            return readMultipart(new MultipartReader(body, boundary), field);
+        }
+        if (!isImageType(contentType)) {
+            throw new UploadException(415, "Expected multipart/form-data, image/jpeg or image/png");
+        }
+        UploadBuffer buffer = new UploadBuffer(pool, maxBytes, tempDir);
+        try {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = body.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            return checked(buffer.finish(contentType));
+        } catch (IOException | RuntimeException e) {
+            buffer.discard();
+            throw e;
+        }
+    }
+
+    private Upload readMultipart(MultipartReader reader, String field) throws IOException {
+        MultipartReader.Part part;
+        while ((part = reader.nextPart()) != null) {
+            if (!field.equals(part.getName())) {
+                continue;
+            }
+            return readPart(reader, part);
+        }
+        throw new UploadException(400, "Missing multipart field '" + field + "'");
+    }
+
+    /**
+     * Reads the body of the part reader is positioned on as an image upload.
+     */
+    public Upload readPart(MultipartReader reader, MultipartReader.Part part) throws IOException {
+        //Parts without a type are allowed through to the magic byte check
+        if (part.getContentType() != null && !isImageType(part.getContentType())) {
+            throw new UploadException(415, "Unsupported image type " + part.getContentType());
+        }
+        UploadBuffer buffer = new UploadBuffer(pool, maxBytes, tempDir);
+        try {
+            reader.readBody(buffer, maxBytes);
+            return checked(buffer.finish(part.getContentType()));
+        } catch (IOException | RuntimeException e) {
+            buffer.discard();
+            throw e;
+        }
+    }
+
+    private static Upload checked(Upload upload) throws IOException {
+        if (!isJpeg(upload.data()) && !isPng(upload.data())) {
+            upload.close();
+            throw new UploadException(415, "Body is not a JPEG or PNG image");
+        }
+        return upload;
+    }
+
+    private static boolean isImageType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+        return type.equals("image/jpeg") || type.equals("image/jpg") || type.equals("image/png");
+    }
+
+    private static boolean isJpeg(ByteBuffer data) {
+        return data.remaining() >= 3
+                && (data.get(0) & 0xff) == 0xFF && (data.get(1) & 0xff) == 0xD8 && (data.get(2) & 0xff) == 0xFF;
+    }
+
+    private static boolean isPng(ByteBuffer data) {
+        return data.remaining() >= 4
+                && (data.get(0) & 0xff) == 0x89 && data.get(1) == 'P' && data.get(2) == 'N' && data.get(3) == 'G';
+    }
+}
@@ -0,0 +1,140 @@
+package jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class Job {
+    public enum Status {QUEUED, RUNNING, DONE, FAILED}
+
+    public static final String DONE_EVENT = "done";
+    public static final String ERROR_EVENT = "error";
+
+    private final String id;
+    private final long createdAt = System.currentTimeMillis();
+    private final List<Event> events = new ArrayList<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile Status status = Status.QUEUED;
+    private volatile String result;
+    private volatile long finishedAt;
+
+    Job(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    /**
+     * Publishes a progress event to current subscribers and keeps it for later ones.
+     */
+    public synchronized void publish(String type, String data) {
+        Event event = new Event(type, data);
+        events.add(event);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.queue.offer(event);
+            subscriber.onEvent.run();
+        }
+    }
+
+    /**
+     * Returns a queue that first replays every event published so far and then receives new ones. The
+     * last event is DONE_EVENT or ERROR_EVENT.
+     */
+    public BlockingQueue<Event> subscribe() {
+        return subscribe(() -> {
+        });
+    }
+
+    /**
+     * Like subscribe(), and runs onEvent after each new event is queued. onEvent runs on the publishing
+     * thread, so it should only hand the work off.
+     */
+    public synchronized BlockingQueue<Event> subscribe(Runnable onEvent) {
+        BlockingQueue<Event> queue = new LinkedBlockingQueue<>(events);
+        if (!isFinished()) {
+            subscribers.add(new Subscriber(queue, onEvent));
+        }
+        return queue;
+    }
+
+    public void unsubscribe(BlockingQueue<Event> queue) {
+        subscribers.removeIf(subscriber -> subscriber.queue == queue);
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    synchronized void complete(String result) {
+        this.result = result;
+        finish(Status.DONE, DONE_EVENT, result);
+    }
+
+    synchronized void fail(String message) {
+        this.result = message;
+        finish(Status.FAILED, ERROR_EVENT, message);
+    }
+
+    private void finish(Status status, String type, String data) {
+        this.finishedAt = System.currentTimeMillis();
+        this.status = status;
+        publish(type, data);
+        subscribers.clear();
+    }
+
+    public static class Event {
+        private final String type;
+        private final String data;
+
+        Event(String type, String data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getData() {
+            return data;
+        }
+
+        public boolean isTerminal() {
+            return DONE_EVENT.equals(type) || ERROR_EVENT.equals(type);
+        }
+    }
+
+    private static final class Subscriber {
+        final BlockingQueue<Event> queue;
+        final Runnable onEvent;
+
+        Subscriber(BlockingQueue<Event> queue, Runnable onEvent) {
+            this.queue = queue;
+            this.onEvent = onEvent;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package jobs;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs /image jobs off the request threads on a fixed pool with a bounded queue. submit() fails fast
+ * with RejectedExecutionException when the queue is full. Finished jobs are kept for a while so
+ * clients can poll for the result, then swept.
+ */
+public class JobManager {
+    private final ThreadPoolExecutor pool;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+    private final long retainMillis;
+
+    public JobManager(int threads, int queueSize, long retainMillis) {
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread t = new Thread(r, "image-job-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.retainMillis = retainMillis;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "image-job-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, retainMillis / 4);
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues work and returns its job right away. The function's return value becomes the job result;
+     * an exception or error fails the job with its message.
+     */
+    public Job submit(Function<Job, String> work) {
+        Job job = new Job(UUID.randomUUID().toString());
+        jobs.put(job.getId(), job);
+        try {
+            pool.execute(() -> {
+                job.start();
+                try {
+                    job.complete(work.apply(job));
+                } catch (RuntimeException e) {
+                    job.fail(message(e));
+                } catch (Error e) {
+                    //Still finish the job, or it would stay RUNNING and never be swept
+                    job.fail(message(e));
+                    throw e;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    public Job get(String id) {
+        return jobs.get(id);
+    }
+
+    public int getQueued() {
+        return pool.getQueue().size();
+    }
+
+    public int getActive() {
+        return pool.getActiveCount();
+    }
+
+    public int getStored() {
+        return jobs.size();
+    }
+
+    public void shutdown() {
+        sweeper.shutdownNow();
+        pool.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    private static String message(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    void sweep() {
+        long cutoff = System.currentTimeMillis() - retainMillis;
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < cutoff);
+    }
+}
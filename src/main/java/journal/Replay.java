@@ -0,0 +1,199 @@
+package journal;
+
+import api.Application;
+import api.PipelineListener;
+import classifier.LocalTileClassifier;
+import classifier.WatsonTileClassifier;
+import codec.BoxCodecs;
+import geo.BuildingIndex;
+import image.ByteBufferImageInputStream;
+import model.Box;
+import model.Building;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays a result log (see ResultLog) through the pipeline with stubbed upstreams: the local classifier
+ * with ocpc.classifier.latencyMillis in place of Watson, and the candidate buildings the log recorded in
+ * place of Socrata. Frames go out at their recorded pace times replay.speed, or as fast as
+ * replay.concurrency clients allow with replay.speed=0. An answer is only compared with the recorded one
+ * when the record was produced by the same classifier, with its candidates; the rest (Watson answers,
+ * session frames that reused tiles, version 1 records) are counted as uncompared. Records logged without
+ * their frame are sent replay.image instead, if given, and are not compared either.
+ * <p>
+ * Run it with the log directory as argument:
+ * <pre>java -Dreplay.speed=0 -cp &lt;server classpath&gt; journal.Replay /var/log/ocpc</pre>
+ */
+public class Replay {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: journal.Replay <log directory>");
+            System.exit(2);
+        }
+        System.out.println(run(new File(args[0])));
+        System.exit(0);
+    }
+
+    /**
+     * Replays the log in dir, using the replay.* system properties described above.
+     */
+    public static Result run(File dir) throws Exception {
+        double speed = Double.parseDouble(System.getProperty("replay.speed", "1"));
+        int concurrency = Integer.getInteger("replay.concurrency", 16);
+        String fallback = System.getProperty("replay.image");
+        byte[] fallbackImage = fallback != null ? Files.readAllBytes(Paths.get(fallback)) : null;
+        System.setProperty("java.awt.headless", "true");
+
+        //First pass: the recorded buildings become the building source
+        Set<Building> buildings = new LinkedHashSet<>();
+        int records = 0;
+        try (SegmentReader reader = new SegmentReader(dir)) {
+            while (reader.hasNext()) {
+                ResultRecord record = ResultRecord.decode(reader.next());
+                if (record.getCandidates() != null) {
+                    buildings.addAll(record.getCandidates());
+                }
+                for (Box box : record.getBoxes()) {
+                    buildings.add(box.getBuilding());
+                }
+                records++;
+            }
+        }
+        double[] lats = new double[buildings.size()];
+        double[] lons = new double[buildings.size()];
+        int[] occupancy = new int[buildings.size()];
+        int count = 0;
+        for (Building building : buildings) {
+            lats[count] = building.getLatitute();
+            lons[count] = building.getLongitude();
+            occupancy[count++] = building.getOccupancy();
+        }
+        BuildingIndex index = BuildingIndex.build(lats, lons, occupancy, count, BuildingIndex.DEFAULT_CELL_DEGREES);
+        Application.setBuildingSource(index::within);
+        LocalTileClassifier classifier = new LocalTileClassifier(0.08,
+                Long.getLong("ocpc.classifier.latencyMillis", 50), WatsonTileClassifier.MAX_BATCH);
+
+        Result result = new Result(records, concurrency);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        Semaphore slots = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        long first = -1;
+        try (SegmentReader reader = new SegmentReader(dir)) {
+            while (reader.hasNext()) {
+                ResultRecord record = ResultRecord.decode(reader.next());
+                byte[] image = record.getImage() != null ? record.getImage() : fallbackImage;
+                if (image == null) {
+                    result.skipped.incrementAndGet();
+                    continue;
+                }
+                if (first < 0) {
+                    first = record.getTimeMillis();
+                }
+                if (speed > 0) {
+                    long due = start + (long) ((record.getTimeMillis() - first) / speed * 1e6);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+                boolean comparable = record.getImage() != null && record.getCandidates() != null
+                        && classifier.getId().equals(record.getClassifierId());
+                slots.acquire();
+                int i = result.sent.getAndIncrement();
+                clients.execute(() -> {
+                    try {
+                        long sent = System.nanoTime();
+                        String json = Application.classifyToJson(classifier,
+                                new ByteBufferImageInputStream(ByteBuffer.wrap(image)), record.getLat(), record.getLon(),
+                                record.getBearing(), () -> false, PipelineListener.NONE);
+                        result.latencies[i] = System.nanoTime() - sent;
+                        if (!comparable) {
+                            result.uncompared.incrementAndGet();
+                            return;
+                        }
+                        if (json.equals(BoxCodecs.JSON.toString(record.getBoxes()))) {
+                            result.matched.incrementAndGet();
+                        } else {
+                            result.mismatched.incrementAndGet();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        //A frame that no longer classifies does not match whatever was recorded
+                        (comparable ? result.mismatched : result.uncompared).incrementAndGet();
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        }
+        clients.shutdown();
+        clients.awaitTermination(10, TimeUnit.MINUTES);
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    public static class Result {
+        private final int concurrency;
+        private final long[] latencies;
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger matched = new AtomicInteger();
+        private final AtomicInteger mismatched = new AtomicInteger();
+        private final AtomicInteger uncompared = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private long elapsedNanos;
+
+        Result(int records, int concurrency) {
+            this.concurrency = concurrency;
+            this.latencies = new long[records];
+        }
+
+        public int getSent() {
+            return sent.get();
+        }
+
+        public int getMatched() {
+            return matched.get();
+        }
+
+        public int getMismatched() {
+            return mismatched.get();
+        }
+
+        /**
+         * Frames sent but not compared, since another classifier or another building list answered them.
+         */
+        public int getUncompared() {
+            return uncompared.get();
+        }
+
+        public int getSkipped() {
+            return skipped.get();
+        }
+
+        private double millis(long[] sorted, double quantile) {
+            return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (quantile * sorted.length))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            long[] sorted = Arrays.copyOf(latencies, sent.get());
+            Arrays.sort(sorted);
+            return String.format("%d frames replayed by %d clients in %.1fs: %.1f req/s, p50 %.0fms, p99 %.0fms, max %.0fms, "
+                            + "%d matched, %d mismatched, %d not comparable, %d skipped without a frame",
+                    sent.get(), concurrency, elapsedNanos / 1e9, sent.get() / (elapsedNanos / 1e9),
+                    millis(sorted, 0.5), millis(sorted, 0.99), millis(sorted, 1.0),
+                    matched.get(), mismatched.get(), uncompared.get(), skipped.get());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every classified frame for offline analytics without making requests wait on the disk.
+ * Request threads encode a record and offer it to a RingBuffer; one writer thread drains the ring into
+ * a SegmentLog and forces it to disk every forceMillis. When the ring is full, or the records waiting
+ * in it exceed maxPendingBytes, a record is kept without its image if that brings it under, and dropped
+ * otherwise, so a slow disk costs records rather than latency or memory.
+ */
+public class ResultLog implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ResultLog.class);
+
+    private final SegmentLog log;
+    private final RingBuffer<byte[]> ring;
+    private final long maxPendingBytes;
+    private final long forceNanos;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public ResultLog(SegmentLog log, int ringSize, long maxPendingBytes, long forceMillis) {
+        this.log = log;
+        this.ring = new RingBuffer<>(ringSize);
+        this.maxPendingBytes = maxPendingBytes;
+        this.forceNanos = TimeUnit.MILLISECONDS.toNanos(forceMillis);
+        this.writer = new Thread(this::drain, "result-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues record for writing.
+     *
+     * @return false if it was dropped
+     */
+    public boolean append(ResultRecord record) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        if (record.getImage() != null
+                && pending.get() + record.size() > maxPendingBytes) {
+            record = record.withoutImage();
+        }
+        byte[] payload = record.encode();
+        if (pending.addAndGet(payload.length) > maxPendingBytes || !ring.offer(payload)) {
+            pending.addAndGet(-payload.length);
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return bytes queued but not yet written
+     */
+    public long getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Writes what is queued, then closes the log.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    private void drain() {
+        long forced = System.nanoTime();
+        boolean dirty = false;
+        while (true) {
+            byte[] payload = ring.poll();
+            if (payload != null) {
+                pending.addAndGet(-payload.length);
+                try {
+                    log.append(payload);
+                    written.incrementAndGet();
+                    dirty = true;
+                } catch (IOException | RuntimeException e) {
+                    dropped.incrementAndGet();
+                    LOG.warn("Result log write failed", e);
+                }
+            } else if (closed) {
+                return;
+            }
+            if (dirty && System.nanoTime() - forced >= forceNanos) {
+                log.force();
+                forced = System.nanoTime();
+                dirty = false;
+            }
+            if (payload == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package journal;
+
+import model.Box;
+import model.Building;
+import model.Point;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One classified frame as the result log stores it. Little-endian:
+ * <pre>
+ * int8    version
+ * int64   time (epoch millis), latency (nanos)
+ * float64 latitude, longitude, bearing
+ * int32   box count, then per box the BinaryBoxCodec record (left, top, right, bottom, lat, lon, occupancy)
+ * int32   classifier id length, -1 when unknown, then the id in UTF-8
+ * int32   candidate count, -1 when not kept, then per building lat, lon (float64) and occupancy (int32)
+ * int32   image length, -1 when the frame was not kept, then the encoded image
+ * </pre>
+ * Version 1 records, written before the classifier id and candidates were, decode with neither.
+ */
+public class ResultRecord {
+    private static final byte VERSION = 2;
+    private static final byte VERSION_1 = 1;
+    private static final int FIXED_BYTES = 1 + 8 + 8 + 8 * 3 + 4 + 4 + 4 + 4;
+    private static final int BOX_BYTES = 36;
+    private static final int BUILDING_BYTES = 20;
+
+    private final long timeMillis;
+    private final long latencyNanos;
+    private final double lat;
+    private final double lon;
+    private final double bearing;
+    private final List<Box> boxes;
+    private final String classifierId;
+    private final List<Building> candidates;
+    private final byte[] image;
+
+    /**
+     * @param classifierId the TileClassifier#getId that produced boxes, or null if unknown
+     * @param candidates   the buildings boxes were matched against, or null if not kept
+     * @param image        the encoded frame, or null if not kept
+     */
+    public ResultRecord(long timeMillis, long latencyNanos, double lat, double lon, double bearing, List<Box> boxes,
+                        String classifierId, List<Building> candidates, byte[] image) {
+        this.timeMillis = timeMillis;
+        this.latencyNanos = latencyNanos;
+        this.lat = lat;
+        this.lon = lon;
+        this.bearing = bearing;
+        this.boxes = boxes;
+        this.classifierId = classifierId;
+        this.candidates = candidates;
+        this.image = image;
+    }
+
+    /**
+     * Size of this record once encoded.
+     */
+    public int size() {
+        return FIXED_BYTES + boxes.size() * BOX_BYTES
+                + (classifierId != null ? classifierId.getBytes(StandardCharsets.UTF_8).length : 0)
+                + (candidates != null ? candidates.size() * BUILDING_BYTES : 0)
+                + (image != null ? image.length : 0);
+    }
+
+    /**
+     * This record without its frame and candidates, which are only needed to replay it.
+     */
+    public ResultRecord withoutImage() {
+        return new ResultRecord(timeMillis, latencyNanos, lat, lon, bearing, boxes, classifierId, null, null);
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public double getBearing() {
+        return bearing;
+    }
+
+    public List<Box> getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * @return the id of the classifier that produced the boxes, or null if unknown
+     */
+    public String getClassifierId() {
+        return classifierId;
+    }
+
+    /**
+     * @return the buildings the boxes were matched against, or null if they were not kept
+     */
+    public List<Building> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @return the encoded frame, or null if it was not kept
+     */
+    public byte[] getImage() {
+        return image;
+    }
+
+    public byte[] encode() {
+        ByteBuffer out = ByteBuffer.allocate(size()).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(VERSION).putLong(timeMillis).putLong(latencyNanos).putDouble(lat).putDouble(lon).putDouble(bearing);
+        out.putInt(boxes.size());
+        for (Box box : boxes) {
+            out.putInt(box.getTopLeft().getX()).putInt(box.getTopLeft().getY())
+                    .putInt(box.getBottomRight().getX()).putInt(box.getBottomRight().getY());
+            putBuilding(out, box.getBuilding());
+        }
+        if (classifierId == null) {
+            out.putInt(-1);
+        } else {
+            byte[] id = classifierId.getBytes(StandardCharsets.UTF_8);
+            out.putInt(id.length).put(id);
+        }
+        if (candidates == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(candidates.size());
+            for (Building building : candidates) {
+                putBuilding(out, building);
+            }
+        }
+        if (image == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(image.length).put(image);
+        }
+        return out.array();
+    }
+
+    public static ResultRecord decode(ByteBuffer payload) {
+        ByteBuffer in = payload.slice().order(ByteOrder.LITTLE_ENDIAN);
+        byte version = in.get();
+        if (version != VERSION && version != VERSION_1) {
+            throw new IllegalArgumentException("Unknown result record version " + version);
+        }
+        long timeMillis = in.getLong();
+        long latencyNanos = in.getLong();
+        double lat = in.getDouble();
+        double lon = in.getDouble();
+        double bearing = in.getDouble();
+        int count = in.getInt();
+        List<Box> boxes = count == 0 ? Collections.emptyList() : new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Point topLeft = new Point(in.getInt(), in.getInt());
+            Point bottomRight = new Point(in.getInt(), in.getInt());
+            boxes.add(new Box(topLeft, bottomRight, getBuilding(in)));
+        }
+        String classifierId = null;
+        List<Building> candidates = null;
+        if (version != VERSION_1) {
+            int idBytes = in.getInt();
+            if (idBytes >= 0) {
+                byte[] id = new byte[idBytes];
+                in.get(id);
+                classifierId = new String(id, StandardCharsets.UTF_8);
+            }
+            int candidateCount = in.getInt();
+            if (candidateCount >= 0) {
+                candidates = new ArrayList<>(candidateCount);
+                for (int i = 0; i < candidateCount; i++) {
+                    candidates.add(getBuilding(in));
+                }
+            }
+        }
+        int imageBytes = in.getInt();
+        byte[] image = null;
+        if (imageBytes >= 0) {
+            image = new byte[imageBytes];
+            in.get(image);
+        }
+        return new ResultRecord(timeMillis, latencyNanos, lat, lon, bearing, boxes, classifierId, candidates, image);
+    }
+
+    private static void putBuilding(ByteBuffer out, Building building) {
+        out.putDouble(building.getLatitute()).putDouble(building.getLongitude()).putInt(building.getOccupancy());
+    }
+
+    private static Building getBuilding(ByteBuffer in) {
+        Building building = new Building();
+        building.setLatitute(in.getDouble());
+        building.setLongitude(in.getDouble());
+        building.setOccupancy(in.getInt());
+        return building;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultRecord{" +
+                "timeMillis=" + timeMillis +
+                ", latencyNanos=" + latencyNanos +
+                ", lat=" + lat +
+                ", lon=" + lon +
+                ", bearing=" + bearing +
+                ", boxes=" + boxes +
+                ", classifierId=" + classifierId +
+                ", candidates=" + candidates +
+                ", image=" + (image != null ? image.length + " bytes" : "none") +
+                '}';
+    }
+}
@@ -0,0 +1,130 @@
+package journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of opaque records in a directory of memory-mapped segment files, named by sequence
+ * number so they sort in write order:
+ * <pre>
+ * header  int64 magic "OCPCRLOG", int32 version, int32 reserved
+ * record  int32 length, int32 crc32 of payload, payload
+ * </pre>
+ * A segment is created at full size, zero-filled, and a record's length is stored after its payload,
+ * so a zero length marks where the segment ends, even after a crash halfway through a write. A record
+ * that does not fit rolls to a new segment, and the oldest segments are deleted beyond maxSegments.
+ * <p>
+ * Not thread-safe; the result log has a single writer.
+ */
+public class SegmentLog implements Closeable {
+    static final long MAGIC = 0x4f435043_524c4f47L;
+    static final int VERSION = 1;
+    static final int HEADER = 16;
+    static final int RECORD_HEADER = 8;
+    static final String SUFFIX = ".seg";
+
+    private final File dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Deque<File> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private long sequence;
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Appends after any segments already in dir, always starting a new one.
+     *
+     * @param maxSegments segments kept on disk, or 0 to keep all of them
+     */
+    public SegmentLog(File dir, int segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes <= HEADER + RECORD_HEADER) {
+            throw new IllegalArgumentException("Segment too small: " + segmentBytes);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create log directory " + dir);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        for (File segment : SegmentReader.segments(dir)) {
+            segments.add(segment);
+            sequence = Math.max(sequence, SegmentReader.sequence(segment) + 1);
+        }
+    }
+
+    public void append(byte[] payload) throws IOException {
+        int size = RECORD_HEADER + payload.length;
+        if (buffer == null || buffer.remaining() < size) {
+            roll(size);
+        }
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        int position = buffer.position();
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.position(position + RECORD_HEADER);
+        buffer.put(payload);
+        //Last, so a reader never sees a length without the payload behind it
+        buffer.putInt(position, payload.length);
+    }
+
+    /**
+     * Flushes what was appended to the current segment to disk.
+     */
+    public void force() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    public int getSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+
+    private void roll(int size) throws IOException {
+        closeSegment();
+        File segment = new File(dir, String.format("%020d", sequence++) + SUFFIX);
+        //A record larger than a segment gets a segment of its own
+        long length = Math.max(segmentBytes, (long) HEADER + size);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Record of " + size + " bytes does not fit a segment");
+        }
+        file = new RandomAccessFile(segment, "rw");
+        file.setLength(length);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.position(HEADER);
+        segments.add(segment);
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            File oldest = segments.removeFirst();
+            if (!oldest.delete()) {
+                throw new IOException("Unable to delete log segment " + oldest);
+            }
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+}
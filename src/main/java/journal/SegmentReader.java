@@ -0,0 +1,140 @@
+package journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the records of a SegmentLog directory in write order. Each segment is read up to its first
+ * zero length, or up to a record whose checksum does not match, which is where a crash cut it short.
+ * Returned buffers are read-only views of the mapped segment.
+ */
+public class SegmentReader implements Iterator<ByteBuffer>, Closeable {
+    private final File[] files;
+    private final CRC32 crc = new CRC32();
+    private int index;
+    private MappedByteBuffer segment;
+    private ByteBuffer next;
+    private long corrupt;
+
+    public SegmentReader(File dir) {
+        this.files = segments(dir);
+    }
+
+    /**
+     * Segment files in dir, oldest first.
+     */
+    static File[] segments(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SegmentLog.SUFFIX) && sequence(name) >= 0);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(sequence(a), sequence(b)));
+        return files;
+    }
+
+    static long sequence(File segment) {
+        return sequence(segment.getName());
+    }
+
+    private static long sequence(String name) {
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SegmentLog.SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return records skipped because their checksum did not match
+     */
+    public long getCorrupt() {
+        return corrupt;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null) {
+                if (segment != null) {
+                    next = read();
+                    if (next != null) {
+                        break;
+                    }
+                }
+                if (index == files.length) {
+                    segment = null;
+                    return false;
+                }
+                segment = open(files[index++]);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public ByteBuffer next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ByteBuffer record = next;
+        next = null;
+        return record;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+        next = null;
+        index = files.length;
+    }
+
+    private ByteBuffer read() {
+        int position = segment.position();
+        if (segment.remaining() < SegmentLog.RECORD_HEADER) {
+            segment = null;
+            return null;
+        }
+        int length = segment.getInt(position);
+        if (length <= 0 || length > segment.remaining() - SegmentLog.RECORD_HEADER) {
+            segment = null;
+            return null;
+        }
+        ByteBuffer payload = segment.duplicate();
+        payload.position(position + SegmentLog.RECORD_HEADER).limit(position + SegmentLog.RECORD_HEADER + length);
+        payload = payload.slice();
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != segment.getInt(position + 4)) {
+            //Torn write; nothing after it in this segment can be trusted
+            corrupt++;
+            segment = null;
+            return null;
+        }
+        segment.position(position + SegmentLog.RECORD_HEADER + length);
+        return payload.asReadOnlyBuffer();
+    }
+
+    private static MappedByteBuffer open(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            if (buffer.limit() < SegmentLog.HEADER || buffer.getLong(0) != SegmentLog.MAGIC
+                    || buffer.getInt(8) != SegmentLog.VERSION) {
+                throw new IOException("Not a result log segment: " + file);
+            }
+            buffer.position(SegmentLog.HEADER);
+            return buffer;
+        }
+    }
+}
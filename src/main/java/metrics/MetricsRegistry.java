@@ -0,0 +1,88 @@
+package metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, gauges and histograms, exposed in the Prometheus text format. Histograms are
+ * written as summaries in seconds with a fixed set of quantiles.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+    private final Map<String, String> help = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public Counter counter(String name, String description) {
+        return register(name, description, new Counter(), Counter.class);
+    }
+
+    public Histogram histogram(String name, String description) {
+        return register(name, description, new Histogram(), Histogram.class);
+    }
+
+    /**
+     * Registers a gauge read at scrape time. Registering a name again replaces the previous supplier.
+     */
+    public void gauge(String name, String description, DoubleSupplier value) {
+        help.put(name, description);
+        metrics.put(name, value);
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        try {
+            write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    public void write(Appendable out) throws IOException {
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(help.get(name)).append('\n');
+            if (metric instanceof Counter) {
+                out.append("# TYPE ").append(name).append(" counter\n");
+                out.append(name).append(' ').append(Long.toString(((Counter) metric).get())).append('\n');
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                out.append("# TYPE ").append(name).append(" summary\n");
+                for (double q : QUANTILES) {
+                    out.append(name).append("{quantile=\"").append(Double.toString(q)).append("\"} ")
+                            .append(Double.toString(seconds(histogram.quantile(q)))).append('\n');
+                }
+                out.append(name).append("_sum ").append(Double.toString(seconds(histogram.getSum()))).append('\n');
+                out.append(name).append("_count ").append(Long.toString(histogram.getCount())).append('\n');
+            } else {
+                out.append("# TYPE ").append(name).append(" gauge\n");
+                out.append(name).append(' ').append(Double.toString(((DoubleSupplier) metric).getAsDouble())).append('\n');
+            }
+        }
+    }
+
+    private <T> T register(String name, String description, T fresh, Class<T> type) {
+        help.putIfAbsent(name, description);
+        Object existing = metrics.putIfAbsent(name, fresh);
+        if (existing == null) {
+            return fresh;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException(name + " is already registered as a different metric type");
+        }
+        return type.cast(existing);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
@@ -1,5 +1,7 @@
 package model;
 
+import java.util.Objects;
+
 public class Box {
     private Point topLeft;
     private Point bottomRight;
@@ -37,4 +39,28 @@ public class Box {
     public void setBuilding(Building building) {
         this.building = building;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Box box = (Box) o;
+        return Objects.equals(topLeft, box.topLeft) &&
+                Objects.equals(bottomRight, box.bottomRight) &&
+                Objects.equals(building, box.building);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(topLeft, bottomRight, building);
+    }
+
+    @Override
+    public String toString() {
+        return "Box{" +
+                "topLeft=" + topLeft +
+                ", bottomRight=" + bottomRight +
+                ", building=" + building +
+                '}';
+    }
 }
@@ -1,5 +1,7 @@
 package model;
 
+import java.util.Objects;
+
 public class Building {
     private double latitute;
     private double longitude;
@@ -37,4 +39,19 @@ public class Building {
     public void setOccupancy(int occupancy) {
         this.occupancy = occupancy;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Building building = (Building) o;
+        return Double.compare(building.latitute, latitute) == 0 &&
+                Double.compare(building.longitude, longitude) == 0 &&
+                occupancy == building.occupancy;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(latitute, longitude, occupancy);
+    }
 }
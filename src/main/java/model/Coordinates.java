@@ -1,5 +1,7 @@
 package model;
 
+import java.util.Objects;
+
 public class Coordinates {
 
     private Point topLeft;
@@ -37,4 +39,18 @@ public class Coordinates {
                 ", bottomRight=" + bottomRight +
                 '}';
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Coordinates that = (Coordinates) o;
+        return Objects.equals(topLeft, that.topLeft) &&
+                Objects.equals(bottomRight, that.bottomRight);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(topLeft, bottomRight);
+    }
 }
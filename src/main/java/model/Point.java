@@ -1,5 +1,7 @@
 package model;
 
+import java.util.Objects;
+
 public class Point {
     int x;
     int y;
@@ -35,4 +37,18 @@ public class Point {
                 ", y=" + y +
                 '}';
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Point point = (Point) o;
+        return x == point.x &&
+                y == point.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y);
+    }
 }
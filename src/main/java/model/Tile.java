@@ -0,0 +1,77 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+public class Tile {
+    private final int row;
+    private final int col;
+    private final int span;
+    private final byte[] data;
+    private final int length;
+    private Runnable onRelease;
+
+    public Tile(int row, int col, byte[] data, int length) {
+        this(row, col, data, length, null);
+    }
+
+    public Tile(int row, int col, byte[] data, int length, Runnable onRelease) {
+        this(row, col, 1, data, length, onRelease);
+    }
+
+    /**
+     * @param span cells per side the tile covers, starting at row, col; 1 except for overlapping windows
+     */
+    public Tile(int row, int col, int span, byte[] data, int length, Runnable onRelease) {
+        this.row = row;
+        this.col = col;
+        this.span = span;
+        this.data = data;
+        this.length = length;
+        this.onRelease = onRelease;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    public int getSpan() {
+        return span;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public InputStream open() {
+        return new ByteArrayInputStream(data, 0, length);
+    }
+
+    /**
+     * Hands the backing buffer back to its pool. The tile must not be read afterwards.
+     */
+    public synchronized void release() {
+        if (onRelease != null) {
+            onRelease.run();
+            onRelease = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Tile{" +
+                "row=" + row +
+                ", col=" + col +
+                ", span=" + span +
+                ", length=" + length +
+                '}';
+    }
+}
@@ -0,0 +1,117 @@
+package remote;
+
+/**
+ * Count-based circuit breaker. It opens once at least failureRatio of the last windowSize calls failed
+ * (and at least minCalls were seen), rejects calls while open, and after openMillis lets a single
+ * probe through: success closes it again, failure re-opens it.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final boolean[] window;
+    private final int minCalls;
+    private final double failureRatio;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+    private int next;
+    private int calls;
+    private int failures;
+
+    public CircuitBreaker(int windowSize, int minCalls, double failureRatio, long openMillis) {
+        this.window = new boolean[windowSize];
+        this.minCalls = minCalls;
+        this.failureRatio = failureRatio;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return whether a call may go ahead now. Every allowed call must be followed by onSuccess,
+     * onFailure or onIgnored.
+     */
+    public synchronized boolean allow() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                return false;
+            }
+            probing = true;
+        }
+        return state != State.OPEN;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+        } else {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (calls >= minCalls && failures >= failureRatio * calls) {
+            open();
+        }
+    }
+
+    /**
+     * The allowed call never reached the remote side, so it says nothing about its health.
+     */
+    public synchronized void onIgnored() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        //Report an expired open state as half-open even before the next call looks at it
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (calls == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        probing = false;
+        reset();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probing = false;
+        reset();
+    }
+
+    private void reset() {
+        next = 0;
+        calls = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,196 @@
+package remote;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Calls one remote dependency on its own threads, so a slow upstream ties up at most maxConcurrent
+ * threads of its own instead of the request threads:
+ * <ul>
+ * <li>bulkhead: at most maxConcurrent calls run at once, and callers over the limit fail immediately</li>
+ * <li>timeout: callers wait at most timeoutMillis; an abandoned call keeps its permit until it really
+ * ends, so the limit holds even when the client library ignores interrupts</li>
+ * <li>circuit breaker: calls fail fast while the dependency is failing</li>
+ * <li>hedging: if the first attempt has not answered after the larger of hedgeMillis and the observed
+ * p95, a second identical attempt is started and the first answer wins. Only for idempotent calls;
+ * 0 disables it.</li>
+ * </ul>
+ * Failures surface as RemoteUnavailableException. Metrics are registered as ocpc_remote_&lt;name&gt;_*.
+ */
+public class RemoteClient {
+    private static final int HEDGE_MIN_SAMPLES = 20;
+
+    private final String name;
+    private final Semaphore bulkhead;
+    private final long timeoutMillis;
+    private final long hedgeMillis;
+    private final CircuitBreaker breaker;
+    private final ExecutorService pool;
+
+    private final Histogram latency;
+    private final Counter calls;
+    private final Counter failures;
+    private final Counter rejected;
+    private final Counter timeouts;
+    private final Counter hedges;
+
+    public RemoteClient(String name, int maxConcurrent, long timeoutMillis, long hedgeMillis, CircuitBreaker breaker) {
+        this.name = name;
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.timeoutMillis = timeoutMillis;
+        this.hedgeMillis = hedgeMillis;
+        this.breaker = breaker;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "remote-" + name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        MetricsRegistry metrics = MetricsRegistry.global();
+        String prefix = "ocpc_remote_" + name + "_";
+        latency = metrics.histogram(prefix + "seconds", "Successful " + name + " call time per attempt");
+        calls = metrics.counter(prefix + "calls_total", name + " calls made");
+        failures = metrics.counter(prefix + "failures_total", name + " calls that failed or timed out");
+        rejected = metrics.counter(prefix + "rejected_total", name + " calls refused by the breaker or bulkhead");
+        timeouts = metrics.counter(prefix + "timeouts_total", name + " calls abandoned after the timeout");
+        hedges = metrics.counter(prefix + "hedges_total", name + " hedged second attempts");
+        metrics.gauge(prefix + "breaker_state", name + " circuit breaker: 0 closed, 1 half-open, 2 open",
+                () -> breaker.getState().ordinal());
+        metrics.gauge(prefix + "in_flight", name + " calls running", () -> maxConcurrent - bulkhead.availablePermits());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CircuitBreaker.State getState() {
+        return breaker.getState();
+    }
+
+    public <T> T call(Supplier<T> action) {
+        if (!breaker.allow()) {
+            rejected.increment();
+            throw new RemoteUnavailableException(name + " is unavailable (circuit open)");
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger();
+        List<Future<?>> attempts = new ArrayList<>(2);
+        if (!attempt(action, result, outstanding, attempts)) {
+            breaker.onIgnored();
+            rejected.increment();
+            throw new RemoteUnavailableException(name + " is at its concurrency limit");
+        }
+        calls.increment();
+        long start = System.nanoTime();
+        try {
+            T value;
+            long hedgeAfter = hedgeDelay();
+            if (hedgeAfter > 0 && hedgeAfter < timeoutMillis) {
+                try {
+                    value = result.get(hedgeAfter, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (attempt(action, result, outstanding, attempts)) {
+                        hedges.increment();
+                    }
+                    long left = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    value = result.get(Math.max(0, left), TimeUnit.MILLISECONDS);
+                }
+            } else {
+                value = result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            breaker.onSuccess();
+            return value;
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            failures.increment();
+            breaker.onFailure();
+            throw new RemoteUnavailableException(name + " did not answer within " + timeoutMillis + "ms");
+        } catch (ExecutionException e) {
+            failures.increment();
+            breaker.onFailure();
+            throw new RemoteUnavailableException(name + " failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            breaker.onIgnored();
+            throw new RemoteUnavailableException("Interrupted waiting for " + name);
+        } finally {
+            synchronized (attempts) {
+                attempts.forEach(attempt -> attempt.cancel(true));
+            }
+        }
+    }
+
+    private <T> boolean attempt(Supplier<T> action, CompletableFuture<T> result, AtomicInteger outstanding,
+                                List<Future<?>> attempts) {
+        if (!bulkhead.tryAcquire()) {
+            return false;
+        }
+        outstanding.incrementAndGet();
+        //Whoever flips started owns the permit: the attempt if it runs, done() if it was cancelled first
+        AtomicBoolean started = new AtomicBoolean();
+        FutureTask<Void> future = new FutureTask<Void>(() -> {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+            long start = System.nanoTime();
+            try {
+                T value = action.get();
+                latency.recordSince(start);
+                result.complete(value);
+            } catch (Throwable t) {
+                //With a hedge still running, its answer may yet arrive
+                if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(t);
+                }
+            } finally {
+                bulkhead.release();
+            }
+            return null;
+        }) {
+            @Override
+            protected void done() {
+                if (started.compareAndSet(false, true)) {
+                    bulkhead.release();
+                }
+            }
+        };
+        synchronized (attempts) {
+            attempts.add(future);
+        }
+        try {
+            pool.execute(future);
+        } catch (RuntimeException e) {
+            future.cancel(false);
+            outstanding.decrementAndGet();
+            throw e;
+        }
+        return true;
+    }
+
+    private long hedgeDelay() {
+        if (hedgeMillis <= 0) {
+            return 0;
+        }
+        if (latency.getCount() < HEDGE_MIN_SAMPLES) {
+            return hedgeMillis;
+        }
+        return Math.max(hedgeMillis, TimeUnit.NANOSECONDS.toMillis(latency.quantile(0.95)));
+    }
+}
@@ -0,0 +1,15 @@
+package remote;
+
+/**
+ * A remote dependency could not answer: its circuit is open, its concurrency limit is reached, or the
+ * call failed or timed out.
+ */
+public class RemoteUnavailableException extends RuntimeException {
+    public RemoteUnavailableException(String message) {
+        super(message);
+    }
+
+    public RemoteUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
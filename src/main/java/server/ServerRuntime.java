@@ -0,0 +1,168 @@
+package server;
+
+import config.Config;
+import metrics.MetricsRegistry;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import spark.embeddedserver.jetty.JettyServerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The embedded Jetty server Spark runs on: port, request threads, connection limits, readiness, and a
+ * graceful drain on shutdown. Request threads are either a bounded platform pool, whose full queue
+ * rejects new connections instead of letting them pile up, or one virtual thread per task on JDK 21+.
+ * <p>
+ * Must be installed before the first route is defined, since that is when Spark starts the server.
+ */
+public class ServerRuntime {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerRuntime.class);
+
+    public enum Status {
+        STARTING, READY, DRAINING
+    }
+
+    private final int port;
+    private final boolean virtual;
+    private final int maxThreads;
+    private final int minThreads;
+    private final int threadIdleMillis;
+    private final int queue;
+    private final long connectionIdleMillis;
+    private final int acceptQueue;
+    private final long drainDelayMillis;
+    private final long drainMillis;
+
+    private volatile Server server;
+    private volatile StatisticsHandler stats;
+    private volatile Status status = Status.STARTING;
+    private String threadMode;
+
+    public ServerRuntime(Config config) {
+        this.port = config.getInt("ocpc.server.port", 4567);
+        this.virtual = "virtual".equalsIgnoreCase(config.getString("ocpc.server.threads", "platform"));
+        this.maxThreads = config.getInt("ocpc.server.maxThreads", 200);
+        this.minThreads = config.getInt("ocpc.server.minThreads", 8);
+        this.threadIdleMillis = config.getInt("ocpc.server.threadIdleMillis", 60000);
+        this.queue = config.getInt("ocpc.server.queue", 1024);
+        this.connectionIdleMillis = config.getLong("ocpc.server.idleTimeoutMillis", 30000);
+        this.acceptQueue = config.getInt("ocpc.server.acceptQueue", 1024);
+        this.drainDelayMillis = config.getLong("ocpc.server.drainDelayMillis", 0);
+        this.drainMillis = config.getLong("ocpc.server.drainMillis", 30000);
+    }
+
+    public void install() {
+        ThreadPool pool = virtual ? VirtualThreadPool.create() : null;
+        if (pool != null) {
+            threadMode = "virtual";
+        } else {
+            if (virtual) {
+                LOG.warn("Virtual threads need JDK 21+, running on {}; using platform threads",
+                        System.getProperty("java.version"));
+            }
+            QueuedThreadPool platform = new QueuedThreadPool(maxThreads, minThreads, threadIdleMillis,
+                    new ArrayBlockingQueue<>(queue));
+            platform.setName("ocpc-http");
+            MetricsRegistry.global().gauge("ocpc_http_threads_busy", "Request threads running a task", platform::getBusyThreads);
+            MetricsRegistry.global().gauge("ocpc_http_queued", "Tasks waiting for a request thread", platform::getQueueSize);
+            pool = platform;
+            threadMode = "platform";
+        }
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                new EmbeddedJettyFactory(new TunedServerFactory()).withThreadPool(pool));
+        Spark.port(port);
+        MetricsRegistry.global().gauge("ocpc_http_requests_active", "Requests being handled", this::getInFlight);
+    }
+
+    public void ready() {
+        status = Status.READY;
+        double startup = ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+        MetricsRegistry.global().gauge("ocpc_startup_seconds", "Time from JVM start to ready", () -> startup);
+        LOG.info("Ready on port {} with {} request threads after {}s", Spark.port(), threadMode, startup);
+    }
+
+    /**
+     * Fails readiness, waits drainDelayMillis for load balancers to notice, then stops accepting
+     * connections and waits up to drainMillis for in-flight requests to finish.
+     */
+    public void drain() {
+        status = Status.DRAINING;
+        LOG.info("Draining {} in-flight requests", getInFlight());
+        try {
+            TimeUnit.MILLISECONDS.sleep(drainDelayMillis);
+            if (server != null) {
+                server.stop();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.warn("Server did not stop cleanly", e);
+        }
+        LOG.info("Drained, {} requests still in flight", getInFlight());
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getThreadMode() {
+        return threadMode;
+    }
+
+    public long getDrainMillis() {
+        return drainMillis;
+    }
+
+    public int getInFlight() {
+        StatisticsHandler handler = stats;
+        return handler != null ? handler.getRequestsActive() : 0;
+    }
+
+    //Spark builds the server through this factory and then sets its connectors and handler
+    private class TunedServerFactory implements JettyServerFactory {
+        @Override
+        public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+            return create(new QueuedThreadPool(maxThreads, minThreads, threadTimeoutMillis));
+        }
+
+        @Override
+        public Server create(ThreadPool threadPool) {
+            Server tuned = new Server(threadPool) {
+                @Override
+                public void setConnectors(Connector[] connectors) {
+                    for (Connector connector : connectors) {
+                        if (connector instanceof ServerConnector) {
+                            ((ServerConnector) connector).setIdleTimeout(connectionIdleMillis);
+                            ((ServerConnector) connector).setAcceptQueueSize(acceptQueue);
+                        }
+                    }
+                    super.setConnectors(connectors);
+                }
+
+                //Counting requests is also what lets stop() wait for them
+                @Override
+                public void setHandler(Handler handler) {
+                    StatisticsHandler counting = new StatisticsHandler();
+                    counting.setHandler(handler);
+                    stats = counting;
+                    super.setHandler(counting);
+                }
+            };
+            tuned.setStopTimeout(drainMillis);
+            server = tuned;
+            return tuned;
+        }
+    }
+}
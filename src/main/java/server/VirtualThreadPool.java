@@ -0,0 +1,68 @@
+package server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool that runs every task on its own virtual thread. The executor is looked up
+ * reflectively so the server still builds for Java 8; create() returns null below JDK 21.
+ */
+final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private final ExecutorService executor;
+    private final AtomicInteger active = new AtomicInteger();
+
+    private VirtualThreadPool(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    static VirtualThreadPool create() {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new VirtualThreadPool((ExecutorService) executor);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getThreads() {
+        return active.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    @Override
+    protected void doStop() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,67 @@
+package session;
+
+import classifier.TileKey;
+import grid.OccupancyGrid;
+import model.Box;
+import model.Building;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a session remembers of its last processed frame.
+ */
+public class Frame {
+    private final double lat;
+    private final double lon;
+    private final double bearing;
+    private final Map<TileKey, Boolean> tiles;
+    private final OccupancyGrid grid;
+    private final List<Building> buildings;
+    private final List<Box> boxes;
+
+    public Frame(double lat, double lon, double bearing, Map<TileKey, Boolean> tiles, OccupancyGrid grid,
+                 List<Building> buildings, List<Box> boxes) {
+        this.lat = lat;
+        this.lon = lon;
+        this.bearing = bearing;
+        this.tiles = tiles;
+        this.grid = grid;
+        this.buildings = buildings;
+        this.boxes = boxes;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public double getBearing() {
+        return bearing;
+    }
+
+    /**
+     * Classification of every tile of the frame by content hash.
+     */
+    public Map<TileKey, Boolean> getTiles() {
+        return tiles;
+    }
+
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * The full building list the frame's boxes were matched against, nearest first.
+     */
+    public List<Building> getBuildings() {
+        return buildings;
+    }
+
+    public List<Box> getBoxes() {
+        return boxes;
+    }
+}
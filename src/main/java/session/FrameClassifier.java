@@ -0,0 +1,120 @@
+package session;
+
+import classifier.TileClassifier;
+import classifier.TileKey;
+import grid.OccupancyGrid;
+import model.Tile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Classifies the tiles of a session's new frame, reusing the previous frame's answers where it can.
+ * A tile whose bytes hash the same as a tile of the previous frame gets that tile's answer. Otherwise,
+ * if the camera only turned by a whole number of tiles, the tile at the same position in the shifted
+ * previous grid is reused. Turning moves the view along the grid's rows, since the display is the
+ * classified grid rotated clockwise. Everything else goes to the delegate. The answers are recorded for
+ * the next frame.
+ */
+public class FrameClassifier implements TileClassifier {
+    public static final int NO_SHIFT = Integer.MIN_VALUE;
+
+    private final TileClassifier delegate;
+    private final Frame previous;
+    private final int shiftRows;
+    private final Map<TileKey, Boolean> tiles = new ConcurrentHashMap<>();
+    private final OccupancyGrid grid;
+    private final AtomicInteger reused = new AtomicInteger();
+
+    /**
+     * @param previous  the session's last frame, or null
+     * @param shiftRows previous-frame row = this frame's row + shiftRows; NO_SHIFT if the views
+     *                  cannot be aligned
+     */
+    public FrameClassifier(TileClassifier delegate, Frame previous, int shiftRows, int rows, int cols) {
+        this.delegate = delegate;
+        this.previous = previous;
+        this.shiftRows = shiftRows;
+        this.grid = new OccupancyGrid(rows, cols);
+    }
+
+    @Override
+    public boolean[] containsBuildings(List<Tile> batch) {
+        boolean[] found = new boolean[batch.size()];
+        TileKey[] keys = new TileKey[batch.size()];
+        List<Tile> missed = new ArrayList<>();
+        List<Integer> missedIndex = new ArrayList<>();
+        String id = delegate.getId();
+        for (int i = 0; i < batch.size(); i++) {
+            Tile tile = batch.get(i);
+            keys[i] = TileKey.of(id, tile);
+            int known = fromPrevious(keys[i], tile.getRow(), tile.getCol());
+            if (known >= 0) {
+                found[i] = known == 1;
+                reused.incrementAndGet();
+            } else {
+                missed.add(tile);
+                missedIndex.add(i);
+            }
+        }
+        if (!missed.isEmpty()) {
+            boolean[] classified = delegate.containsBuildings(missed);
+            for (int j = 0; j < classified.length; j++) {
+                found[missedIndex.get(j)] = classified[j];
+            }
+        }
+        synchronized (grid) {
+            for (int i = 0; i < batch.size(); i++) {
+                grid.set(batch.get(i).getRow(), batch.get(i).getCol(), found[i]);
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            tiles.put(keys[i], found[i]);
+        }
+        return found;
+    }
+
+    private int fromPrevious(TileKey key, int row, int col) {
+        if (previous == null) {
+            return -1;
+        }
+        Boolean same = previous.getTiles().get(key);
+        if (same != null) {
+            return same ? 1 : 0;
+        }
+        if (shiftRows == NO_SHIFT) {
+            return -1;
+        }
+        OccupancyGrid before = previous.getGrid();
+        int from = row + shiftRows;
+        if (col >= before.getCols() || from < 0 || from >= before.getRows()) {
+            return -1;
+        }
+        return before.get(from, col) ? 1 : 0;
+    }
+
+    @Override
+    public int maxBatchSize() {
+        return delegate.maxBatchSize();
+    }
+
+    @Override
+    public String getId() {
+        return delegate.getId();
+    }
+
+    public Map<TileKey, Boolean> getTiles() {
+        return tiles;
+    }
+
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    public int getReused() {
+        return reused.get();
+    }
+}
@@ -0,0 +1,41 @@
+package session;
+
+/**
+ * One AR client's state between frames. Frames of a session are processed one at a time by
+ * synchronizing on the session.
+ */
+public class Session {
+    private final String id;
+    private volatile long lastAccess = System.currentTimeMillis();
+    private Frame last;
+    private int frames;
+
+    Session(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    public synchronized Frame getLast() {
+        return last;
+    }
+
+    public synchronized int getFrames() {
+        return frames;
+    }
+
+    public synchronized void setLast(Frame frame) {
+        last = frame;
+        frames++;
+    }
+}
@@ -0,0 +1,77 @@
+package session;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live AR sessions, at most maxSessions of them. The least recently used session is dropped to make
+ * room for a new one, and sessions idle for longer than idleMillis are swept.
+ */
+public class SessionStore {
+    private final Map<String, Session> sessions;
+    private final long idleMillis;
+    private final ScheduledExecutorService sweeper;
+    private final LongAdder evictions = new LongAdder();
+
+    public SessionStore(int maxSessions, long idleMillis) {
+        this.idleMillis = idleMillis;
+        this.sessions = new LinkedHashMap<String, Session>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                if (size() > maxSessions) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleMillis / 4);
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized Session getOrCreate(String id) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            session = new Session(id);
+            sessions.put(id, session);
+        }
+        session.touch();
+        return session;
+    }
+
+    public synchronized Session remove(String id) {
+        return sessions.remove(id);
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    synchronized void sweep() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        //Access order means the idle sessions are at the front
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext() && it.next().getLastAccess() < cutoff) {
+            it.remove();
+            evictions.increment();
+        }
+    }
+}
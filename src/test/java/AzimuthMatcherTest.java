@@ -0,0 +1,47 @@
+import geo.AzimuthMatcher;
+import model.Building;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AzimuthMatcherTest {
+    private static final double LAT = 40.68;
+    private static final double LON = -73.98;
+
+    private static Building at(double north, double east) {
+        Building b = new Building();
+        b.setLatitute(LAT + north);
+        b.setLongitude(LON + east / Math.cos(Math.toRadians(LAT)));
+        b.setOccupancy(1);
+        return b;
+    }
+
+    @Test
+    public void testMatchesByAngleNotListOrder() {
+        AzimuthMatcher matcher = new AzimuthMatcher(90, 10);
+        //Facing north: one building ahead-right, one ahead-left, one behind
+        List<Building> buildings = Arrays.asList(at(0.001, 0.0005), at(-0.001, 0), at(0.001, -0.0005));
+        double[] left = {matcher.pixelAngle(0, 1000), matcher.pixelAngle(600, 1000)};
+        double[] right = {matcher.pixelAngle(400, 1000), matcher.pixelAngle(1000, 1000)};
+        int[] matched = matcher.match(buildings, LAT, LON, 0, left, right, 2);
+        assertThat(Arrays.toString(matched), is("[2, 0]"));
+
+        //Turned to face north-east, the building that was ahead-right is now ahead-left
+        matched = matcher.match(buildings, LAT, LON, 45, left, right, 2);
+        assertThat(matched[0], is(0));
+    }
+
+    @Test
+    public void testNearestWinsAndFarBlobsStayUnmatched() {
+        AzimuthMatcher matcher = new AzimuthMatcher(60, 5);
+        List<Building> buildings = Arrays.asList(at(0.002, 0), at(0.001, 0));
+        double[] left = {-5, 25};
+        double[] right = {5, 29};
+        int[] matched = matcher.match(buildings, LAT, LON, 0, left, right, 2);
+        assertThat(Arrays.toString(matched), is("[1, -1]"));
+    }
+}
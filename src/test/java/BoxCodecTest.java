@@ -0,0 +1,67 @@
+import codec.BinaryBoxCodec;
+import codec.BoxCodec;
+import codec.BoxCodecs;
+import model.Box;
+import model.Building;
+import model.Point;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BoxCodecTest {
+    private static List<Box> boxes(int count) {
+        Random random = new Random(42);
+        List<Box> boxes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Building building = new Building();
+            building.setLatitute(40.7 + random.nextDouble() / 100);
+            building.setLongitude(-74.0 + random.nextDouble() / 100);
+            building.setOccupancy(random.nextInt(500));
+            int x = random.nextInt(8) * 500;
+            int y = random.nextInt(6) * 500;
+            boxes.add(new Box(new Point(x, y), new Point(x + 500, y + 1000), building));
+        }
+        return boxes;
+    }
+
+    private static byte[] encode(BoxCodec codec, List<Box> boxes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(boxes, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        List<Box> boxes = boxes(25);
+        byte[] bytes = encode(BoxCodecs.BINARY, boxes);
+        assertThat(bytes.length, is(BinaryBoxCodec.HEADER_BYTES + 25 * BinaryBoxCodec.RECORD_BYTES));
+        assertThat(BinaryBoxCodec.read(new ByteArrayInputStream(bytes)), is(boxes));
+    }
+
+    @Test
+    public void testNegotiation() {
+        assertThat(BoxCodecs.negotiate(null), sameInstance(BoxCodecs.JSON));
+        assertThat(BoxCodecs.negotiate("*/*"), sameInstance(BoxCodecs.JSON));
+        assertThat(BoxCodecs.negotiate("application/x-ocpc-boxes"), sameInstance(BoxCodecs.BINARY));
+        assertThat(BoxCodecs.negotiate("application/json;q=0.5, application/x-ocpc-boxes"), sameInstance(BoxCodecs.BINARY));
+        assertThat(BoxCodecs.negotiate("application/x-ocpc-boxes;q=0.2, application/json"), sameInstance(BoxCodecs.JSON));
+    }
+
+    @Test
+    public void testBinaryIsSmaller() throws IOException {
+        //Encoding speed is measured by SerializationBenchmark, not here
+        List<Box> boxes = boxes(20);
+        byte[] json = encode(BoxCodecs.JSON, boxes);
+        byte[] binary = encode(BoxCodecs.BINARY, boxes);
+        assertThat(binary.length * 3 < json.length, is(true));
+    }
+}
@@ -0,0 +1,115 @@
+import geo.BuildingIndex;
+import geo.LocalBuildingSource;
+import model.Building;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BuildingIndexTest {
+    private static final double CELL = 0.001;
+
+    @Test
+    public void testBoxesAcrossCellBoundariesMatchAScan() {
+        Random random = new Random(7);
+        int count = 2000;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        int[] occupancy = new int[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = 42.7 + random.nextDouble() * 0.02;
+            lons[i] = -73.7 + random.nextDouble() * 0.02;
+            occupancy[i] = i;
+        }
+        BuildingIndex index = BuildingIndex.build(lats, lons, occupancy, count, CELL);
+        assertThat(index.size(), is(count));
+        for (int q = 0; q < 200; q++) {
+            //Boxes from a fraction of a cell to several cells wide, anywhere on the grid
+            double south = 42.7 + random.nextDouble() * 0.02;
+            double west = -73.7 + random.nextDouble() * 0.02;
+            double north = south + random.nextDouble() * CELL * (q % 2 == 0 ? 0.5 : 4);
+            double east = west + random.nextDouble() * CELL * (q % 2 == 0 ? 0.5 : 4);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (lats[i] <= north && lats[i] >= south && lons[i] >= west && lons[i] <= east) {
+                    expected.add(i);
+                }
+            }
+            assertThat(occupancies(index.within(north, west, south, east)), is(expected));
+        }
+    }
+
+    @Test
+    public void testPointsOnCellEdges() {
+        //One building on each side of a cell boundary and one exactly on it
+        double[] lats = {42.7, 42.7009, 42.701, 42.7011, 42.703};
+        double[] lons = {-73.7, -73.7, -73.7, -73.7, -73.7};
+        int[] occupancy = {0, 1, 2, 3, 4};
+        BuildingIndex index = BuildingIndex.build(lats, lons, occupancy, lats.length, CELL);
+        assertThat(occupancies(index.within(42.70105, -73.71, 42.70085, -73.69)), is(list(1, 2)));
+        assertThat(occupancies(index.within(42.701, -73.7, 42.701, -73.7)), is(list(2)));
+        assertThat(occupancies(index.within(42.71, -73.71, 42.69, -73.69)), is(list(0, 1, 2, 3, 4)));
+        //Entirely outside the grid, on every side
+        assertThat(index.within(42.69, -73.71, 42.68, -73.69).size(), is(0));
+        assertThat(index.within(42.72, -73.71, 42.71, -73.69).size(), is(0));
+        assertThat(index.within(42.71, -73.72, 42.69, -73.71).size(), is(0));
+        assertThat(index.within(42.71, -73.69, 42.69, -73.68).size(), is(0));
+        assertThat(BuildingIndex.build(new double[0], new double[0], new int[0], 0, CELL)
+                .within(90, -180, -90, 180).size(), is(0));
+    }
+
+    @Test
+    public void testRefreshSwapsIndexAndNotifies() throws IOException {
+        File file = File.createTempFile("buildings", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "latitude,longitude,ex_dwelling_unit\n42.7,-73.7,5\n".getBytes(StandardCharsets.UTF_8));
+        AtomicInteger refreshed = new AtomicInteger();
+        LocalBuildingSource source = new LocalBuildingSource(file, CELL, 0, refreshed::incrementAndGet);
+        try {
+            assertThat(occupancies(source.within(42.71, -73.71, 42.69, -73.69)), is(list(5)));
+            source.refreshIfChanged();
+            assertThat(refreshed.get(), is(0));
+
+            Files.write(file.toPath(), "latitude,longitude,ex_dwelling_unit\n42.7,-73.7,9\n".getBytes(StandardCharsets.UTF_8));
+            file.setLastModified(file.lastModified() + 2000);
+            source.refreshIfChanged();
+            assertThat(refreshed.get(), is(1));
+            assertThat(occupancies(source.within(42.71, -73.71, 42.69, -73.69)), is(list(9)));
+
+            //A broken file keeps the previous index and cached lists
+            Files.write(file.toPath(), "no,header\n".getBytes(StandardCharsets.UTF_8));
+            file.setLastModified(file.lastModified() + 4000);
+            source.refreshIfChanged();
+            assertThat(refreshed.get(), is(1));
+            assertThat(occupancies(source.within(42.71, -73.71, 42.69, -73.69)), is(list(9)));
+        } finally {
+            source.close();
+        }
+    }
+
+    private static List<Integer> occupancies(List<Building> buildings) {
+        List<Integer> result = new ArrayList<>();
+        for (Building building : buildings) {
+            result.add(building.getOccupancy());
+        }
+        Collections.sort(result, Comparator.naturalOrder());
+        return result;
+    }
+
+    private static List<Integer> list(Integer... values) {
+        List<Integer> result = new ArrayList<>();
+        Collections.addAll(result, values);
+        return result;
+    }
+}
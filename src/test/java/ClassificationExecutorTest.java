@@ -0,0 +1,80 @@
+import api.ClassificationExecutor;
+import api.DeadlineExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ClassificationExecutorTest {
+    @Test
+    public void testDeadlineKeepsSlotUntilCallEnds() throws InterruptedException {
+        ClassificationExecutor executor = new ClassificationExecutor(4, 1, 200);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        try {
+            //Like a client library that ignores interrupts
+            boolean timedOut = false;
+            try {
+                executor.map(Collections.singletonList(0), i -> {
+                    started.countDown();
+                    while (release.getCount() > 0) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            //Keep going
+                        }
+                    }
+                    return i;
+                }, () -> false);
+            } catch (DeadlineExceededException e) {
+                timedOut = true;
+            }
+            assertThat(timedOut, is(true));
+            assertThat(started.await(1, TimeUnit.SECONDS), is(true));
+
+            //The abandoned call still holds the only slot
+            boolean waited = false;
+            try {
+                executor.map(Collections.singletonList(1), i -> ran.incrementAndGet(), () -> false);
+            } catch (DeadlineExceededException e) {
+                waited = true;
+            }
+            assertThat(waited, is(true));
+            assertThat(ran.get(), is(0));
+
+            release.countDown();
+            List<Integer> results = executor.map(Arrays.asList(1, 2, 3), i -> i * 2, () -> false);
+            assertThat(results, is(Arrays.asList(2, 4, 6)));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancelledBeforeStartGivesSlotBack() {
+        ClassificationExecutor executor = new ClassificationExecutor(1, 2, 30000);
+        try {
+            boolean cancelled = false;
+            try {
+                executor.map(Arrays.asList(1, 2, 3, 4), i -> {
+                    throw new IllegalStateException("failed " + i);
+                }, () -> false);
+            } catch (IllegalStateException e) {
+                cancelled = true;
+            }
+            assertThat(cancelled, is(true));
+            assertThat(executor.map(Arrays.asList(1, 2), i -> i, () -> false), is(Arrays.asList(1, 2)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import classifier.CachingTileClassifier;
+import classifier.TileClassifier;
+import cluster.ClusterNode;
+import cluster.HashRing;
+import cluster.HttpTransport;
+import cluster.LocalTransport;
+import cluster.PeerTileClassifier;
+import cluster.UnauthorizedException;
+import geo.LocationCache;
+import model.Building;
+import model.Tile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClusterTest {
+    private static final List<String> NODES = Arrays.asList("a", "b", "c");
+
+    @Test
+    public void testRingMovesOnlyTheNewNodesShare() {
+        HashRing three = new HashRing(NODES, 128);
+        HashRing four = new HashRing(Arrays.asList("a", "b", "c", "d"), 128);
+        Map<String, Integer> owned = new HashMap<>();
+        int moved = 0;
+        int keys = 100000;
+        for (long key = 0; key < keys; key++) {
+            String before = three.owner(key);
+            String after = four.owner(key);
+            owned.merge(before, 1, Integer::sum);
+            if (!before.equals(after)) {
+                assertThat(after, is("d"));
+                moved++;
+            }
+        }
+        for (String node : NODES) {
+            assertThat(Math.abs(owned.get(node) - keys / 3) < keys / 10, is(true));
+        }
+        assertThat(Math.abs(moved - keys / 4) < keys / 10, is(true));
+    }
+
+    @Test
+    public void testEachTileClassifiedOnceAcrossNodes() {
+        LocalTransport transport = new LocalTransport();
+        AtomicInteger classified = new AtomicInteger();
+        List<CachingTileClassifier> caches = new ArrayList<>();
+        for (String id : NODES) {
+            caches.add(node(id, transport, classified));
+        }
+        List<Tile> tiles = tiles(60);
+        for (CachingTileClassifier cache : caches) {
+            boolean[] found = cache.containsBuildings(tiles);
+            for (int i = 0; i < tiles.size(); i++) {
+                assertThat(found[i], is(i % 3 == 0));
+            }
+        }
+        assertThat(classified.get(), is(tiles.size()));
+        //Each answer is cached on its owner only, so three nodes hold one copy between them
+        int stored = 0;
+        for (CachingTileClassifier cache : caches) {
+            stored += cache.size();
+        }
+        assertThat(stored, is(tiles.size()));
+    }
+
+    @Test
+    public void testUnreachablePeerFallsBackToClassifier() {
+        LocalTransport transport = new LocalTransport();
+        AtomicInteger classified = new AtomicInteger();
+        CachingTileClassifier a = node("a", transport, classified);
+        node("b", transport, classified);
+        node("c", transport, classified);
+        List<Tile> tiles = tiles(30);
+        a.containsBuildings(tiles);
+        transport.unbind("b");
+        transport.unbind("c");
+        classified.set(0);
+        ClusterNode fresh = new ClusterNode("a", new HashRing(NODES, 128), transport);
+        CachingTileClassifier restarted = new CachingTileClassifier(new PeerTileClassifier(counting(classified), fresh),
+                1000, 60000, null, fresh::ownsTile);
+        boolean[] found = restarted.containsBuildings(tiles);
+        for (int i = 0; i < tiles.size(); i++) {
+            assertThat(found[i], is(i % 3 == 0));
+        }
+        assertThat(classified.get(), is(tiles.size()));
+        assertThat(fresh.getPeerFailures() > 0, is(true));
+    }
+
+    @Test
+    public void testBuildingsLoadedByCellOwner() {
+        LocalTransport transport = new LocalTransport();
+        AtomicInteger loads = new AtomicInteger();
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (String id : NODES) {
+            ClusterNode node = new ClusterNode(id, new HashRing(NODES, 128), transport);
+            LocationCache cache = new LocationCache(256, 60000, 20);
+            CachingTileClassifier tiles = new CachingTileClassifier(counting(new AtomicInteger()), 1000, 60000);
+            node.serve(tiles, cell -> cache.getOrLoad(cell, key -> {
+                loads.incrementAndGet();
+                Building building = new Building();
+                building.setLatitute(key);
+                building.setOccupancy(7);
+                return Collections.singletonList(building);
+            }));
+            nodes.add(node);
+        }
+        for (long cell = 0; cell < 20; cell++) {
+            for (ClusterNode node : nodes) {
+                if (node.owns(cell)) {
+                    continue;
+                }
+                List<Building> buildings = node.lookupBuildings(cell);
+                assertThat(buildings.size(), is(1));
+                assertThat(buildings.get(0).getLatitute(), is((double) cell));
+            }
+        }
+        assertThat(loads.get(), is(20));
+    }
+
+    @Test
+    public void testUnsignedMessagesRejected() throws Exception {
+        Map<String, String> urls = new HashMap<>();
+        for (String id : NODES) {
+            urls.put(id, "http://localhost:1");
+        }
+        HttpTransport transport = new HttpTransport(urls, 100, 100, "secret");
+        ClusterNode node = new ClusterNode("a", new HashRing(NODES, 128), transport);
+        CachingTileClassifier cache = new CachingTileClassifier(counting(new AtomicInteger()), 1000, 60000);
+        node.serve(cache, cell -> Collections.emptyList());
+        //TILE_PUT of one answer, as any client on the public port could send it
+        byte[] put = ByteBuffer.allocate(1 + 4 + 17).put((byte) 2).putInt(1).putLong(1).putLong(2).put((byte) 1).array();
+
+        assertThrows(UnauthorizedException.class, () -> transport.handle(put, null));
+        assertThrows(UnauthorizedException.class, () -> transport.handle(put, "not base64!"));
+        String forged = new HttpTransport(urls, 100, 100, "guessed").signature(put);
+        assertThrows(UnauthorizedException.class, () -> transport.handle(put, forged));
+        assertThat(cache.size(), is(0));
+
+        transport.handle(put, transport.signature(put));
+        assertThat(cache.size(), is(1));
+        assertThrows(IllegalArgumentException.class, () -> new HttpTransport(urls, 100, 100, null));
+    }
+
+    private static CachingTileClassifier node(String id, LocalTransport transport, AtomicInteger classified) {
+        ClusterNode node = new ClusterNode(id, new HashRing(NODES, 128), transport);
+        CachingTileClassifier cache = new CachingTileClassifier(new PeerTileClassifier(counting(classified), node),
+                1000, 60000, null, node::ownsTile);
+        node.serve(cache, cell -> Collections.emptyList());
+        return cache;
+    }
+
+    //Every third tile is a building
+    private static TileClassifier counting(AtomicInteger classified) {
+        return new TileClassifier() {
+            @Override
+            public boolean[] containsBuildings(List<Tile> tiles) {
+                classified.addAndGet(tiles.size());
+                boolean[] found = new boolean[tiles.size()];
+                for (int i = 0; i < found.length; i++) {
+                    found[i] = tiles.get(i).getData()[0] % 3 == 0;
+                }
+                return found;
+            }
+
+            @Override
+            public int maxBatchSize() {
+                return 20;
+            }
+
+            @Override
+            public String getId() {
+                return "counting";
+            }
+        };
+    }
+
+    private static List<Tile> tiles(int count) {
+        List<Tile> tiles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tiles.add(new Tile(0, i, new byte[]{(byte) i, 42}, 2, null));
+        }
+        return tiles;
+    }
+}
@@ -0,0 +1,92 @@
+import grid.BlobLabeler;
+import grid.Blobs;
+import grid.OccupancyGrid;
+import grid.StreamingBlobLabeler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GridTest {
+    private static OccupancyGrid grid(String... rows) {
+        OccupancyGrid grid = new OccupancyGrid(rows.length, rows[0].length());
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length(); x++) {
+                grid.set(y, x, rows[y].charAt(x) == 'T');
+            }
+        }
+        return grid;
+    }
+
+    @Test
+    public void testRotateIsAView() {
+        OccupancyGrid grid = grid("TF", "FF", "FT");
+        OccupancyGrid rotated = grid.rotateCW();
+        assertThat(rotated.getRows(), is(2));
+        assertThat(rotated.getCols(), is(3));
+        assertThat(rotated.toString(), is("F F T \nT F F \n"));
+        grid.set(1, 0, true);
+        assertThat(rotated.get(0, 1), is(true));
+    }
+
+    @Test
+    public void testLabelsMatchFloodFillOrder() {
+        Blobs blobs = BlobLabeler.label(grid(
+                "FFTF",
+                "TFTF",
+                "TFFF",
+                "TTTT"));
+        assertThat(blobs.getCount(), is(2));
+        List<List<Integer>> expected = new ArrayList<>();
+        expected.add(Arrays.asList(0, 0, 1, 0));
+        expected.add(Arrays.asList(2, 0, 1, 0));
+        expected.add(Arrays.asList(2, 0, 0, 0));
+        expected.add(Arrays.asList(2, 2, 2, 2));
+        assertThat(blobs.toLists(), is(expected));
+        assertThat(blobs.getMinX(1), is(0));
+        assertThat(blobs.getMinY(1), is(1));
+        assertThat(blobs.getMaxX(1), is(3));
+        assertThat(blobs.getMaxY(1), is(3));
+    }
+
+    @Test
+    public void testUShapeMergesIntoOneBlob() {
+        Blobs blobs = BlobLabeler.label(grid(
+                "TFT",
+                "TFT",
+                "TTT"));
+        assertThat(blobs.getCount(), is(1));
+        assertThat(blobs.label(0, 2), is(1));
+    }
+
+    @Test
+    public void testStreamingLabelsMatchRotatedGrid() {
+        Random random = new Random(42);
+        for (int n = 0; n < 200; n++) {
+            OccupancyGrid grid = new OccupancyGrid(1 + random.nextInt(12), 1 + random.nextInt(12));
+            for (int y = 0; y < grid.getRows(); y++) {
+                for (int x = 0; x < grid.getCols(); x++) {
+                    grid.set(y, x, random.nextInt(3) > 0);
+                }
+            }
+            Blobs expected = BlobLabeler.label(grid.rotateCW());
+            StreamingBlobLabeler streaming = new StreamingBlobLabeler(grid.getRows(), grid.getCols());
+            for (int y = 0; y < grid.getRows(); y++) {
+                streaming.add(grid, y);
+            }
+            streaming.finish();
+            assertThat(streaming.getCount(), is(expected.getCount()));
+            for (int i = 0; i < expected.getCount(); i++) {
+                assertThat(streaming.getMinX(i), is(expected.getMinX(i)));
+                assertThat(streaming.getMinY(i), is(expected.getMinY(i)));
+                assertThat(streaming.getMaxX(i), is(expected.getMaxX(i)));
+                assertThat(streaming.getMaxY(i), is(expected.getMaxY(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import api.Application;
+import classifier.LocalTileClassifier;
+import ingest.Upload;
+import ingest.UploadReader;
+import jobs.Job;
+import jobs.JobManager;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JobTest {
+    private static final UploadReader UPLOADS = new UploadReader(1 << 20, 1 << 20, 2, 4, null);
+
+    @Test
+    public void testUndecodableImageFailsJob() throws IOException, InterruptedException {
+        //Passes the magic byte check, but is not a JPEG
+        byte[] body = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 'n', 'o', 't', ' ', 'a', ' ', 'j', 'p', 'e', 'g'};
+        JobManager jobs = new JobManager(1, 4, 60000);
+        try {
+            Job job = Application.submitJob(jobs, new LocalTileClassifier(), upload(body), 42.73, -73.68, 0);
+            Job.Event last = lastEvent(job);
+            assertThat(job.getStatus(), is(Job.Status.FAILED));
+            assertThat(last.getType(), is(Job.ERROR_EVENT));
+            assertThat(job.getResult(), notNullValue());
+        } finally {
+            jobs.shutdown();
+        }
+    }
+
+    @Test
+    public void testBlankImageCompletesJob() throws IOException, InterruptedException {
+        BufferedImage image = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, 500, 500);
+        g.dispose();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        JobManager jobs = new JobManager(1, 4, 60000);
+        try {
+            Job job = Application.submitJob(jobs, new LocalTileClassifier(), upload(jpeg.toByteArray()), 42.73, -73.68, 0);
+            Job.Event last = lastEvent(job);
+            assertThat(job.getStatus(), is(Job.Status.DONE));
+            assertThat(last.getType(), is(Job.DONE_EVENT));
+            assertThat(job.getResult(), is("[]"));
+        } finally {
+            jobs.shutdown();
+        }
+    }
+
+    @Test
+    public void testErrorFailsJob() throws InterruptedException {
+        JobManager jobs = new JobManager(1, 4, 60000);
+        try {
+            Job job = jobs.submit(j -> {
+                throw new OutOfMemoryError("Frame too large to decode");
+            });
+            Job.Event last = lastEvent(job);
+            assertThat(job.getStatus(), is(Job.Status.FAILED));
+            assertThat(last.getType(), is(Job.ERROR_EVENT));
+            assertThat(job.getResult(), is("Frame too large to decode"));
+            //The pool replaces the worker the error killed
+            Job next = jobs.submit(j -> "[]");
+            lastEvent(next);
+            assertThat(next.getStatus(), is(Job.Status.DONE));
+        } finally {
+            jobs.shutdown();
+        }
+    }
+
+    private static Upload upload(byte[] body) throws IOException {
+        return UPLOADS.read("image/jpeg", body.length, new ByteArrayInputStream(body), "file");
+    }
+
+    private static Job.Event lastEvent(Job job) throws InterruptedException {
+        BlockingQueue<Job.Event> events = job.subscribe();
+        while (true) {
+            Job.Event event = events.poll(10, TimeUnit.SECONDS);
+            assertThat(event, notNullValue());
+            if (event.isTerminal()) {
+                return event;
+            }
+        }
+    }
+}
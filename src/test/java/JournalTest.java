@@ -0,0 +1,175 @@
+import journal.ResultLog;
+import journal.ResultRecord;
+import journal.RingBuffer;
+import journal.SegmentLog;
+import journal.SegmentReader;
+import model.Box;
+import model.Building;
+import model.Point;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JournalTest {
+    @Test
+    public void testRecordsSurviveSegmentRolling() throws IOException {
+        File dir = Files.createTempDirectory("ocpc-journal").toFile();
+        try (SegmentLog log = new SegmentLog(dir, 256, 0)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(record(i).encode());
+            }
+            assertThat(log.getSegments() > 1, is(true));
+        }
+        //A reopened log appends after what is there
+        try (SegmentLog log = new SegmentLog(dir, 256, 0)) {
+            log.append(record(20).encode());
+        }
+        List<ResultRecord> read = readAll(dir);
+        assertThat(read.size(), is(21));
+        for (int i = 0; i < read.size(); i++) {
+            assertThat(read.get(i).toString(), is(record(i).toString()));
+        }
+    }
+
+    @Test
+    public void testReaderStopsAtCorruptRecord() throws IOException {
+        File dir = Files.createTempDirectory("ocpc-journal").toFile();
+        try (SegmentLog log = new SegmentLog(dir, 4096, 0)) {
+            for (int i = 0; i < 3; i++) {
+                log.append(record(i).encode());
+            }
+        }
+        File segment = dir.listFiles()[0];
+        int second = 16 + 8 + record(0).encode().length;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(second + 8 + 3);
+            file.write(0x5a);
+        }
+        assertThat(readAll(dir).size(), is(1));
+    }
+
+    @Test
+    public void testRingBufferKeepsEveryProducersOrder() throws InterruptedException {
+        RingBuffer<long[]> ring = new RingBuffer<>(64);
+        assertThat(ring.poll() == null, is(true));
+        int producers = 4;
+        int each = 20000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < each; i++) {
+                    while (!ring.offer(new long[]{producer, i})) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * each) {
+            long[] element = ring.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            assertThat(element[1], is(next[(int) element[0]]++));
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(ring.size(), is(0));
+        assertThat(Arrays.equals(next, new long[]{each, each, each, each}), is(true));
+    }
+
+    @Test
+    public void testResultLogWritesInBackground() throws IOException {
+        File dir = Files.createTempDirectory("ocpc-journal").toFile();
+        ResultLog log = new ResultLog(new SegmentLog(dir, 1 << 16, 0), 8, 1 << 20, 10);
+        int appended = 0;
+        for (int i = 0; i < 100; i++) {
+            if (log.append(record(i))) {
+                appended++;
+            }
+        }
+        log.close();
+        assertThat(log.getWritten(), is((long) appended));
+        assertThat(log.getWritten() + log.getDropped(), is(100L));
+        assertThat(log.getPending(), is(0L));
+        assertThat(readAll(dir).size(), is(appended));
+    }
+
+    @Test
+    public void testVersionOneRecordsDecode() {
+        //int8 version, int64 time and latency, float64 lat, lon, bearing, one box, no image
+        ByteBuffer v1 = ByteBuffer.allocate(1 + 8 * 5 + 4 + 36 + 4).order(ByteOrder.LITTLE_ENDIAN);
+        v1.put((byte) 1).putLong(1000).putLong(5).putDouble(42.73).putDouble(-73.68).putDouble(90);
+        v1.putInt(1).putInt(1).putInt(2).putInt(3).putInt(4).putDouble(42.7).putDouble(-73.6).putInt(12);
+        v1.putInt(-1);
+        v1.flip();
+        ResultRecord record = ResultRecord.decode(v1);
+        assertThat(record.getBearing(), is(90.0));
+        assertThat(record.getBoxes().get(0).getBuilding().getOccupancy(), is(12));
+        assertThat(record.getClassifierId(), nullValue());
+        assertThat(record.getCandidates(), nullValue());
+        assertThat(record.getImage(), nullValue());
+    }
+
+    @Test
+    public void testRecordWithoutImageKeepsClassifier() {
+        ResultRecord record = record(4);
+        ResultRecord stripped = ResultRecord.decode(ByteBuffer.wrap(record.withoutImage().encode()));
+        assertThat(stripped.getClassifierId(), is("local@0.4"));
+        assertThat(stripped.getCandidates(), nullValue());
+        assertThat(stripped.getImage(), nullValue());
+        assertThat(stripped.getBoxes().size(), is(1));
+        assertThat(record.withoutImage().size() < record.size(), is(true));
+    }
+
+    private static ResultRecord record(int i) {
+        List<Box> boxes = new ArrayList<>();
+        for (int b = 0; b < i % 3; b++) {
+            Building building = new Building();
+            building.setLatitute(42.7 + b);
+            building.setLongitude(-73.6 - i);
+            building.setOccupancy(100 * i + b);
+            boxes.add(new Box(new Point(b, i), new Point(b + 10, i + 20), building));
+        }
+        byte[] image = i % 2 == 0 ? new byte[i] : null;
+        List<Building> candidates = null;
+        if (image != null) {
+            candidates = new ArrayList<>();
+            for (Box box : boxes) {
+                candidates.add(box.getBuilding());
+            }
+        }
+        return new ResultRecord(1000L * i, 5 * i, 42.73, -73.68, i, i % 3 == 0 ? Collections.emptyList() : boxes,
+                i % 5 == 0 ? null : "local@0." + i, candidates, image);
+    }
+
+    private static List<ResultRecord> readAll(File dir) {
+        List<ResultRecord> records = new ArrayList<>();
+        try (SegmentReader reader = new SegmentReader(dir)) {
+            while (reader.hasNext()) {
+                ByteBuffer payload = reader.next();
+                records.add(ResultRecord.decode(payload));
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,220 @@
+import api.Application;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Load harness: starts the server in-process with stubbed upstreams and has load.concurrency clients
+ * upload frames to /image as fast as they can, then prints throughput, latency percentiles and status
+ * codes. The classifier is the local one with ocpc.classifier.latencyMillis standing in for the Watson
+ * round trip, the tile cache is off so every tile pays it, and the frames are taken at the demo
+ * location so building lookups never leave the process.
+ * <p>
+ * Run it with -Docpc.loadtest=true as a test, or through main. Any ocpc.* setting can be passed as
+ * well, e.g. -Docpc.server.threads=virtual on JDK 21.
+ */
+public class LoadTest {
+    private static final String BOUNDARY = "ocpcloadtest";
+    //First response body seen for each failing status
+    private static final Map<Integer, String> ERRORS = new ConcurrentHashMap<>();
+
+    @Test
+    @EnabledIfSystemProperty(named = "ocpc.loadtest", matches = "true")
+    public void testConcurrentUploads() throws Exception {
+        Result result = run(Integer.getInteger("load.concurrency", 1000), Integer.getInteger("load.requests", 5000));
+        System.out.println(result);
+        assertThat(result.failed(), is(0L));
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(run(Integer.getInteger("load.concurrency", 1000), Integer.getInteger("load.requests", 5000)));
+        System.exit(0);
+    }
+
+    static Result run(int concurrency, int requests) throws Exception {
+        defaults("ocpc.classifier", "local");
+        defaults("ocpc.classifier.latencyMillis", "50");
+        defaults("ocpc.cache.entries", "0");
+        defaults("ocpc.server.port", "0");
+        System.setProperty("java.awt.headless", "true");
+        Application.main(new String[0]);
+        URL url = new URL("http://localhost:" + spark.Spark.port() + "/image?lat=42.73&lon=-73.68&bearing=0");
+
+        byte[][] bodies = new byte[Integer.getInteger("load.images", 16)][];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = multipart(frame(i));
+        }
+
+        //Warm the JIT and the pools before timing
+        for (int i = 0; i < Math.min(requests, 50); i++) {
+            upload(url, bodies[i % bodies.length]);
+        }
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        AtomicInteger next = new AtomicInteger();
+        long[] latencies = new long[requests];
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        long start = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            clients.execute(() -> {
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < requests) {
+                        long sent = System.nanoTime();
+                        int status = upload(url, bodies[i % bodies.length]);
+                        latencies[i] = System.nanoTime() - sent;
+                        statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        return new Result(concurrency, requests, elapsed, latencies, statuses);
+    }
+
+    private static void defaults(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static int upload(URL url, byte[] body) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setConnectTimeout(30000);
+            connection.setReadTimeout(120000);
+            connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            if (in != null) {
+                byte[] buf = new byte[8192];
+                int read;
+                while ((read = in.read(buf)) >= 0) {
+                    response.write(buf, 0, read);
+                }
+                in.close();
+            }
+            //Failures carry their own status; a 200 that is not a box list would hide one
+            if (status == 200 && !response.toString("UTF-8").startsWith("[")) {
+                status = -1;
+            }
+            if (status != 200) {
+                ERRORS.putIfAbsent(status, response.toString("UTF-8"));
+            }
+            return status;
+        } catch (IOException e) {
+            //Refused or reset connections are counted as status 0
+            ERRORS.putIfAbsent(0, e.toString());
+            return 0;
+        }
+    }
+
+    //A street-sized frame with a few hard-edged "facades", different per seed
+    private static byte[] frame(int seed) throws IOException {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(1500, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(135, 180, 230));
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        for (int i = 0; i < 6; i++) {
+            int x = random.nextInt(1200);
+            int y = random.nextInt(700);
+            g.setColor(new Color(random.nextInt(120), random.nextInt(120), random.nextInt(120)));
+            g.fillRect(x, y, 300, 300);
+            g.setColor(Color.WHITE);
+            for (int w = 0; w < 300; w += 30) {
+                g.fillRect(x + w + 5, y + 10, 12, 280);
+            }
+        }
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] multipart(byte[] jpeg) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"frame.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        body.write(jpeg);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        return body.toByteArray();
+    }
+
+    static class Result {
+        private final int concurrency;
+        private final int requests;
+        private final long elapsedNanos;
+        private final long[] latencies;
+        private final Map<Integer, LongAdder> statuses;
+
+        Result(int concurrency, int requests, long elapsedNanos, long[] latencies, Map<Integer, LongAdder> statuses) {
+            this.concurrency = concurrency;
+            this.requests = requests;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+            this.statuses = new TreeMap<>(statuses);
+        }
+
+        long failed() {
+            long failed = 0;
+            for (Map.Entry<Integer, LongAdder> entry : statuses.entrySet()) {
+                if (entry.getKey() != 200) {
+                    failed += entry.getValue().sum();
+                }
+            }
+            return failed;
+        }
+
+        private double millis(double quantile) {
+            return latencies[Math.min(latencies.length - 1, (int) (quantile * latencies.length))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d uploads from %d clients in %.1fs: %.1f req/s, p50 %.0fms, p99 %.0fms, max %.0fms, statuses %s%s",
+                    requests, concurrency, elapsedNanos / 1e9, requests / (elapsedNanos / 1e9),
+                    millis(0.5), millis(0.99), millis(1.0), statuses, ERRORS.isEmpty() ? "" : ", first errors " + ERRORS);
+        }
+    }
+}
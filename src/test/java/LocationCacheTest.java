@@ -0,0 +1,56 @@
+import geo.LocationCache;
+import model.Building;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LocationCacheTest {
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        LocationCache cache = new LocationCache(256, 60000, 20);
+        long key = cache.key(42.73, -73.68, 0);
+        int callers = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Building> loaded = Collections.singletonList(new Building());
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<List<Building>>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return cache.getOrLoad(key, k -> {
+                        loads.incrementAndGet();
+                        //Hold the load open until every caller has missed
+                        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+                        while (cache.getMisses() < callers && System.nanoTime() < deadline) {
+                            Thread.yield();
+                        }
+                        return loaded;
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<List<Building>> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS), sameInstance(loaded));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(loads.get(), is(1));
+        assertThat(cache.getMisses(), is((long) callers));
+        assertThat(cache.get(key), sameInstance(loaded));
+    }
+}
@@ -0,0 +1,109 @@
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MetricsTest {
+    @Test
+    public void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        assertThat(histogram.quantile(0.5), is(0L));
+        for (long i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+        //Negative durations count as zero
+        histogram.record(-5);
+        assertThat(histogram.getCount(), is(9L));
+        assertThat(histogram.getSum(), is(28L));
+        assertThat(histogram.quantile(0), is(0L));
+        assertThat(histogram.quantile(0.5), is(3L));
+        assertThat(histogram.quantile(1), is(7L));
+    }
+
+    @Test
+    public void testQuantilesWithinBucketError() {
+        Histogram histogram = new Histogram();
+        //1..1000ms, shuffled so order does not matter
+        List<Long> samples = new ArrayList<>();
+        for (long ms = 1; ms <= 1000; ms++) {
+            samples.add(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+        Collections.shuffle(samples, new Random(3));
+        for (long sample : samples) {
+            histogram.record(sample);
+        }
+        assertThat(histogram.getCount(), is(1000L));
+        assertThat(histogram.getSum(), is(TimeUnit.MILLISECONDS.toNanos(500500)));
+        //Eight sub-buckets per power of two, answered at the bucket midpoint: within 1/16 of the true value
+        for (double q : new double[]{0.001, 0.1, 0.5, 0.9, 0.99, 1}) {
+            double expected = TimeUnit.MILLISECONDS.toNanos((long) Math.ceil(q * 1000));
+            double error = Math.abs(histogram.quantile(q) - expected) / expected;
+            assertThat(q + " off by " + error, error <= 1.0 / 16, is(true));
+        }
+        assertThat(histogram.quantile(0.5) <= histogram.quantile(0.9), is(true));
+        assertThat(histogram.quantile(0.9) <= histogram.quantile(0.99), is(true));
+    }
+
+    @Test
+    public void testCounter() {
+        Counter counter = new Counter();
+        counter.increment();
+        counter.add(41);
+        assertThat(counter.get(), is(42L));
+    }
+
+    @Test
+    public void testScrapeFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter requests = registry.counter("ocpc_requests", "Requests received");
+        requests.add(3);
+        Histogram latency = registry.histogram("ocpc_latency_seconds", "Request latency");
+        latency.record(TimeUnit.MILLISECONDS.toNanos(250));
+        latency.record(TimeUnit.MILLISECONDS.toNanos(750));
+        registry.gauge("ocpc_open", "Open things", () -> 7);
+
+        List<String> lines = Arrays.asList(registry.scrape().split("\n"));
+        //Sorted by name, each with its help and type
+        assertThat(lines.subList(0, 2), is(Arrays.asList(
+                "# HELP ocpc_latency_seconds Request latency",
+                "# TYPE ocpc_latency_seconds summary")));
+        assertThat(lines.get(2).startsWith("ocpc_latency_seconds{quantile=\"0.5\"} "), is(true));
+        assertThat(lines.get(5).startsWith("ocpc_latency_seconds{quantile=\"0.999\"} "), is(true));
+        assertThat(lines.subList(6, lines.size()), is(Arrays.asList(
+                "ocpc_latency_seconds_sum 1.0",
+                "ocpc_latency_seconds_count 2",
+                "# HELP ocpc_open Open things",
+                "# TYPE ocpc_open gauge",
+                "ocpc_open 7.0",
+                "# HELP ocpc_requests Requests received",
+                "# TYPE ocpc_requests counter",
+                "ocpc_requests 3")));
+        double median = Double.parseDouble(lines.get(2).substring(lines.get(2).indexOf(' ') + 1));
+        assertThat(Math.abs(median - 0.25) <= 0.25 / 16, is(true));
+    }
+
+    @Test
+    public void testRegistrationIsIdempotent() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("ocpc_requests", "Requests received");
+        assertThat(registry.counter("ocpc_requests", "Requests received"), sameInstance(counter));
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("ocpc_requests", "Requests received"));
+        //A gauge registered again reads from the newer supplier
+        registry.gauge("ocpc_open", "Open things", () -> 1);
+        registry.gauge("ocpc_open", "Open things", () -> 2);
+        assertThat(Arrays.asList(registry.scrape().split("\n")), hasItem("ocpc_open 2.0"));
+    }
+}
@@ -0,0 +1,185 @@
+import classifier.DedupingTileClassifier;
+import classifier.TileClassifier;
+import geo.LocationCache;
+import model.Tile;
+import org.junit.jupiter.api.Test;
+import remote.CircuitBreaker;
+import remote.RemoteClient;
+import remote.RemoteUnavailableException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RemoteClientTest {
+    @Test
+    public void testBreakerOpensAndProbes() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(10, 4, 0.5, 100);
+        RemoteClient client = new RemoteClient("test_breaker", 4, 1000, 0, breaker);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(RemoteUnavailableException.class, () -> client.call(() -> {
+                throw new IllegalStateException("down");
+            }));
+        }
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        RemoteUnavailableException open = assertThrows(RemoteUnavailableException.class, () -> client.call(() -> "up"));
+        assertThat(open.getMessage(), containsString("circuit open"));
+
+        Thread.sleep(150);
+        assertThat(client.call(() -> "up"), is("up"));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void testBulkheadAndTimeout() throws InterruptedException {
+        RemoteClient client = new RemoteClient("test_bulkhead", 1, 100, 0, new CircuitBreaker(10, 10, 0.5, 1000));
+        CountDownLatch release = new CountDownLatch(1);
+        RemoteUnavailableException timeout = assertThrows(RemoteUnavailableException.class, () -> client.call(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                //Ignore the interrupt, as a blocking HTTP client would
+                try {
+                    release.await();
+                } catch (InterruptedException again) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return "late";
+        }));
+        assertThat(timeout.getMessage(), containsString("within 100ms"));
+        //The abandoned call still holds the only permit
+        RemoteUnavailableException full = assertThrows(RemoteUnavailableException.class, () -> client.call(() -> "next"));
+        assertThat(full.getMessage(), containsString("concurrency limit"));
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        String result = null;
+        while (result == null && System.nanoTime() < deadline) {
+            try {
+                result = client.call(() -> "next");
+            } catch (RemoteUnavailableException e) {
+                Thread.sleep(10);
+            }
+        }
+        assertThat(result, is("next"));
+    }
+
+    @Test
+    public void testHedgeAnswersSlowCall() {
+        RemoteClient client = new RemoteClient("test_hedge", 2, 2000, 50, new CircuitBreaker(10, 10, 0.5, 1000));
+        AtomicInteger attempts = new AtomicInteger();
+        long start = System.nanoTime();
+        String result = client.call(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(1500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            }
+            return "hedged";
+        });
+        assertThat(result, is("hedged"));
+        assertThat(attempts.get(), is(2));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, is(true));
+    }
+
+    @Test
+    public void testSharedLoadFailureReachesEveryCaller() throws InterruptedException {
+        LocationCache cache = new LocationCache(16, 60000, 20);
+        AtomicInteger loads = new AtomicInteger();
+        List<Throwable> failures = concurrently(() -> cache.getOrLoad(42, key -> {
+            loads.incrementAndGet();
+            //Let the other caller queue up behind this load before it fails
+            waitFor(() -> cache.getMisses() == 2);
+            throw new RemoteUnavailableException("socrata down");
+        }));
+        assertThat(loads.get(), is(1));
+        for (Throwable failure : failures) {
+            assertThat(failure, instanceOf(RemoteUnavailableException.class));
+        }
+    }
+
+    @Test
+    public void testSharedTileFailureReachesEveryCaller() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger started = new AtomicInteger();
+        DedupingTileClassifier classifier = new DedupingTileClassifier(new TileClassifier() {
+            @Override
+            public boolean[] containsBuildings(List<Tile> tiles) {
+                calls.incrementAndGet();
+                waitFor(() -> started.get() == 2);
+                throw new RemoteUnavailableException("watson down");
+            }
+
+            @Override
+            public int maxBatchSize() {
+                return 20;
+            }
+
+            @Override
+            public String getId() {
+                return "failing";
+            }
+        });
+        List<Tile> tiles = Collections.singletonList(new Tile(0, 0, new byte[]{1, 2, 3}, 3, null));
+        List<Throwable> failures = concurrently(() -> {
+            started.incrementAndGet();
+            return classifier.containsBuildings(tiles);
+        });
+        assertThat(calls.get(), is(1));
+        for (Throwable failure : failures) {
+            assertThat(failure, instanceOf(RemoteUnavailableException.class));
+        }
+    }
+
+    //Runs call on two threads at once and returns what each threw
+    private static List<Throwable> concurrently(Callable<?> call) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Object>> results = pool.invokeAll(Collections.nCopies(2, () -> call.call()), 5, TimeUnit.SECONDS);
+            List<Throwable> failures = new ArrayList<>();
+            for (Future<Object> result : results) {
+                try {
+                    result.get();
+                    failures.add(null);
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                }
+            }
+            return failures;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        try {
+            //The other caller has counted itself in; give it time to reach the shared wait
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+import journal.Replay;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Runs journal.Replay over -Dreplay.dir=... and expects every frame the replay classifier recorded to get the
+ * same answer. Frames other classifiers answered are replayed but not compared.
+ */
+public class ReplayTest {
+    @Test
+    @EnabledIfSystemProperty(named = "replay.dir", matches = ".+")
+    public void testReplayMatchesRecording() throws Exception {
+        Replay.Result result = Replay.run(new File(System.getProperty("replay.dir")));
+        System.out.println(result);
+        assertThat(result.getMismatched(), is(0));
+    }
+}
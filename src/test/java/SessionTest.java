@@ -0,0 +1,111 @@
+import classifier.TileClassifier;
+import grid.OccupancyGrid;
+import model.Tile;
+import org.junit.jupiter.api.Test;
+import session.Frame;
+import session.FrameClassifier;
+import session.SessionStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SessionTest {
+    private static class Counting implements TileClassifier {
+        int calls;
+
+        @Override
+        public boolean[] containsBuildings(List<Tile> tiles) {
+            calls += tiles.size();
+            boolean[] found = new boolean[tiles.size()];
+            for (int i = 0; i < found.length; i++) {
+                found[i] = tiles.get(i).getData()[0] == 1;
+            }
+            return found;
+        }
+
+        @Override
+        public int maxBatchSize() {
+            return 10;
+        }
+
+        @Override
+        public String getId() {
+            return "counting";
+        }
+    }
+
+    private static List<Tile> row(byte... contents) {
+        List<Tile> tiles = new ArrayList<>();
+        for (int col = 0; col < contents.length; col++) {
+            tiles.add(new Tile(0, col, new byte[]{contents[col], (byte) col}, 2, null));
+        }
+        return tiles;
+    }
+
+    private static List<Tile> column(byte... contents) {
+        List<Tile> tiles = new ArrayList<>();
+        for (int row = 0; row < contents.length; row++) {
+            tiles.add(new Tile(row, 0, new byte[]{contents[row], (byte) row}, 2, null));
+        }
+        return tiles;
+    }
+
+    private static Frame frameOf(FrameClassifier classifier) {
+        return new Frame(0, 0, 0, classifier.getTiles(), classifier.getGrid(), Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Test
+    public void testReusesShiftedTiles() {
+        Counting delegate = new Counting();
+        FrameClassifier first = new FrameClassifier(delegate, null, FrameClassifier.NO_SHIFT, 4, 1);
+        first.containsBuildings(column((byte) 0, (byte) 1, (byte) 1, (byte) 0));
+        assertThat(delegate.calls, is(4));
+
+        //Turned right by one tile: the display runs along the rows, so new row r shows what was in
+        //row r - 1, and the first row is new
+        FrameClassifier second = new FrameClassifier(delegate, frameOf(first), -1, 4, 1);
+        boolean[] found = second.containsBuildings(column((byte) 1, (byte) 5, (byte) 5, (byte) 5));
+        assertThat(Arrays.toString(found), is("[true, false, true, true]"));
+        assertThat(second.getReused(), is(3));
+        assertThat(delegate.calls, is(5));
+    }
+
+    @Test
+    public void testReusesIdenticalTilesWithoutShift() {
+        Counting delegate = new Counting();
+        FrameClassifier first = new FrameClassifier(delegate, null, FrameClassifier.NO_SHIFT, 1, 2);
+        first.containsBuildings(row((byte) 1, (byte) 0));
+        FrameClassifier second = new FrameClassifier(delegate, frameOf(first), FrameClassifier.NO_SHIFT, 1, 2);
+        second.containsBuildings(row((byte) 1, (byte) 0));
+        assertThat(second.getReused(), is(2));
+        assertThat(delegate.calls, is(2));
+        OccupancyGrid grid = second.getGrid();
+        assertThat(grid.get(0, 0), is(true));
+    }
+
+    @Test
+    public void testStoreIsBounded() {
+        SessionStore store = new SessionStore(2, 60000);
+        try {
+            store.getOrCreate("a");
+            store.getOrCreate("b");
+            store.getOrCreate("a");
+            store.getOrCreate("c");
+            assertThat(store.size(), is(2));
+            assertThat(store.getEvictions(), is(1L));
+            //"b" was least recently used, so it was the one dropped
+            assertThat(store.remove("b") == null, is(true));
+            assertThat(store.getOrCreate("a"), sameInstance(store.getOrCreate("a")));
+            assertThat(store.getOrCreate("c"), not(sameInstance(store.getOrCreate("a"))));
+        } finally {
+            store.shutdown();
+        }
+    }
+}
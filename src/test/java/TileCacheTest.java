@@ -0,0 +1,172 @@
+import classifier.CachingTileClassifier;
+import classifier.DiskTileCache;
+import classifier.TileClassifier;
+import classifier.TileKey;
+import model.Tile;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TileCacheTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        Counting classifier = new Counting();
+        CachingTileClassifier cache = new CachingTileClassifier(classifier, 2, DAY);
+        cache.containsBuildings(tiles(1));
+        cache.containsBuildings(tiles(2));
+        //Touching 1 leaves 2 as the eldest
+        assertThat(cache.containsBuildings(tiles(1))[0], is(true));
+        cache.containsBuildings(tiles(3));
+        assertThat(cache.getEvictions(), is(1L));
+        assertThat(cache.size(), is(2));
+
+        classifier.calls = 0;
+        assertThat(cache.containsBuildings(tiles(1, 3)), is(new boolean[]{true, true}));
+        assertThat(classifier.calls, is(0));
+        assertThat(cache.containsBuildings(tiles(2))[0], is(false));
+        assertThat(classifier.calls, is(1));
+        assertThat(cache.getHits(), is(3L));
+        assertThat(cache.getMisses(), is(4L));
+    }
+
+    @Test
+    public void testExpiredEntriesAreRefetchedOrServedStale() throws InterruptedException {
+        Counting classifier = new Counting();
+        CachingTileClassifier cache = new CachingTileClassifier(classifier, 10, 0);
+        cache.containsBuildings(tiles(1, 2));
+        TimeUnit.MILLISECONDS.sleep(5);
+
+        //Expired, and the classifier is up: asked again
+        cache.containsBuildings(tiles(1));
+        assertThat(classifier.calls, is(3));
+        assertThat(cache.getHits(), is(0L));
+        TimeUnit.MILLISECONDS.sleep(5);
+
+        //Expired, and the classifier is down: the old answers stand in
+        classifier.down = true;
+        assertThat(cache.containsBuildings(tiles(1, 2)), is(new boolean[]{true, false}));
+        assertThat(cache.getStaleHits(), is(2L));
+        //Unless one of the tiles was never answered
+        assertThrows(IllegalStateException.class, () -> cache.containsBuildings(tiles(1, 5)));
+        assertThat(cache.getStaleHits(), is(2L));
+    }
+
+    @Test
+    public void testDiskHitsAfterReopen() throws IOException {
+        File file = File.createTempFile("tiles", ".cache");
+        file.deleteOnExit();
+        Counting classifier = new Counting();
+        try (DiskTileCache disk = new DiskTileCache(file, 64, DAY)) {
+            new CachingTileClassifier(classifier, 10, DAY, disk).containsBuildings(tiles(1, 2, 3));
+        }
+        assertThat(classifier.calls, is(3));
+
+        classifier.down = true;
+        try (DiskTileCache disk = new DiskTileCache(file, 64, DAY)) {
+            CachingTileClassifier cache = new CachingTileClassifier(classifier, 10, DAY, disk);
+            assertThat(cache.containsBuildings(tiles(3, 2, 1)), is(new boolean[]{true, false, true}));
+            assertThat(cache.getDiskHits(), is(3L));
+            //Now in memory as well
+            cache.containsBuildings(tiles(1));
+            assertThat(cache.getHits(), is(1L));
+            assertThat(cache.getDiskHits(), is(3L));
+        }
+
+        //A file laid out for another slot count starts empty
+        try (DiskTileCache disk = new DiskTileCache(file, 128, DAY)) {
+            assertThat(disk.get(key(1)), is(-1));
+        }
+    }
+
+    @Test
+    public void testDiskEvictsOldestInProbeWindow() throws IOException, InterruptedException {
+        File file = File.createTempFile("tiles", ".cache");
+        file.deleteOnExit();
+        //Eight slots are a single probe window, so every key competes for them
+        try (DiskTileCache disk = new DiskTileCache(file, 8, DAY)) {
+            for (int i = 0; i < 8; i++) {
+                assertThat(disk.put(key(i), true), is(false));
+                TimeUnit.MILLISECONDS.sleep(2);
+            }
+            //Rewriting a key is not an eviction
+            assertThat(disk.put(key(3), false), is(false));
+            TimeUnit.MILLISECONDS.sleep(2);
+            assertThat(disk.put(key(8), true), is(true));
+            assertThat(disk.get(key(0)), is(-1));
+            assertThat(disk.get(key(3)), is(0));
+            assertThat(disk.get(key(8)), is(1));
+        }
+        //Nor is reusing an expired slot
+        try (DiskTileCache disk = new DiskTileCache(file, 8, 0)) {
+            TimeUnit.MILLISECONDS.sleep(5);
+            assertThat(disk.get(key(8)), is(-1));
+            assertThat(disk.put(key(9), true), is(false));
+        }
+    }
+
+    @Test
+    public void testDiskEvictionsCounted() throws IOException, InterruptedException {
+        File file = File.createTempFile("tiles", ".cache");
+        file.deleteOnExit();
+        try (DiskTileCache disk = new DiskTileCache(file, 8, DAY)) {
+            CachingTileClassifier cache = new CachingTileClassifier(new Counting(), 100, DAY, disk);
+            cache.containsBuildings(tiles(0, 1, 2, 3, 4, 5, 6, 7));
+            assertThat(cache.getEvictions(), is(0L));
+            TimeUnit.MILLISECONDS.sleep(2);
+            cache.containsBuildings(tiles(8, 9));
+            assertThat(cache.getEvictions(), is(2L));
+        }
+    }
+
+    private static List<Tile> tiles(int... values) {
+        List<Tile> tiles = new ArrayList<>();
+        for (int value : values) {
+            tiles.add(new Tile(0, value, new byte[]{(byte) value}, 1));
+        }
+        return tiles;
+    }
+
+    private static TileKey key(int value) {
+        return TileKey.of(Counting.ID, tiles(value).get(0));
+    }
+
+    //Odd tiles are buildings
+    private static class Counting implements TileClassifier {
+        static final String ID = "counting";
+        int calls;
+        boolean down;
+
+        @Override
+        public boolean[] containsBuildings(List<Tile> tiles) {
+            if (down) {
+                throw new IllegalStateException("Classifier unavailable");
+            }
+            calls += tiles.size();
+            boolean[] found = new boolean[tiles.size()];
+            for (int i = 0; i < found.length; i++) {
+                found[i] = tiles.get(i).getData()[0] % 2 == 1;
+            }
+            return found;
+        }
+
+        @Override
+        public int maxBatchSize() {
+            return 10;
+        }
+
+        @Override
+        public String getId() {
+            return ID;
+        }
+    }
+}
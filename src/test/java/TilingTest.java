@@ -0,0 +1,151 @@
+import api.Application;
+import api.PipelineListener;
+import classifier.TileClassifier;
+import image.ImageTiler;
+import image.WindowTiler;
+import model.Coordinates;
+import model.Tile;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TilingTest {
+    //A tile is a building when any of it is dark
+    private static class Dark implements TileClassifier {
+        final List<Tile> seen = new ArrayList<>();
+
+        @Override
+        public synchronized boolean[] containsBuildings(List<Tile> tiles) {
+            boolean[] found = new boolean[tiles.size()];
+            for (int i = 0; i < found.length; i++) {
+                seen.add(tiles.get(i));
+                try {
+                    BufferedImage image = ImageIO.read(tiles.get(i).open());
+                    for (int y = 0; y < image.getHeight() && !found[i]; y++) {
+                        for (int x = 0; x < image.getWidth() && !found[i]; x++) {
+                            found[i] = (image.getRGB(x, y) & 0xff) < 64;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public int maxBatchSize() {
+            return 3;
+        }
+
+        @Override
+        public String getId() {
+            return "dark";
+        }
+    }
+
+    private static WindowTiler windows(int darkFrom, int darkTo, int[] spans) throws IOException {
+        BufferedImage image = new BufferedImage(1500, 500, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 1500, 500);
+        g.setColor(Color.BLACK);
+        g.fillRect(darkFrom, 100, darkTo - darkFrom, 300);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return WindowTiler.open(ImageIO.createImageInputStream(new ByteArrayInputStream(out.toByteArray())),
+                250, spans, 500, null);
+    }
+
+    @Test
+    public void testWindowsOverlapAndScaleDown() throws IOException {
+        Dark classifier = new Dark();
+        try (WindowTiler windows = windows(900, 1100, new int[]{2, 4})) {
+            assertThat(windows.getRows(), is(2));
+            assertThat(windows.getCols(), is(6));
+            Application.classifyImageOverlapping(classifier, windows, () -> false, PipelineListener.NONE);
+        }
+        //Five 500px windows along the top row, and three 1000px ones clipped to the frame's 500px height
+        assertThat(classifier.seen.size(), is(8));
+        int coarse = 0;
+        for (Tile tile : classifier.seen) {
+            if (tile.getSpan() == 4) {
+                BufferedImage image = ImageIO.read(tile.open());
+                assertThat(image.getWidth(), is(500));
+                assertThat(image.getHeight(), is(250));
+                coarse++;
+            }
+        }
+        assertThat(coarse, is(3));
+    }
+
+    @Test
+    public void testCellsKeepWhatEveryWindowAgreesOn() throws IOException {
+        List<Coordinates> boxes;
+        try (WindowTiler windows = windows(900, 1100, new int[]{2})) {
+            boxes = Application.classifyImageOverlapping(new Dark(), windows, () -> false, PipelineListener.NONE);
+        }
+        //Columns 750-1000 and 1000-1250 are in every window that covers them; 1250-1500 only in the last
+        assertThat(boxes.size(), is(1));
+        assertThat(boxes.get(0).getTopLeft().getY(), is(750));
+        assertThat(boxes.get(0).getBottomRight().getY(), is(1250));
+        assertThat(boxes.get(0).getTopLeft().getX(), is(0));
+        assertThat(boxes.get(0).getBottomRight().getX(), is(250));
+    }
+
+    @Test
+    public void testEdgeTilesKeepTheRemainder() throws IOException {
+        //250x330 with 100px tiles: 3 columns, the last 50px wide, and 4 rows, the last 30px high
+        BufferedImage image = new BufferedImage(250, 330, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 3; col++) {
+                g.setColor(new Color(shade(row, col), shade(row, col), shade(row, col)));
+                g.fillRect(col * 100, row * 100, 100, 100);
+            }
+        }
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        for (int subsampling : new int[]{1, 2}) {
+            long rowPixels = (long) ((250 + subsampling - 1) / subsampling) * (100 / subsampling);
+            //One tile row per strip, two rows per strip with a shorter last strip, and the whole frame at once
+            for (int stripRows : new int[]{1, 2, 4}) {
+                List<Tile> tiles = new ArrayList<>();
+                try (ImageTiler tiler = ImageTiler.open(new ByteArrayInputStream(out.toByteArray()), 100, subsampling,
+                        stripRows * rowPixels, null)) {
+                    assertThat(tiler.getRows(), is(4));
+                    assertThat(tiler.getCols(), is(3));
+                    assertThat(tiler.getStripRows(), is(stripRows));
+                    tiler.forEachRemaining(tiles::add);
+                }
+                assertThat(tiles.size(), is(12));
+                for (Tile tile : tiles) {
+                    BufferedImage decoded = ImageIO.read(tile.open());
+                    assertThat(decoded.getWidth(), is((tile.getCol() == 2 ? 50 : 100) / subsampling));
+                    assertThat(decoded.getHeight(), is((tile.getRow() == 3 ? 30 : 100) / subsampling));
+                    //Each tile shows its own part of the image, also when its strip was decoded into the last one
+                    int center = decoded.getRGB(decoded.getWidth() / 2, decoded.getHeight() / 2) & 0xff;
+                    assertThat(Math.abs(center - shade(tile.getRow(), tile.getCol())) < 8, is(true));
+                }
+            }
+        }
+    }
+
+    private static int shade(int row, int col) {
+        return 20 * (row * 3 + col) + 10;
+    }
+}
@@ -0,0 +1,188 @@
+import ingest.MultipartReader;
+import ingest.Upload;
+import ingest.UploadException;
+import ingest.UploadReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UploadReaderTest {
+    private static final String BOUNDARY = "upload-test-boundary";
+    private static final String MULTIPART = "multipart/form-data; boundary=" + BOUNDARY;
+
+    @Test
+    public void testBoundarySplitAcrossReads() throws IOException {
+        //Starts like a delimiter without being one, so a chunk ending there must not end the part
+        byte[] first = ("almost\r\n--" + BOUNDARY.substring(0, 6) + " but not quite").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] second = "second".getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        part(body, "first", null, first);
+        part(body, "second", "text/plain", second);
+        close(body);
+        //Every chunk size up to past the delimiter's length puts some chunk edge inside each boundary
+        for (int chunk = 1; chunk < 64; chunk++) {
+            MultipartReader reader = new MultipartReader(chunked(body.toByteArray(), chunk), BOUNDARY);
+            MultipartReader.Part part = reader.nextPart();
+            assertThat(part.getName(), is("first"));
+            assertThat(read(reader), is(first));
+            part = reader.nextPart();
+            assertThat(part.getName(), is("second"));
+            assertThat(part.getContentType(), is("text/plain"));
+            assertThat(read(reader), is(second));
+            assertThat(reader.nextPart(), nullValue());
+        }
+    }
+
+    @Test
+    public void testCrlfInsideBody() throws IOException {
+        byte[] content = "line\r\n\r\n--not a boundary\r\nlast\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        part(body, "skipped", null, content);
+        part(body, "kept", null, content);
+        close(body);
+        MultipartReader reader = new MultipartReader(chunked(body.toByteArray(), 5), BOUNDARY);
+        assertThat(reader.nextPart().getName(), is("skipped"));
+        //Skipping a body must stop at the same place reading it would
+        MultipartReader.Part part = reader.nextPart();
+        assertThat(part.getName(), is("kept"));
+        assertThat(read(reader), is(content));
+        assertThat(reader.nextPart(), nullValue());
+    }
+
+    @Test
+    public void testOversizedPartRejected() throws IOException {
+        UploadReader uploads = new UploadReader(1024, 4096, 1, 1, null);
+        byte[] body = multipart("file", "image/jpeg", jpeg(2048));
+        //No content length, so only the part's own size can give it away
+        UploadException e = assertThrows(UploadException.class,
+                () -> uploads.read(MULTIPART, -1, chunked(body, 100), "file"));
+        assertThat(e.getStatus(), is(413));
+    }
+
+    @Test
+    public void testNonImageRejected() throws IOException {
+        UploadReader uploads = new UploadReader(1 << 20, 4096, 1, 1, null);
+        UploadException declared = assertThrows(UploadException.class,
+                () -> uploads.read(MULTIPART, -1, new ByteArrayInputStream(multipart("file", "text/plain", jpeg(16))), "file"));
+        assertThat(declared.getStatus(), is(415));
+        //Declared as an image, but the bytes are not one
+        byte[] text = "not an image".getBytes(StandardCharsets.ISO_8859_1);
+        UploadException sniffed = assertThrows(UploadException.class,
+                () -> uploads.read(MULTIPART, -1, new ByteArrayInputStream(multipart("file", "image/png", text)), "file"));
+        assertThat(sniffed.getStatus(), is(415));
+        UploadException raw = assertThrows(UploadException.class,
+                () -> uploads.read("application/octet-stream", 16, new ByteArrayInputStream(jpeg(16)), "file"));
+        assertThat(raw.getStatus(), is(415));
+    }
+
+    @Test
+    public void testMissingFieldRejected() throws IOException {
+        UploadReader uploads = new UploadReader(1 << 20, 4096, 1, 1, null);
+        byte[] body = multipart("image", "image/jpeg", jpeg(16));
+        UploadException e = assertThrows(UploadException.class,
+                () -> uploads.read(MULTIPART, body.length, new ByteArrayInputStream(body), "file"));
+        assertThat(e.getStatus(), is(400));
+        assertThat(e.getMessage(), containsString("'file'"));
+    }
+
+    @Test
+    public void testLargeBodySpillsToFileAndCloseDeletesIt() throws IOException {
+        File dir = Files.createTempDirectory("ocpc-uploads").toFile();
+        dir.deleteOnExit();
+        UploadReader uploads = new UploadReader(1 << 20, 1024, 1, 1, dir);
+        byte[] image = jpeg(10000);
+        Upload upload = uploads.read(MULTIPART, -1, chunked(multipart("file", "image/jpeg", image), 700), "file");
+        assertThat(upload.isSpilled(), is(true));
+        assertThat(dir.list().length, is(1));
+        byte[] read = new byte[upload.size()];
+        upload.data().get(read);
+        assertThat(read, is(image));
+        upload.close();
+        assertThat(dir.list().length, is(0));
+
+        //A body rejected after it spilled leaves no file behind either
+        UploadReader small = new UploadReader(5000, 1024, 1, 1, dir);
+        UploadException e = assertThrows(UploadException.class,
+                () -> small.read(MULTIPART, -1, chunked(multipart("file", "image/jpeg", image), 700), "file"));
+        assertThat(e.getStatus(), is(413));
+        assertThat(dir.list().length, is(0));
+    }
+
+    @Test
+    public void testSmallBodyStaysInMemory() throws IOException {
+        UploadReader uploads = new UploadReader(1 << 20, 4096, 1, 1, null);
+        byte[] image = jpeg(1000);
+        try (Upload upload = uploads.read("image/jpeg", image.length, new ByteArrayInputStream(image), "file")) {
+            assertThat(upload.isSpilled(), is(false));
+            ByteBuffer data = upload.data();
+            byte[] read = new byte[data.remaining()];
+            data.get(read);
+            assertThat(read, is(image));
+        }
+    }
+
+    //JPEG magic bytes followed by filler, which is all the reader looks at
+    private static byte[] jpeg(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        bytes[0] = (byte) 0xFF;
+        bytes[1] = (byte) 0xD8;
+        bytes[2] = (byte) 0xFF;
+        return bytes;
+    }
+
+    private static byte[] multipart(String name, String contentType, byte[] content) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        part(body, name, contentType, content);
+        close(body);
+        return body.toByteArray();
+    }
+
+    private static void part(ByteArrayOutputStream body, String name, String contentType, byte[] content)
+            throws IOException {
+        StringBuilder headers = new StringBuilder("--" + BOUNDARY + "\r\n");
+        headers.append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n");
+        if (contentType != null) {
+            headers.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        headers.append("\r\n");
+        body.write(headers.toString().getBytes(StandardCharsets.ISO_8859_1));
+        body.write(content);
+        body.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void close(ByteArrayOutputStream body) throws IOException {
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] read(MultipartReader reader) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reader.readBody(out, Long.MAX_VALUE);
+        return out.toByteArray();
+    }
+
+    //Hands out at most chunk bytes per read, as a slow client's packets would
+    private static InputStream chunked(byte[] bytes, int chunk) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package api;
+
+import classifier.TileClassifier;
+import grid.OccupancyGrid;
+import image.BufferPool;
+import image.ByteBufferImageInputStream;
+import image.ImageTiler;
+import image.RegionReader;
+import model.Tile;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Checks coarse-to-fine tiling against the fixed grid. In the package so it can reach AdaptiveTiling.
+ */
+public class AdaptiveTilingTest {
+    private static final int CELL = 500;
+
+    @Test
+    public void testLocalizedBuildingMatchesFixedGrid() throws IOException {
+        //6 x 4 cells of sky, with one building well inside cell row 1, column 2
+        BufferedImage image = new BufferedImage(6 * CELL, 4 * CELL, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setColor(Color.RED);
+        g.fillRect(2 * CELL + 100, CELL + 100, 300, 300);
+        g.dispose();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        BufferPool pool = new BufferPool(8, 64 * 1024);
+
+        Red fixedClassifier = new Red();
+        OccupancyGrid fixed;
+        try (ImageTiler tiler = ImageTiler.open(new ByteArrayInputStream(jpeg.toByteArray()), CELL, 1, pool)) {
+            fixed = Application.classifyTiles(fixedClassifier, tiler, tiler.getRows(), tiler.getCols(), () -> false,
+                    PipelineListener.NONE);
+        }
+
+        Red adaptiveClassifier = new Red();
+        ClassificationExecutor executor = new ClassificationExecutor(2, 4, 60000);
+        OccupancyGrid adaptive;
+        try (RegionReader reader = RegionReader.open(
+                new ByteBufferImageInputStream(ByteBuffer.wrap(jpeg.toByteArray())), pool)) {
+            adaptive = AdaptiveTiling.classify(adaptiveClassifier, reader, CELL, CELL, 4, executor, () -> false,
+                    PipelineListener.NONE);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(fixed.cardinality(), is(1));
+        assertThat(fixed.get(1, 2), is(true));
+        assertThat(adaptive.toString(), is(fixed.toString()));
+        assertThat(fixedClassifier.tiles.get(), is(24));
+        //Two 4x4 blocks, the positive one's four quadrants, then the positive quadrant's four cells
+        assertThat(adaptiveClassifier.tiles.get(), is(10));
+    }
+
+    //A tile is a building when some pixel is clearly red, which survives the downscaling of large regions
+    private static class Red implements TileClassifier {
+        final AtomicInteger tiles = new AtomicInteger();
+
+        @Override
+        public boolean[] containsBuildings(List<Tile> batch) {
+            tiles.addAndGet(batch.size());
+            boolean[] found = new boolean[batch.size()];
+            for (int i = 0; i < found.length; i++) {
+                BufferedImage tile;
+                try {
+                    tile = ImageIO.read(batch.get(i).open());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                for (int y = 0; y < tile.getHeight() && !found[i]; y++) {
+                    for (int x = 0; x < tile.getWidth() && !found[i]; x++) {
+                        Color pixel = new Color(tile.getRGB(x, y));
+                        found[i] = pixel.getRed() > 200 && pixel.getGreen() < 60 && pixel.getBlue() < 60;
+                    }
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public int maxBatchSize() {
+            return 4;
+        }
+
+        @Override
+        public String getId() {
+            return "red";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package api;
+
+import classifier.TileClassifier;
+import codec.JsonBoxCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ingest.MultipartReader;
+import ingest.UploadReader;
+import model.Tile;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Drives BatchRun over an in-memory multipart body. In the package so it can reach the package-private
+ * run and its dedup count.
+ */
+public class BatchRunTest {
+    private static final String BOUNDARY = "batch-test-boundary";
+    private static final ObjectMapper JSON = JsonBoxCodec.mapper();
+
+    @Test
+    public void testFramesReportIndependently() throws IOException {
+        Application.setBuildingSource((north, west, south, east) -> Collections.emptyList());
+        //Two 500px tiles, dark and light, so a frame has two distinct tiles
+        byte[] street = jpeg(Color.DARK_GRAY, Color.LIGHT_GRAY);
+        byte[] red = jpeg(Color.RED, Color.RED);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        frame(body, "first", "42.73", street);
+        frame(body, "second", "42.73", street);
+        frame(body, "nowhere", null, street);
+        frame(body, "broken", "42.73", red);
+        //The stream ends in the middle of the last frame's file, with no closing boundary
+        frame(body, "cut", "42.73", street);
+        byte[] truncated = Arrays.copyOf(body.toByteArray(), body.size() - street.length / 2);
+
+        AtomicInteger classified = new AtomicInteger();
+        TileClassifier classifier = new TileClassifier() {
+            @Override
+            public boolean[] containsBuildings(List<Tile> tiles) {
+                for (Tile tile : tiles) {
+                    if (isRed(tile)) {
+                        throw new IllegalStateException("Classifier rejected the frame");
+                    }
+                }
+                classified.addAndGet(tiles.size());
+                return new boolean[tiles.size()];
+            }
+
+            @Override
+            public int maxBatchSize() {
+                return 4;
+            }
+
+            @Override
+            public String getId() {
+                return "batch-test";
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchRun run = new BatchRun(classifier, new UploadReader(1 << 20, 1 << 20, 4, 8, null), out, JSON, 2,
+                () -> false);
+        run.run(new MultipartReader(new ByteArrayInputStream(truncated), BOUNDARY));
+
+        Map<String, JsonNode> byId = new HashMap<>();
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            JsonNode node = JSON.readTree(line);
+            lines.add(node);
+            if (node.has("id")) {
+                byId.put(node.get("id").asText(), node);
+            }
+        }
+        assertThat(lines.size(), is(5));
+        assertThat(byId.get("first").get("index").asInt(), is(0));
+        assertThat(byId.get("first").get("boxes").size(), is(0));
+        assertThat(byId.get("second").get("boxes").size(), is(0));
+        assertThat(byId.get("nowhere").get("error").asText(), containsString("lat, lon or bearing"));
+        assertThat(byId.get("broken").get("index").asInt(), is(3));
+        assertThat(byId.get("broken").get("error").asText(), is("Classifier rejected the frame"));
+        //The unreadable rest of the stream is reported last, after every frame that was read
+        JsonNode last = lines.get(lines.size() - 1);
+        assertThat(last.has("index"), is(false));
+        assertThat(last.has("error"), is(true));
+
+        //The second street frame's two tiles were answered by the first's, and the red frame's right half
+        //by its left
+        assertThat(classified.get(), is(2));
+        assertThat(run.getDuplicates(), is(3L));
+    }
+
+    private static void frame(ByteArrayOutputStream body, String id, String lat, byte[] image) throws IOException {
+        field(body, "id", id);
+        if (lat != null) {
+            field(body, "lat", lat);
+        }
+        field(body, "lon", "-73.68");
+        field(body, "bearing", "0");
+        body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + id
+                + ".jpg\"\r\nContent-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(image);
+        body.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void field(ByteArrayOutputStream body, String name, String value) throws IOException {
+        body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value
+                + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] jpeg(Color left, Color right) throws IOException {
+        BufferedImage image = new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(left);
+        g.fillRect(0, 0, 500, 500);
+        g.setColor(right);
+        g.fillRect(500, 0, 500, 500);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static boolean isRed(Tile tile) {
+        try {
+            int rgb = ImageIO.read(tile.open()).getRGB(250, 250);
+            return (rgb >> 16 & 0xff) > 200 && (rgb & 0xff) < 80;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package api;
+
+import org.junit.jupiter.api.Test;
+import session.FrameClassifier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Pins how moving and turning between session frames are measured. In the package so it can reach
+ * feetBetween and shiftRows.
+ */
+public class SessionShiftTest {
+    private static final double TROY = 42.73;
+    //At the default 65 degree field of view, 13 rows of 500px span the display, 5 degrees each
+    private static final int HEIGHT = 13 * 500;
+
+    @Test
+    public void testTurningShiftsAlongRows() {
+        //The display runs along the rows, bottom to top, so turning right brings row r - 1 into row r
+        assertThat(Application.shiftRows(5, HEIGHT), is(-1));
+        assertThat(Application.shiftRows(-10, HEIGHT), is(2));
+        assertThat(Application.shiftRows(0, HEIGHT), is(0));
+        //Wrapping across north is still a small turn
+        assertThat(Application.shiftRows(355, HEIGHT), is(1));
+        //Only the image height counts: a frame half as tall shifts half as many rows
+        assertThat(Application.shiftRows(10, HEIGHT / 2), is(-1));
+    }
+
+    @Test
+    public void testPartialTileTurnsAreNotShifted() {
+        assertThat(Application.shiftRows(2.5, HEIGHT), is(FrameClassifier.NO_SHIFT));
+        assertThat(Application.shiftRows(5.5, HEIGHT), is(-1));
+    }
+
+    @Test
+    public void testLongitudeShrinksWithLatitude() {
+        //0.0001 degrees is about 36 feet north-south, but only about 27 east-west at Troy's latitude
+        double north = Application.feetBetween(TROY, -73.68, TROY + 0.0001, -73.68);
+        double east = Application.feetBetween(TROY, -73.68, TROY, -73.68 + 0.0001);
+        assertThat(Math.round(north), is(36L));
+        assertThat(Math.round(east), is(27L));
+        //At the equator the two agree
+        assertThat(Math.round(Application.feetBetween(0, 0, 0, 0.0001)), is(36L));
+        assertThat(Application.feetBetween(TROY, -73.68, TROY, -73.68), is(0.0));
+    }
+}